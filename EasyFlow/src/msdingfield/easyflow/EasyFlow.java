@@ -1,24 +1,47 @@
 package msdingfield.easyflow;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeoutException;
 
+import msdingfield.easyflow.execution.Deadline;
 import msdingfield.easyflow.execution.Task;
+import msdingfield.easyflow.execution.TaskStats;
+import msdingfield.easyflow.execution.TaskStatsSummary;
+import msdingfield.easyflow.graph.ExecutionPlan;
 import msdingfield.easyflow.graph.Graph;
 import msdingfield.easyflow.graph.GraphTaskBuilder;
+import msdingfield.easyflow.graph.TaskFactory;
 import msdingfield.easyflow.reflect.ClassOperation;
 import msdingfield.easyflow.reflect.ClassOperationFlowNode;
 import msdingfield.easyflow.reflect.ClassOperationTaskFactory;
 import msdingfield.easyflow.reflect.ClassPathScannerClassOperationBuilder;
 import msdingfield.easyflow.reflect.Context;
+import msdingfield.easyflow.reflect.ContextLayout;
+import msdingfield.easyflow.reflect.EdgeLiveness;
+import msdingfield.easyflow.reflect.RegistryClassOperationBuilder;
+import msdingfield.easyflow.reflect.SingleFlight;
 
 import com.google.common.base.Function;
+import com.google.common.base.Objects;
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 
 /**
  * APIs for running a flow graph.
@@ -27,58 +50,284 @@ import com.google.common.collect.Sets;
  *
  */
 public final class EasyFlow {
+
+	/**
+	 * System property which enables stats for graphs loaded without an
+	 * explicit choice.  Set to "true" to enable.
+	 */
+	public static final String STATS_PROPERTY = "easyflow.stats";
+
+	/**
+	 * System property which sets how many plans for requested outputs each
+	 * graph keeps.  Defaults to DEFAULT_PLAN_CACHE_SIZE.
+	 */
+	public static final String PLAN_CACHE_SIZE_PROPERTY = "easyflow.planCacheSize";
+
+	public static final int DEFAULT_PLAN_CACHE_SIZE = 256;
+
 	private EasyFlow() {}
 
 	/**
 	 * Load a FlowGraph.
 	 * 
-	 * This scans the classpath for graph with the given name.
+	 * If registries generated by the annotation processor exist for the
+	 * graph within basePkg, the operations are loaded from them.  Otherwise
+	 * this scans the classpath for graph with the given name.
 	 * 
 	 * Loading a graph is an expensive operation and should only be done once.
 	 * The returned graph instance is immutable and can be evaluated multiple
 	 * times sequentially or concurrently.
 	 * 
+	 * Stats are recorded if the system property "easyflow.stats" is true.
+	 * 
 	 * @param basePkg Search only this java package and sub-packages.
 	 * @param graphName Name of the graph.
 	 * @return
 	 */
 	public static FlowGraph loadFlowGraph(
 			final String basePkg, final String graphName) {
-		final List<ClassOperation> operations = ClassPathScannerClassOperationBuilder.loadOperationsOnClasspath(basePkg, graphName);
+		return loadFlowGraph(basePkg, graphName, Boolean.getBoolean(STATS_PROPERTY));
+	}
+
+	/**
+	 * Load a FlowGraph, choosing whether evaluations record stats.
+	 * 
+	 * Recording stats takes a few timestamps per operation.  A graph which
+	 * does not record them takes none.
+	 * 
+	 * @param basePkg Search only this java package and sub-packages.
+	 * @param graphName Name of the graph.
+	 * @param recordStats True to record timings for FlowEvaluation.getStats()
+	 *                    and FlowGraph.getStats().
+	 * @return
+	 */
+	public static FlowGraph loadFlowGraph(
+			final String basePkg, final String graphName, final boolean recordStats) {
+		List<ClassOperation> operations = RegistryClassOperationBuilder.loadOperationsFromRegistry(basePkg, graphName);
+		if (operations == null) {
+			operations = ClassPathScannerClassOperationBuilder.loadOperationsOnClasspath(basePkg, graphName);
+		}
 		final Graph<ClassOperationFlowNode> graph = new Graph<ClassOperationFlowNode>(Sets.newHashSet(Lists.transform(operations, new Function<ClassOperation, ClassOperationFlowNode>(){
 			@Override public ClassOperationFlowNode apply(final ClassOperation op) {
 				return new ClassOperationFlowNode(op);
 			}})));
-		return new FlowGraphImpl(graph);
+		return new FlowGraphImpl(graph, ContextLayout.of(operations), recordStats);
 	}
 
 	private static class FlowGraphImpl implements FlowGraph {
-		private final Graph<ClassOperationFlowNode> impl;
+		private final Graph<ClassOperationFlowNode> graph;
+
+		/** Compiled once so evaluations do not need to analyze the graph. */
+		private final CompiledPlan plan;
 
-		public FlowGraphImpl(final Graph<ClassOperationFlowNode> impl) {
-			this.impl = impl;
+		/** Plans for each shape of request seen, least recently used dropped first. */
+		private final LoadingCache<PlanKey, CompiledPlan> plans = CacheBuilder.newBuilder()
+				.maximumSize(Integer.getInteger(PLAN_CACHE_SIZE_PROPERTY, DEFAULT_PLAN_CACHE_SIZE))
+				.recordStats()
+				.build(new CacheLoader<PlanKey, CompiledPlan>() {
+					@Override
+					public CompiledPlan load(final PlanKey key) {
+						final ExecutionPlan<ClassOperationFlowNode> outputsPlan
+								= ExecutionPlan.compile(graph.getSubGraphForOutputs(key.requestedOutputs, key.providedInputs));
+						final List<ClassOperation> operations = Lists.newArrayList();
+						for (final ClassOperationFlowNode node : outputsPlan.getNodes()) {
+							operations.add(node.getOp());
+						}
+						return new CompiledPlan(outputsPlan, EdgeLiveness.of(layout, operations, key.requestedOutputs), key.requestedOutputs);
+					}});
+
+		/** Edge and state slots shared by the Context of every evaluation. */
+		private final ContextLayout layout;
+
+		/** Totals by operation class name, or null if stats are not recorded. */
+		private final Map<String, TaskStatsSummary> summaries;
+
+		public FlowGraphImpl(final Graph<ClassOperationFlowNode> impl, final ContextLayout layout, final boolean recordStats) {
+			this.graph = impl;
+			this.plan = new CompiledPlan(ExecutionPlan.compile(impl), null, null);
+			this.layout = layout;
+			if (recordStats) {
+				final ImmutableMap.Builder<String, TaskStatsSummary> builder = ImmutableMap.builder();
+				for (final ClassOperationFlowNode node : impl.getAllNodes()) {
+					builder.put(node.getOp().getOperationClass().getName(), new TaskStatsSummary());
+				}
+				summaries = builder.build();
+			} else {
+				summaries = null;
+			}
 		}
 
 		@Override
 		public FlowEvaluation evaluate(final Map<String, Object> params) {
-			final Context context = new Context(params);
+			return evaluate(params, (Deadline) null);
+		}
+
+		@Override
+		public FlowEvaluation evaluate(final Map<String, Object> params, final Deadline deadline) {
+			return evaluate(plan, params, deadline);
+		}
+
+		@Override
+		public FlowEvaluation evaluate(final Map<String, Object> params, final Set<String> requestedOutputs) {
+			return evaluate(params, requestedOutputs, null);
+		}
+
+		@Override
+		public FlowEvaluation evaluate(final Map<String, Object> params, final Set<String> requestedOutputs, final Deadline deadline) {
+			final CompiledPlan outputsPlan;
+			try {
+				outputsPlan = plans.getUnchecked(new PlanKey(params.keySet(), requestedOutputs));
+			} catch (final UncheckedExecutionException e) {
+				throw Throwables.propagate(e.getCause());
+			}
+			return evaluate(outputsPlan, params, deadline);
+		}
+
+		private FlowEvaluation evaluate(final CompiledPlan plan, final Map<String, Object> params, final Deadline deadline) {
+			final Context context = new Context(layout, params, plan.liveness);
+			final ClassOperationTaskFactory factory = new ClassOperationTaskFactory(context);
+			if (summaries == null) {
+				final Task task = GraphTaskBuilder
+						.plan(plan.plan)
+						.taskFactory(factory)
+						.deadline(deadline)
+						.build()
+						.schedule();
+				return new FlowTaskImpl(task, context, params, plan.outputNames, Collections.<String, Task>emptyMap());
+			}
+
+			final StatsTaskFactory statsFactory = new StatsTaskFactory(factory);
 			final Task task = GraphTaskBuilder
-					.graph(impl)
-					.taskFactory(new ClassOperationTaskFactory(context))
-					.build()
-					.schedule();
-			return new FlowTaskImpl(task, context);
+					.plan(plan.plan)
+					.taskFactory(statsFactory)
+					.deadline(deadline)
+					.build();
+			task.addCompletionListener(new Runnable() {
+				@Override public void run() {
+					for (final Map.Entry<String, Task> entry : statsFactory.tasks.entrySet()) {
+						summaries.get(entry.getKey()).add(entry.getValue().getStats());
+					}
+				}});
+			return new FlowTaskImpl(task.schedule(), context, params, plan.outputNames, statsFactory.tasks);
+		}
+
+		@Override
+		public Map<String, TaskStatsSummary> getStats() {
+			return summaries == null ? Collections.<String, TaskStatsSummary>emptyMap() : summaries;
+		}
+
+		@Override
+		public CacheStats getPlanCacheStats() {
+			return plans.stats();
+		}
+
+		@Override
+		public Map<String, SingleFlight> getCoalescingStats() {
+			final ImmutableMap.Builder<String, SingleFlight> stats = ImmutableMap.builder();
+			for (final ClassOperationFlowNode node : graph.getAllNodes()) {
+				if (node.getOp().isCoalescing()) {
+					stats.put(node.getOp().getOperationClass().getName(), node.getOp().getSingleFlight());
+				}
+			}
+			return stats.build();
+		}
+
+		@Override
+		public Map<String, CacheStats> getResultCacheStats() {
+			final ImmutableMap.Builder<String, CacheStats> stats = ImmutableMap.builder();
+			for (final ClassOperationFlowNode node : graph.getAllNodes()) {
+				if (node.getOp().getResultCache() != null) {
+					stats.put(node.getOp().getOperationClass().getName(), node.getOp().getResultCache().getStats());
+				}
+			}
+			return stats.build();
+		}
+
+	}
+
+	/** An execution plan and how its evaluations treat their edges. */
+	private static final class CompiledPlan {
+		private final ExecutionPlan<ClassOperationFlowNode> plan;
+
+		/** Reads of each edge before it is cleared, or null to keep every edge. */
+		private final EdgeLiveness liveness;
+
+		/** The edges returned as outputs, or null for every edge. */
+		private final Set<String> outputNames;
+
+		public CompiledPlan(final ExecutionPlan<ClassOperationFlowNode> plan, final EdgeLiveness liveness, final Set<String> outputNames) {
+			this.plan = plan;
+			this.liveness = liveness;
+			this.outputNames = outputNames;
+		}
+	}
+
+	/** The shape of a request: the names of the params and requested outputs. */
+	private static final class PlanKey {
+		private final Set<String> providedInputs;
+		private final Set<String> requestedOutputs;
+
+		public PlanKey(final Set<String> providedInputs, final Set<String> requestedOutputs) {
+			this.providedInputs = ImmutableSet.copyOf(providedInputs);
+			this.requestedOutputs = ImmutableSet.copyOf(requestedOutputs);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hashCode(providedInputs, requestedOutputs);
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (!(obj instanceof PlanKey)) {
+				return false;
+			}
+			final PlanKey other = (PlanKey) obj;
+			return providedInputs.equals(other.providedInputs) && requestedOutputs.equals(other.requestedOutputs);
+		}
+	}
+
+	/** Creates tasks which record stats and remembers them by operation. */
+	private static class StatsTaskFactory implements TaskFactory<ClassOperationFlowNode> {
+		private final TaskFactory<ClassOperationFlowNode> factory;
+
+		/** Written while the plan task is built, read after it is scheduled. */
+		private final Map<String, Task> tasks = Maps.newLinkedHashMap();
+
+		public StatsTaskFactory(final TaskFactory<ClassOperationFlowNode> factory) {
+			this.factory = factory;
 		}
 
+		@Override
+		public Task create(final Executor executor, final ClassOperationFlowNode node) {
+			final Task task = factory.create(executor, node).recordStats();
+			tasks.put(node.getOp().getOperationClass().getName(), task);
+			return task;
+		}
 	}
 
 	private static class FlowTaskImpl implements FlowEvaluation {
 		private final Task task;
 		private final Context context;
 
-		public FlowTaskImpl(final Task task, final Context context) {
+		/** Parameters of the evaluation.  Owned by the caller so never cancelled. */
+		private final Map<String, Object> params;
+
+		/** The edges returned as outputs, or null for every edge. */
+		private final Set<String> outputNames;
+
+		/** Node tasks by operation class name.  Empty if stats are not recorded. */
+		private final Map<String, Task> nodeTasks;
+
+		/** Created by the first call to getOutputsFuture(). */
+		private volatile OutputsFuture outputsFuture = null;
+
+		public FlowTaskImpl(final Task task, final Context context, final Map<String, Object> params, final Set<String> outputNames, final Map<String, Task> nodeTasks) {
 			this.task = task;
 			this.context = context;
+			this.params = params;
+			this.outputNames = outputNames;
+			this.nodeTasks = nodeTasks;
 		}
 
 		@Override
@@ -95,10 +344,62 @@ public final class EasyFlow {
 
 		@Override
 		public FlowEvaluation addCallback(final Runnable command) {
-			task.addCompletionListener(command);
+			return addCallback(command, MoreExecutors.sameThreadExecutor());
+		}
+
+		@Override
+		public FlowEvaluation addCallback(final Runnable command, final Executor executor) {
+			task.addListener(command, executor);
 			return this;
 		}
 
+		@Override
+		public ListenableFuture<Map<String, Object>> getOutputsFuture() {
+			OutputsFuture future = outputsFuture;
+			if (future == null) {
+				synchronized (this) {
+					future = outputsFuture;
+					if (future == null) {
+						future = new OutputsFuture();
+						task.addListener(future, MoreExecutors.sameThreadExecutor());
+						outputsFuture = future;
+					}
+				}
+			}
+			return future;
+		}
+
+		@Override
+		public boolean cancel() {
+			if (!task.cancel()) {
+				return false;
+			}
+			for (final Map.Entry<String, Object> edge : context.getEdgeValues().entrySet()) {
+				if (params.get(edge.getKey()) != edge.getValue()) {
+					cancelFutures(edge.getValue());
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return task.isCancelled();
+		}
+
+		/** Cancel a future or the futures directly inside a collection. */
+		private static void cancelFutures(final Object value) {
+			if (value instanceof ListenableFuture) {
+				((ListenableFuture<?>) value).cancel(true);
+			} else if (value instanceof Collection) {
+				for (final Object item : (Collection<?>) value) {
+					if (item instanceof ListenableFuture) {
+						((ListenableFuture<?>) item).cancel(true);
+					}
+				}
+			}
+		}
+
 		@Override
 		public boolean isDone() {
 			return task.isComplete();
@@ -130,14 +431,51 @@ public final class EasyFlow {
 			return getOutputNoWait();
 		}
 
+		@Override
+		public Map<String, TaskStats> getStats() {
+			final ImmutableMap.Builder<String, TaskStats> stats = ImmutableMap.builder();
+			for (final Map.Entry<String, Task> entry : nodeTasks.entrySet()) {
+				stats.put(entry.getKey(), entry.getValue().getStats());
+			}
+			return stats.build();
+		}
+
 		private Map<String, Object> getOutputNoWait() {
-			final Set<String> keys = context.getEdgeKeys();
+			if (outputNames == null) {
+				return context.getEdgeValues();
+			}
 			final Map<String, Object> outputs = Maps.newHashMap();
-			for (final String key : keys) {
-				outputs.put(key, context.getEdgeValue(key));
+			for (final String name : outputNames) {
+				final Object value = context.getEdgeValue(name);
+				if (value != null) {
+					outputs.put(name, value);
+				}
 			}
 			return outputs;
 		}
 
+		/** Completed by the evaluation.  Cancelling it cancels the evaluation. */
+		private final class OutputsFuture extends AbstractFuture<Map<String, Object>> implements Runnable {
+			@Override
+			public void run() {
+				if (task.isCancelled()) {
+					super.cancel(false);
+				} else if (task.isSuccess()) {
+					set(getOutputNoWait());
+				} else {
+					setException(new FlowEvaluationException(task.getErrors(), getOutputNoWait()));
+				}
+			}
+
+			@Override
+			public boolean cancel(final boolean mayInterruptIfRunning) {
+				if (!super.cancel(mayInterruptIfRunning)) {
+					return false;
+				}
+				FlowTaskImpl.this.cancel();
+				return true;
+			}
+		}
+
 	}
 }
@@ -2,8 +2,13 @@ package msdingfield.easyflow;
 
 import java.util.Collection;
 import java.util.Map;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeoutException;
 
+import msdingfield.easyflow.execution.TaskStats;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
 /**
  * Represents a running or completed FlowGraph evaluation.
  * 
@@ -59,17 +64,66 @@ public interface FlowEvaluation {
 	 */
 	Map<String, Object> getOutputs(long timeoutMs) throws InterruptedException, TimeoutException;
 
+	/**
+	 * Get the outputs from the evaluation without blocking.
+	 * 
+	 * The future completes with the outputs if the evaluation is successful.
+	 * If the evaluation fails it fails with a FlowEvaluationException holding
+	 * the errors and partial outputs, and if the evaluation is cancelled it
+	 * is cancelled.  Cancelling the future cancels the evaluation.
+	 * 
+	 * @return A future of the output values.
+	 */
+	ListenableFuture<Map<String, Object>> getOutputsFuture();
+
 	/**
 	 * Add a callback to invoke when the evaluation completes.
 	 * 
-	 * The callback will be invoked in an evaluation thread.  Clients should
-	 * avoid executing long running routines.
+	 * The callback may be added at any time.  If the evaluation is already
+	 * complete it is invoked immediately.  The callback will be invoked in an
+	 * evaluation thread.  Clients should avoid executing long running
+	 * routines.
 	 * 
 	 * @param command The callback to invoke.
 	 * @return this instance for chaining.
 	 */
 	FlowEvaluation addCallback(final Runnable command);
 
+	/**
+	 * Add a callback to invoke on the given executor when the evaluation
+	 * completes.
+	 * 
+	 * The callback may be added at any time.
+	 * 
+	 * @param command The callback to invoke.
+	 * @param executor The executor to invoke it on.
+	 * @return this instance for chaining.
+	 */
+	FlowEvaluation addCallback(final Runnable command, final Executor executor);
+
+	/**
+	 * Cancel the evaluation.
+	 * 
+	 * Operations which have not started will not run.  ListenableFutures the
+	 * evaluation is waiting on, or which operations have written to edges,
+	 * are cancelled.  Futures passed in as parameters are left alone.
+	 * Operations which are already running are not interrupted; the
+	 * evaluation completes once they return.
+	 * 
+	 * A cancelled evaluation is not successful and its errors include a
+	 * CancellationException.
+	 * 
+	 * @return False if the evaluation was already complete or cancelled.
+	 */
+	boolean cancel();
+
+	/**
+	 * Determine if cancel() was called before the evaluation completed.
+	 * 
+	 * @return True if cancelled.
+	 */
+	boolean isCancelled();
+
 	/**
 	 * Determine if the evaluation is complete.
 	 * 
@@ -91,4 +145,15 @@ public interface FlowEvaluation {
 	 * @return Errors produced during evaluation.
 	 */
 	Collection<Throwable> getErrors();
+
+	/**
+	 * Get the timings of each operation in the evaluation.
+	 * 
+	 * Timings are only recorded if the graph was loaded with stats enabled.
+	 * Otherwise this is an empty map.  Timings of operations which have not
+	 * finished yet may be incomplete.
+	 * 
+	 * @return Timings by operation class name.
+	 */
+	Map<String, TaskStats> getStats();
 }
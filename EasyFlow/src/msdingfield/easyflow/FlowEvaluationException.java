@@ -0,0 +1,39 @@
+package msdingfield.easyflow;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * The failure of a FlowEvaluation as reported by its outputs future.
+ * 
+ * The cause is the first error of the evaluation.  All of the errors and
+ * the partial outputs are available from the exception.
+ * 
+ * @author Matt
+ *
+ */
+public class FlowEvaluationException extends Exception {
+	private static final long serialVersionUID = -3107485291436170392L;
+
+	private final List<Throwable> errors;
+	private final transient Map<String, Object> outputs;
+
+	public FlowEvaluationException(final Collection<Throwable> errors, final Map<String, Object> outputs) {
+		super("Flow evaluation failed with " + errors.size() + " error(s).", errors.isEmpty() ? null : errors.iterator().next());
+		this.errors = ImmutableList.copyOf(errors);
+		this.outputs = outputs;
+	}
+
+	/** Get the errors produced during evaluation. */
+	public List<Throwable> getErrors() {
+		return errors;
+	}
+
+	/** Get the outputs of the evaluation, which may be incomplete. */
+	public Map<String, Object> getOutputs() {
+		return outputs;
+	}
+}
@@ -1,6 +1,14 @@
 package msdingfield.easyflow;
 
 import java.util.Map;
+import java.util.Set;
+
+import msdingfield.easyflow.execution.Deadline;
+import msdingfield.easyflow.execution.TaskStatsSummary;
+import msdingfield.easyflow.graph.support.OutputNotFoundException;
+import msdingfield.easyflow.reflect.SingleFlight;
+
+import com.google.common.cache.CacheStats;
 
 /** A FlowGraph that can be evaluated. */
 public interface FlowGraph {
@@ -12,4 +20,93 @@ public interface FlowGraph {
 	 * @return A task for querying the state of the running evaluation.
 	 */
 	FlowEvaluation evaluate(final Map<String, Object> params);
+
+	/**
+	 * Evaluates this FlowGraph asynchronously within a deadline.
+	 * 
+	 * Operations which have not started by the deadline do not run and the
+	 * evaluation fails with a Task.DeadlineExceededException.  When the
+	 * deadline passes the evaluation is stopped as if cancelled, so it
+	 * completes once any running operations return.  Operations can read the
+	 * deadline with Task.currentDeadline().
+	 * 
+	 * @param params Parameters to the evaluation.
+	 * @param deadline The deadline, or null for none.
+	 * @return A task for querying the state of the running evaluation.
+	 */
+	FlowEvaluation evaluate(final Map<String, Object> params, final Deadline deadline);
+
+	/**
+	 * Evaluates only the operations needed for the requested outputs.
+	 * 
+	 * Operations which do not contribute to a requested output do not run.
+	 * Neither do operations with an input which is not in params and not
+	 * produced by another operation which runs.  A requested output whose
+	 * producer is dropped this way is missing from the outputs.
+	 * 
+	 * The outputs of the evaluation are only the requested outputs.  Every
+	 * other edge value, including params, is released as soon as all of the
+	 * operations reading it have read their inputs, so large intermediate
+	 * values are not held for the life of the evaluation.
+	 * 
+	 * The operations needed for each set of param names and requested
+	 * outputs are worked out once and reused by later evaluations.  The most
+	 * recently used plans are kept, up to the number set by the system
+	 * property "easyflow.planCacheSize".
+	 * 
+	 * @param params Parameters to the evaluation.
+	 * @param requestedOutputs Names of the outputs to produce.
+	 * @return A task for querying the state of the running evaluation.
+	 * @throws OutputNotFoundException if no operation produces a requested output.
+	 */
+	FlowEvaluation evaluate(final Map<String, Object> params, final Set<String> requestedOutputs);
+
+	/**
+	 * Evaluates only the operations needed for the requested outputs within a
+	 * deadline.
+	 * 
+	 * @param params Parameters to the evaluation.
+	 * @param requestedOutputs Names of the outputs to produce.
+	 * @param deadline The deadline, or null for none.
+	 * @return A task for querying the state of the running evaluation.
+	 * @see #evaluate(Map, Set)
+	 * @see #evaluate(Map, Deadline)
+	 */
+	FlowEvaluation evaluate(final Map<String, Object> params, final Set<String> requestedOutputs, final Deadline deadline);
+
+	/**
+	 * Get the timings of each operation added up over every completed
+	 * evaluation of this FlowGraph.
+	 * 
+	 * This is an empty map unless the graph was loaded with stats enabled.
+	 * 
+	 * @return Timings by operation class name.
+	 */
+	Map<String, TaskStatsSummary> getStats();
+
+	/**
+	 * Get the hit and miss counts of the plans kept for requested outputs.
+	 * 
+	 * @return The stats of the plan cache.
+	 * @see #evaluate(Map, Set)
+	 */
+	CacheStats getPlanCacheStats();
+
+	/**
+	 * Get how often invocations of each coalescing operation shared a run.
+	 * 
+	 * Only operations whose @Activity sets coalesce are included.
+	 * 
+	 * @return The counts by operation class name.
+	 */
+	Map<String, SingleFlight> getCoalescingStats();
+
+	/**
+	 * Get the hit and miss counts of each cached operation.
+	 * 
+	 * Only operations annotated with @Cached are included.
+	 * 
+	 * @return The stats by operation class name.
+	 */
+	Map<String, CacheStats> getResultCacheStats();
 }
@@ -9,4 +9,16 @@ import java.lang.annotation.Target;
 @Target(ElementType.TYPE)
 public @interface Activity {
 	String graph();
+
+	/**
+	 * True to share one run among concurrent invocations with equal inputs.
+	 * 
+	 * Invocations from concurrent evaluations whose input values are equal
+	 * wait for the first and receive its output values, including any
+	 * futures, instead of running the operation again.  The input values
+	 * are compared with equals() and hashCode() so they must not be mutated.
+	 * Invocations with an input which is still an unresolved future always
+	 * run.
+	 */
+	boolean coalesce() default false;
 }
@@ -0,0 +1,46 @@
+package msdingfield.easyflow.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation added to a ForkOn input to hand the operation a batch of items.
+ * 
+ * Instead of one instance per item, one instance is created per batch and
+ * its fork input is set to the list of items in the batch.  Each output of
+ * the operation must then be either a List with one result per item in the
+ * same order, a Map from item to result, or a ListenableFuture of either.
+ * The framework splits the results so the gathered output edges are the
+ * same lists of one result per item as for an ordinary ForkOn operation.
+ * 
+ * This suits services with a bulk endpoint, where one call for many items is
+ * much cheaper than a call per item.
+ * 
+ * With windowMillis set, batches from concurrent evaluations whose other
+ * inputs are equal are merged.  Their items are collected for up to
+ * windowMillis, or until maxSize distinct items, and the operation is
+ * invoked once with the distinct items.  The operation then runs outside of
+ * the evaluation's task so it must not call Task.fork().  Evaluations whose
+ * other inputs are not yet resolved futures are not merged.
+ * 
+ * @author Matt
+ *
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface Batch {
+
+	/** maxSize which places every item in a single batch. */
+	int UNLIMITED = 0;
+
+	/** Maximum number of items in each batch, or UNLIMITED. */
+	int maxSize() default UNLIMITED;
+
+	/**
+	 * Milliseconds to collect items from concurrent evaluations before
+	 * invoking the operation, or 0 to invoke it for each evaluation.
+	 */
+	int windowMillis() default 0;
+}
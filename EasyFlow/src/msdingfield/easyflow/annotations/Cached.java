@@ -0,0 +1,40 @@
+package msdingfield.easyflow.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation added to an operation class whose outputs depend only on its
+ * inputs, so its outputs may be reused across evaluations.
+ * 
+ * The outputs are cached by the values of the inputs, which are compared
+ * with equals() and hashCode() so they must not be mutated.  Outputs which
+ * are futures are cached once they resolve, as their values; if any fails
+ * nothing is cached.  When an invocation finds its inputs in the cache, no
+ * instance of the operation class is created and the cached outputs are
+ * written instead.  Invocations with an input which is still an unresolved
+ * future always run.
+ * 
+ * @author Matt
+ *
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Cached {
+
+	/** Maximum number of input values to keep outputs for. */
+	int maxSize() default 1000;
+
+	/** Milliseconds to keep outputs after they are cached, or 0 for no limit. */
+	long ttlMillis() default 0;
+
+	/**
+	 * True to cache the outputs of a set of inputs only once they have been
+	 * seen before.
+	 * 
+	 * Inputs used once only then do not evict outputs which are reused.
+	 */
+	boolean admitOnRepeat() default false;
+}
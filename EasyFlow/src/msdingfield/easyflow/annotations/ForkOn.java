@@ -9,10 +9,53 @@ import java.lang.annotation.Target;
  * Annotation added to input which will create multiple instances of the 
  * operation to handle items in a collection in parallel.
  * 
+ * By default every item gets its own operation instance and its own task.
+ * For large collections of cheap items, chunkSize groups consecutive items
+ * so each task handles a slice of the collection, and reuseInstance lets a
+ * single operation instance handle every item of its slice.  The gathered
+ * outputs are always in the order of the collection.
+ * 
+ * maxInFlight bounds how many items may have unresolved outputs at once,
+ * for example to avoid flooding a remote service with requests.  Further
+ * items are started as the output futures of earlier items complete.
+ * 
  * @author Matt
  *
  */
 @Retention(RetentionPolicy.RUNTIME)
 @Target(ElementType.FIELD)
 public @interface ForkOn {
+
+	/** chunkSize which sizes chunks from the measured cost of each item. */
+	int ADAPTIVE = 0;
+
+	/** maxInFlight which places no bound on the items in flight. */
+	int UNLIMITED = 0;
+
+	/**
+	 * Number of consecutive items handled by each task, or ADAPTIVE.
+	 * 
+	 * ADAPTIVE aims for chunks which take about a millisecond based on the
+	 * cost per item measured by earlier evaluations of the operation.
+	 */
+	int chunkSize() default 1;
+
+	/**
+	 * True to create one operation instance per chunk instead of one per
+	 * item.
+	 * 
+	 * The instance gets the other inputs once.  For each item of the chunk
+	 * the fork input is set, the operation method invoked and the outputs
+	 * read, so the operation must set every output on every invocation.
+	 */
+	boolean reuseInstance() default false;
+
+	/**
+	 * Maximum number of items started whose outputs are not yet resolved,
+	 * or UNLIMITED.
+	 * 
+	 * Items are admitted a chunk at a time so a chunk size larger than
+	 * maxInFlight still runs one chunk at a time.
+	 */
+	int maxInFlight() default UNLIMITED;
 }
@@ -3,7 +3,21 @@ package msdingfield.easyflow.annotations;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 
+/**
+ * Annotation marking the method which performs an operation.
+ * 
+ * Operations are expected to be non-blocking.  An operation which may block,
+ * for example one calling a synchronous DAO, should set blocking = true.  The
+ * method is then invoked on DefaultExecutor.getBlocking() while reading
+ * inputs, unwrapping futures and writing outputs stay on the evaluation's
+ * executor.
+ * 
+ * @author Matt
+ *
+ */
 @Retention(RetentionPolicy.RUNTIME)
 public @interface Operation {
 
+	/** True if the operation method may block the calling thread. */
+	boolean blocking() default false;
 }
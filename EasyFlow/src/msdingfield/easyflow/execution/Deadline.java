@@ -0,0 +1,55 @@
+package msdingfield.easyflow.execution;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A point in time by which work must be done.
+ * 
+ * Deadlines are measured with System.nanoTime() so they are not affected by
+ * changes to the wall clock.  Instances are immutable.
+ * 
+ * Operations can find the deadline of the task they run in with
+ * Task.currentDeadline(), for example to set a matching I/O timeout.
+ * 
+ * @author Matt
+ *
+ */
+public final class Deadline {
+
+	/** The deadline as a System.nanoTime() value. */
+	private final long nanoTime;
+
+	private Deadline(final long nanoTime) {
+		this.nanoTime = nanoTime;
+	}
+
+	/** A deadline the given time from now. */
+	public static Deadline after(final long duration, final TimeUnit unit) {
+		return new Deadline(System.nanoTime() + unit.toNanos(duration));
+	}
+
+	/** The deadline as a System.nanoTime() value. */
+	public long getNanoTime() {
+		return nanoTime;
+	}
+
+	/** True once the deadline has passed. */
+	public boolean isExpired() {
+		return System.nanoTime() - nanoTime >= 0;
+	}
+
+	/**
+	 * Get the time left before the deadline.
+	 * 
+	 * @param unit The unit of the result.
+	 * @return The time left, or 0 if the deadline has passed.
+	 */
+	public long timeRemaining(final TimeUnit unit) {
+		return Math.max(0, unit.convert(nanoTime - System.nanoTime(), TimeUnit.NANOSECONDS));
+	}
+
+	@Override
+	public String toString() {
+		return "Deadline [remainingMs=" + timeRemaining(TimeUnit.MILLISECONDS) + "]";
+	}
+}
@@ -2,36 +2,203 @@ package msdingfield.easyflow.execution;
 
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Holder for a default Executor.
  * 
- * This holds a single ExecutorService with a fixed number of threads equal to
- * the number of available processors.  Operations are not expected to block 
- * so we don't need more threads than we have processors.
+ * This holds shared ExecutorServices with a number of threads equal to the
+ * number of available processors.  Operations are not expected to block so
+ * we don't need more threads than we have processors.
+ * 
+ * Two kinds of executor are available, see Mode.  The kind returned by get()
+ * is WORK_STEALING unless the system property "easyflow.executor" is set to
+ * "FIXED_POOL".
+ * 
+ * Operations which may block are the exception.  Those run on the separate
+ * pool returned by getBlocking() which grows as needed, so a blocked call
+ * never holds one of the processor sized threads.
+ * 
+ * A single timer thread, returned by getTimer(), stops tasks whose deadline
+ * passes.
  * 
  * @author Matt
  *
  */
 public final class DefaultExecutor {
 
-	/** The ExecutorService instance. */
-	private static volatile ExecutorService executor = null;
+	/** System property used to choose the Mode returned by get(). */
+	public static final String MODE_PROPERTY = "easyflow.executor";
+
+	/** The kinds of shared executor. */
+	public static enum Mode {
+		/**
+		 * A fixed thread pool sharing a single queue.  Every submission from
+		 * every evaluation goes through the same queue.
+		 */
+		FIXED_POOL,
+
+		/**
+		 * A ForkJoinPool in async mode.  Work submitted from a pool thread,
+		 * such as a successor task or a Task.fork(), is pushed onto that
+		 * thread's own deque so it tends to run on the same core.  Idle
+		 * threads steal from the other deques.
+		 */
+		WORK_STEALING
+	}
 
-	/** Get the ExecutorService instance.  Create if needed. */
+	/** Get the default ExecutorService instance.  Create if needed. */
 	public static ExecutorService get() {
-		if (executor == null) {
-			synchronized (DefaultExecutor.class) {
-				if (executor == null) {
-					executor = Executors.newFixedThreadPool(
-							Runtime.getRuntime().availableProcessors(), 
-							new ThreadFactoryBuilder().setDaemon(true).setNameFormat("flow-pool-%d").build());
-				}
-			}
+		return get(defaultMode());
+	}
+
+	/** Get the shared ExecutorService for the given mode.  Create if needed. */
+	public static ExecutorService get(final Mode mode) {
+		switch (mode) {
+		case FIXED_POOL:
+			return FixedPoolHolder.EXECUTOR;
+		case WORK_STEALING:
+		default:
+			return WorkStealingHolder.EXECUTOR;
+		}
+	}
+
+	/**
+	 * Get the shared ExecutorService for operations which may block.
+	 * 
+	 * Threads are created as needed and reclaimed once idle.
+	 */
+	public static ExecutorService getBlocking() {
+		return BlockingHolder.EXECUTOR;
+	}
+
+	/**
+	 * Get the shared timer used to enforce deadlines.
+	 * 
+	 * Timed work should be short; it all runs on a single thread.
+	 */
+	public static ScheduledExecutorService getTimer() {
+		return TimerHolder.EXECUTOR;
+	}
+
+	/** Create a new fixed thread pool with the given number of threads. */
+	public static ExecutorService newFixedPool(final int threads) {
+		return Executors.newFixedThreadPool(threads, new FlowThreadFactory("flow-pool-"));
+	}
+
+	/** Create a new work stealing pool with the given parallelism. */
+	public static ExecutorService newWorkStealingPool(final int parallelism) {
+		return new ForkJoinPool(parallelism, new FlowWorkerThreadFactory(), null, true);
+	}
+
+	private static Mode defaultMode() {
+		final String property = System.getProperty(MODE_PROPERTY);
+		if (property != null && Mode.FIXED_POOL.name().equalsIgnoreCase(property.trim())) {
+			return Mode.FIXED_POOL;
+		}
+		return Mode.WORK_STEALING;
+	}
+
+	/** Lazily creates the shared fixed pool. */
+	private static final class FixedPoolHolder {
+		static final ExecutorService EXECUTOR = newFixedPool(Runtime.getRuntime().availableProcessors());
+	}
+
+	/** Lazily creates the shared work stealing pool. */
+	private static final class WorkStealingHolder {
+		static final ExecutorService EXECUTOR = newWorkStealingPool(Runtime.getRuntime().availableProcessors());
+	}
+
+	/** Lazily creates the shared blocking pool. */
+	private static final class BlockingHolder {
+		static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(new FlowThreadFactory("flow-blocking-"));
+	}
+
+	/** Lazily creates the shared timer. */
+	private static final class TimerHolder {
+		static final ScheduledExecutorService EXECUTOR = newTimer();
+
+		private static ScheduledExecutorService newTimer() {
+			final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, new FlowThreadFactory("flow-timer-"));
+			// Deadlines are usually met so most timers are cancelled.
+			timer.setRemoveOnCancelPolicy(true);
+			return timer;
+		}
+	}
+
+	/** Creates named daemon FlowThreads. */
+	private static final class FlowThreadFactory implements ThreadFactory {
+		private final AtomicInteger count = new AtomicInteger(0);
+		private final String prefix;
+
+		public FlowThreadFactory(final String prefix) {
+			this.prefix = prefix;
+		}
+
+		@Override
+		public Thread newThread(final Runnable runnable) {
+			final Thread thread = new FlowThread(runnable);
+			thread.setDaemon(true);
+			thread.setName(prefix + count.getAndIncrement());
+			return thread;
+		}
+	}
+
+	/** Names ForkJoinPool threads consistently with the fixed pool. */
+	private static final class FlowWorkerThreadFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+		private final AtomicInteger count = new AtomicInteger(0);
+
+		@Override
+		public ForkJoinWorkerThread newThread(final ForkJoinPool pool) {
+			final ForkJoinWorkerThread thread = new FlowWorkerThread(pool);
+			thread.setDaemon(true);
+			thread.setName("flow-pool-" + count.getAndIncrement());
+			return thread;
+		}
+	}
+
+	/** Plain pool thread carrying its task binding in a field. */
+	private static final class FlowThread extends Thread implements TaskBoundThread {
+		private Task boundTask = null;
+
+		public FlowThread(final Runnable runnable) {
+			super(runnable);
+		}
+
+		@Override
+		public Task getBoundTask() {
+			return boundTask;
+		}
+
+		@Override
+		public void setBoundTask(final Task task) {
+			boundTask = task;
+		}
+	}
+
+	/** ForkJoinPool thread carrying its task binding in a field. */
+	private static final class FlowWorkerThread extends ForkJoinWorkerThread implements TaskBoundThread {
+		private Task boundTask = null;
+
+		public FlowWorkerThread(final ForkJoinPool pool) {
+			super(pool);
+		}
+
+		@Override
+		public Task getBoundTask() {
+			return boundTask;
+		}
+
+		@Override
+		public void setBoundTask(final Task task) {
+			boundTask = task;
 		}
-		return executor;
 	}
 
+	private DefaultExecutor() {}
 }
@@ -40,6 +40,18 @@ public class GroupTask extends Task {
 		return this;
 	}
 
+	/** Stop this GroupTask and all of the subtasks. */
+	@Override
+	protected boolean stop(final Throwable reason) {
+		if (!super.stop(reason)) {
+			return false;
+		}
+		for (final Task task : subtasks) {
+			task.stop(reason);
+		}
+		return true;
+	}
+
 	@Override
 	public String toString() {
 		return "GroupTask [super=" + super.toString() +", subtasks=" + subtasks + "]";
@@ -0,0 +1,98 @@
+package msdingfield.easyflow.execution;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A lock-free stack of Runnable listeners.
+ * 
+ * Listeners are pushed with a single compare-and-set and are always run in
+ * the order they were added.  No lock is held while listeners run.
+ * 
+ * A stack may optionally be closed.  Closing atomically removes all of the
+ * listeners so they can be run exactly once, and any later push is rejected
+ * so the caller can handle the late listener itself.
+ * 
+ * @author Matt
+ *
+ */
+final class ListenerStack {
+
+	/** Marks a closed stack. */
+	private static final Node CLOSED = new Node(null, null);
+
+	private final AtomicReference<Node> head = new AtomicReference<Node>();
+
+	/**
+	 * Add a listener.
+	 * 
+	 * @param listener The listener to add.
+	 * @return False if the stack has been closed and the listener was not added.
+	 */
+	public boolean push(final Runnable listener) {
+		for (;;) {
+			final Node current = head.get();
+			if (current == CLOSED) {
+				return false;
+			}
+			if (head.compareAndSet(current, new Node(listener, current))) {
+				return true;
+			}
+		}
+	}
+
+	/** Run all listeners in the order added.  The listeners are retained. */
+	public void runAll() {
+		runInOrder(head.get());
+	}
+
+	/**
+	 * Close the stack and run all listeners in the order added.
+	 * 
+	 * Only the first call to close() runs the listeners.
+	 */
+	public void close() {
+		final Node listeners = head.getAndSet(CLOSED);
+		if (listeners != CLOSED) {
+			runInOrder(listeners);
+		}
+	}
+
+	/** True once close() has been called. */
+	public boolean isClosed() {
+		return head.get() == CLOSED;
+	}
+
+	private static void runInOrder(final Node top) {
+		if (top == null || top == CLOSED) {
+			return;
+		}
+
+		// Common case of a single listener needs no reordering.
+		if (top.next == null) {
+			top.listener.run();
+			return;
+		}
+
+		int count = 0;
+		for (Node node = top; node != null; node = node.next) {
+			++count;
+		}
+		final Runnable[] ordered = new Runnable[count];
+		for (Node node = top; node != null; node = node.next) {
+			ordered[--count] = node.listener;
+		}
+		for (final Runnable listener : ordered) {
+			listener.run();
+		}
+	}
+
+	private static final class Node {
+		private final Runnable listener;
+		private final Node next;
+
+		public Node(final Runnable listener, final Node next) {
+			this.listener = listener;
+			this.next = next;
+		}
+	}
+}
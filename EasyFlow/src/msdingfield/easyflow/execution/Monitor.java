@@ -1,10 +1,7 @@
 package msdingfield.easyflow.execution;
 
-import java.util.Collection;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import com.google.common.collect.Lists;
-
 /**
  * Signal listeners when blockers reaches 0.
  * 
@@ -14,9 +11,9 @@ import com.google.common.collect.Lists;
  * which blocks writers, a Monitor calls a collection of listeners whenever it
  * becomes unblocked.
  * 
- * In addition to calling listeners, waiters are notified via the
- * Object.notifyAll() method.  This allows threads to block on Object.wait()
- * until the number of blockers reaches 0.
+ * A Monitor is lock-free.  The blocker count is an atomic counter and the
+ * listeners are held in a lock-free stack.  Listeners run on the thread whose
+ * release() brings the count to 0 and no lock is held while they run.
  * 
  * Note that it is the transition to 0 blockers that triggers notification,
  * thus no listeners will be called if there are never any blockers.
@@ -27,7 +24,7 @@ import com.google.common.collect.Lists;
 public class Monitor {
 
 	private final AtomicInteger lockCount = new AtomicInteger(0);
-	private final Collection<Runnable> listeners = Lists.newArrayList();
+	private final ListenerStack listeners = new ListenerStack();
 
 	/** Acquire a lock. */
 	public void acquire() {
@@ -36,16 +33,18 @@ public class Monitor {
 		}
 	}
 
+	/** Acquire several locks at once.  Each must be returned by release(). */
+	public void acquire(final int permits) {
+		if (lockCount.addAndGet(permits) < 0) {
+			throw new OverflowException();
+		}
+	}
+
 	/** Release a lock. */
-	public synchronized void release() {
+	public void release() {
 		final int count = lockCount.decrementAndGet();
 		if (count == 0) {
-			for (final Runnable listener : listeners) {
-				listener.run();
-			}
-
-			notifyAll();
-
+			listeners.runAll();
 		} else if (count < 0) {
 			throw new UnderflowException();
 		}
@@ -57,8 +56,8 @@ public class Monitor {
 	}
 
 	/** Add a listener to be called when blockers goes to zero. */
-	public synchronized void addListener(final Runnable observer) {
-		listeners.add(observer);
+	public void addListener(final Runnable observer) {
+		listeners.push(observer);
 	}
 
 	/** Exception thrown integer overflow occurs in the lock count. */
@@ -3,14 +3,25 @@ package msdingfield.easyflow.execution;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.Vector;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.AbstractFuture;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 import com.google.common.util.concurrent.Uninterruptibles;
 
 /**
@@ -22,25 +33,79 @@ import com.google.common.util.concurrent.Uninterruptibles;
  * The task goes through the states defined by the State enum.  Runnables can
  * be registered to execute at various points in the lifecycle.
  * 
+ * A Task does not use any locks.  State transitions are made with
+ * compare-and-set and completion listeners are held in a lock-free stack, so
+ * tasks with many predecessors or successors do not contend on an object
+ * monitor and listeners never run while a lock is held.
+ * 
+ * Timings of the task can be recorded by calling recordStats() before the
+ * task is scheduled, see TaskStats.  A task which does not record them takes
+ * no timestamps and allocates nothing for them.
+ * 
+ * A task may be cancelled with cancel().  Work which has not started yet is
+ * skipped, the task stops waiting on futures and then completes with a
+ * CancellationException.  Futures the task was waiting on are not cancelled
+ * since they may be shared with the caller or other tasks.  Runnables which
+ * are already running are not interrupted.
+ * 
+ * A task may also be given a Deadline.  A phase which starts after the
+ * deadline fails the task with a DeadlineExceededException instead of
+ * running.  With watchDeadline() the task is also stopped when the deadline
+ * passes, as if cancelled.  Code running in the task can read the deadline
+ * with currentDeadline().
+ * 
  * @author Matt
  *
  */
 public class Task {
 
 	private final Executor executor;
-	private final Collection<Runnable> workers = Lists.newArrayList();
-	private final Collection<Runnable> initializers = Lists.newArrayList();
-	private final Collection<Runnable> finalizers = Lists.newArrayList();
-	private final Collection<Runnable> completionListeners = Lists.newArrayList();
-	private final List<Throwable> errors = new Vector<>();
+	private final Queue<Runnable> workers = new ConcurrentLinkedQueue<Runnable>();
+	private final Queue<Runnable> initializers = new ConcurrentLinkedQueue<Runnable>();
+	private final Queue<Runnable> finalizers = new ConcurrentLinkedQueue<Runnable>();
+	private final ListenerStack completionListeners = new ListenerStack();
+
+	/** Listeners added with addListener(), run after join() is released. */
+	private final ListenerStack externalListeners = new ListenerStack();
+	private final Queue<Throwable> errors = new ConcurrentLinkedQueue<Throwable>();
+
+	/**
+	 * Futures of the task's own, one for each future passed to
+	 * fork(ListenableFuture, Runnable) which is not yet done.  stop()
+	 * cancels these rather than the futures passed in, which may belong to
+	 * the caller or to other tasks.
+	 */
+	private final Set<SettableFuture<Void>> pendingFutures = Sets.newSetFromMap(new ConcurrentHashMap<SettableFuture<Void>, Boolean>());
+
+	/** Set once by stop().  Work which has not started is skipped. */
+	private final AtomicReference<Throwable> stopReason = new AtomicReference<Throwable>();
 
+	/** Deadline for the work of this task, or null for none. */
+	private Deadline deadline = null;
+
+	/** Released once the task is complete.  Used to implement join(). */
+	private final CountDownLatch completion = new CountDownLatch(1);
+
+	/**
+	 * Binds a task to threads which are not TaskBoundThreads.  Threads from
+	 * DefaultExecutor carry the binding in a field and never touch this.
+	 */
 	private static final ThreadLocal<Task> currentTask = new ThreadLocal<>();
 
 	/** Monitors scheduled work items. */
 	private final Monitor scheduledWork = new Monitor();
 
+	/** Work handed from a phase transition back to the finishing Worker. */
+	private final AtomicReference<Runnable> continuation = new AtomicReference<Runnable>();
+
 	enum State { UNSCHEDULED, BLOCKED, INITIALIZING, EXECUTING, FINALIZING, COMPLETE }
-	private volatile State state = State.UNSCHEDULED;
+	private final AtomicReference<State> state = new AtomicReference<State>(State.UNSCHEDULED);
+
+	/**
+	 * Timings for this task, or null if they are not recorded.  Set before
+	 * the task is scheduled and published by the state change in schedule().
+	 */
+	private TaskStats stats = null;
 
 	/** Create a task to invoke the given Runnable. */
 	public Task(final Executor executor) {
@@ -56,53 +121,200 @@ public class Task {
 		addWorker(worker);
 	}
 
-	public synchronized Task addWorker(final Runnable worker) {
+	public Task addWorker(final Runnable worker) {
 		checkUnsheduled();
 		workers.add(worker);
 		return this;
 	}
 
-	public synchronized void addInitializer(final Runnable initializer) {
+	public void addInitializer(final Runnable initializer) {
 		checkUnsheduled();
 		initializers.add(initializer);
 	}
 
-	public synchronized void addFinalizer(final Runnable finalizer) {
+	public void addFinalizer(final Runnable finalizer) {
 		checkUnsheduled();
 		finalizers.add(finalizer);
 	}
 
-	public synchronized void addCompletionListener(final Runnable listener) {
+	public void addCompletionListener(final Runnable listener) {
 		checkUnsheduled();
-		completionListeners.add(listener);
+		completionListeners.push(listener);
 	}
 
-	public synchronized void join() throws InterruptedException {
-		if (isScheduled() && !isComplete()) {
-			this.wait();
+	/**
+	 * Run a listener on the given executor once this task completes.
+	 * 
+	 * Unlike addCompletionListener() this may be called at any time.  If the
+	 * task is already complete the listener is submitted immediately.  The
+	 * listener runs after join() has been released so it may call join().
+	 * 
+	 * @param listener The listener to run.
+	 * @param executor The executor to run it on.
+	 */
+	public void addListener(final Runnable listener, final Executor executor) {
+		final Runnable submit = new Runnable() {
+			@Override public void run() {
+				executor.execute(listener);
+			}};
+		if (!externalListeners.push(submit)) {
+			submit.run();
 		}
 	}
 
-	public synchronized void join(final long timeout) throws InterruptedException {
-		if (isScheduled() && !isComplete()) {
-			this.wait(timeout);
+	/**
+	 * Record timings for this task.  Must be called before schedule().
+	 * 
+	 * @return this instance for chaining.
+	 */
+	public Task recordStats() {
+		checkUnsheduled();
+		if (stats == null) {
+			stats = new TaskStats();
 		}
+		return this;
 	}
 
-	public synchronized void join(final long timeout, final int nanos) throws InterruptedException {
-		if (isScheduled() && !isComplete()) {
-			this.wait(timeout, nanos);
+	/** Get the timings for this task, or null if they are not recorded. */
+	public TaskStats getStats() {
+		return stats;
+	}
+
+	public void join() throws InterruptedException {
+		if (isScheduled()) {
+			completion.await();
+		}
+	}
+
+	public void join(final long timeout) throws InterruptedException {
+		if (isScheduled()) {
+			completion.await(timeout, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	public void join(final long timeout, final int nanos) throws InterruptedException {
+		if (isScheduled()) {
+			completion.await(TimeUnit.MILLISECONDS.toNanos(timeout) + nanos, TimeUnit.NANOSECONDS);
 		}
 	}
 
 	public boolean isComplete() {
-		return state == State.COMPLETE;
+		return state.get() == State.COMPLETE;
 	}
 
 	public boolean isSuccess() {
 		return isComplete() && errors.isEmpty();
 	}
 
+	/**
+	 * Cancel this task.
+	 * 
+	 * Runnables which have not started yet will not run and the task stops
+	 * waiting on futures, without cancelling them.  The task completes once
+	 * any runnables which are already running return, without entering any
+	 * further phase.  A task which is blocked completes once its
+	 * dependencies do.
+	 * 
+	 * @return False if the task was already complete or cancelled.
+	 */
+	public boolean cancel() {
+		return stop(new CancellationException("Task was cancelled."));
+	}
+
+	public boolean isCancelled() {
+		return stopReason.get() instanceof CancellationException;
+	}
+
+	/**
+	 * Stop this task with the given error.  This implements cancel() and
+	 * deadline expiry.  Subclasses which group other tasks override this to
+	 * stop them too.
+	 * 
+	 * @param reason Error recorded for the task.
+	 * @return False if the task was already complete or stopped.
+	 */
+	protected boolean stop(final Throwable reason) {
+		if (isComplete() || !stopReason.compareAndSet(null, reason)) {
+			return false;
+		}
+		errors.add(reason);
+		for (final SettableFuture<Void> future : pendingFutures) {
+			pendingFutures.remove(future);
+			future.cancel(false);
+		}
+		return true;
+	}
+
+	/**
+	 * Stop another task with the given error.  Lets tasks which group others
+	 * outside this package stop them for the same reason.
+	 */
+	protected static boolean stopTask(final Task task, final Throwable reason) {
+		return task.stop(reason);
+	}
+
+	/** True if the task was cancelled or its deadline expired. */
+	public boolean isStopped() {
+		return stopReason.get() != null;
+	}
+
+	/**
+	 * Set the deadline for this task.  Must be called before schedule().
+	 * 
+	 * A phase which starts after the deadline is not run and the task fails
+	 * with a DeadlineExceededException.
+	 * 
+	 * @param deadline The deadline or null for none.
+	 * @return this instance for chaining.
+	 */
+	public Task setDeadline(final Deadline deadline) {
+		checkUnsheduled();
+		this.deadline = deadline;
+		return this;
+	}
+
+	/** Get the deadline of this task, or null if it has none. */
+	public Deadline getDeadline() {
+		return deadline;
+	}
+
+	/**
+	 * Stop this task when its deadline passes, even if it is waiting on
+	 * dependencies or futures.  Must be called before schedule().
+	 * 
+	 * This uses the timer from DefaultExecutor.getTimer().  The timer is
+	 * cancelled when the task completes.  Only the task which owns a group of
+	 * tasks, such as a GroupTask, needs to watch its deadline.
+	 * 
+	 * @return this instance for chaining.
+	 */
+	public Task watchDeadline() {
+		checkUnsheduled();
+		if (deadline == null) {
+			throw new IllegalStateException("Task has no deadline.");
+		}
+		final ScheduledFuture<?> timer = DefaultExecutor.getTimer().schedule(new Runnable() {
+			@Override public void run() {
+				stop(new DeadlineExceededException());
+			}}, deadline.timeRemaining(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+		addCompletionListener(new Runnable() {
+			@Override public void run() {
+				timer.cancel(false);
+			}});
+		return this;
+	}
+
+	/**
+	 * Get the deadline of the task bound to the calling thread.
+	 * 
+	 * @return The deadline, or null if the thread is not running a task or
+	 *         the task has no deadline.
+	 */
+	public static Deadline currentDeadline() {
+		final Task task = current();
+		return task == null ? null : task.deadline;
+	}
+
 	public Collection<Throwable> getErrors() {
 		return Lists.newArrayList(errors);
 	}
@@ -111,7 +323,7 @@ public class Task {
 		waitFor(Lists.newArrayList(predecessors));
 	}
 
-	public synchronized void waitFor(final Collection<? extends Task> predecessors) {
+	public void waitFor(final Collection<? extends Task> predecessors) {
 		checkUnsheduled();
 
 		for (final Task predecessor : predecessors) {
@@ -120,18 +332,49 @@ public class Task {
 			predecessor.addCompletionListener(new Runnable() {
 				@Override
 				public void run() {
-					if (predecessor.isInError()) {
-						errors.add(new DependencyFailureException(predecessor));
-					}
-					scheduledWork.release();
+					dependencyComplete(predecessor);
 				}
 			});
 		}
 	}
 
-	public synchronized Task schedule() {
+	/**
+	 * Block this task on dependencies which the caller will signal directly.
+	 * 
+	 * This is a cheaper alternative to waitFor() when the caller already
+	 * tracks the dependency structure.  No listeners are registered on the
+	 * predecessors; instead the caller must invoke dependencyComplete()
+	 * exactly once per dependency.
+	 * 
+	 * @param count The number of dependencies to add.
+	 */
+	public void addDependencies(final int count) {
 		checkUnsheduled();
-		setState(State.BLOCKED);
+		if (count > 0) {
+			scheduledWork.acquire(count);
+		}
+	}
+
+	/**
+	 * Signal that a dependency of this task has completed.
+	 * 
+	 * @param predecessor The completed task this task depended on.
+	 */
+	public void dependencyComplete(final Task predecessor) {
+		if (predecessor.isInError()) {
+			errors.add(new DependencyFailureException(predecessor));
+		}
+		scheduledWork.release();
+	}
+
+	public Task schedule() {
+		if (stats != null) {
+			stats.scheduled(System.nanoTime());
+		}
+		if (!state.compareAndSet(State.UNSCHEDULED, State.BLOCKED)) {
+			throw new IllegalStateException();
+		}
+		enterState(State.BLOCKED);
 		return this;
 	}
 
@@ -142,7 +385,7 @@ public class Task {
 	}
 
 	public boolean isScheduled() {
-		return state != State.UNSCHEDULED;
+		return state.get() != State.UNSCHEDULED;
 	}
 
 	/** Execute a Runnable in the context of this task.
@@ -151,12 +394,37 @@ public class Task {
 	 */
 	private void execute(final Runnable runnable) {
 		scheduledWork.acquire();
-		executor.execute(new Worker(runnable));
+		executor.execute(new Worker(runnable, true, false));
+	}
+
+	/**
+	 * Execute a Runnable in the context of this task on another executor.
+	 * 
+	 * The work does not continue into the next phase on that executor.  Any
+	 * phase transition it triggers is submitted to this task's executor.
+	 */
+	private void executeOn(final Executor other, final Runnable runnable) {
+		scheduledWork.acquire();
+		other.execute(new Worker(runnable, false, false));
 	}
 
 	private void executeWhenDone(final ListenableFuture<?> future, final Runnable runnable) {
 		scheduledWork.acquire();
-		future.addListener(new Worker(runnable), executor);
+		final Worker worker = new Worker(runnable, true, true);
+		final SettableFuture<Void> done = SettableFuture.create();
+		pendingFutures.add(done);
+		if (isStopped()) {
+			done.cancel(false);
+		}
+		future.addListener(new Runnable() {
+			@Override public void run() {
+				done.set(null);
+			}}, MoreExecutors.sameThreadExecutor());
+		done.addListener(new Runnable() {
+			@Override public void run() {
+				pendingFutures.remove(done);
+			}}, MoreExecutors.sameThreadExecutor());
+		done.addListener(worker, executor);
 	}
 
 	/** Forks the current task.
@@ -167,19 +435,53 @@ public class Task {
 	 * @param runnable
 	 */
 	public static void fork(final Runnable runnable) {
-		final Task task = currentTask.get();
-		if (task == null) {
-			throw new ForkFromNonTaskThreadException();
-		}
-		task.execute(runnable);
+		requireCurrent().execute(runnable);
+	}
+
+	/**
+	 * Forks the current task onto a different executor.
+	 * 
+	 * This is intended for work which may block, such as a call to a
+	 * synchronous DAO, which should not occupy a thread of the task's own
+	 * executor.  Only the runnable itself runs on the given executor.  Phase
+	 * transitions and any further forks run on the task's executor.
+	 * 
+	 * @param executor The executor to run the runnable on.
+	 * @param runnable The runnable instance to execute.
+	 */
+	public static void fork(final Executor executor, final Runnable runnable) {
+		requireCurrent().executeOn(executor, runnable);
 	}
 
 	public static void fork(final ListenableFuture<?> future, final Runnable runnable) {
-		final Task task = currentTask.get();
+		requireCurrent().executeWhenDone(future, runnable);
+	}
+
+	private static Task requireCurrent() {
+		final Task task = current();
 		if (task == null) {
 			throw new ForkFromNonTaskThreadException();
 		}
-		task.executeWhenDone(future, runnable);
+		return task;
+	}
+
+	/** Get the task bound to the calling thread, or null if there is none. */
+	private static Task current() {
+		final Thread thread = Thread.currentThread();
+		if (thread instanceof TaskBoundThread) {
+			return ((TaskBoundThread) thread).getBoundTask();
+		}
+		return currentTask.get();
+	}
+
+	/** Bind a task to the calling thread.  Null removes the binding. */
+	private static void bind(final Task task) {
+		final Thread thread = Thread.currentThread();
+		if (thread instanceof TaskBoundThread) {
+			((TaskBoundThread) thread).setBoundTask(task);
+		} else {
+			currentTask.set(task);
+		}
 	}
 
 	public static <T> ListenableFuture<List<T>> combineFutures(final List<ListenableFuture<T>> futures) {
@@ -187,37 +489,57 @@ public class Task {
 		return future;
 	}
 
+	/**
+	 * Advance to the next state once all work for the current state is done.
+	 * 
+	 * The Monitor only reaches 0 once per state so at most one thread will
+	 * attempt each transition.  The compare-and-set guards against a
+	 * transition racing with an error driven completion.
+	 */
 	private void onQuiet() {
-		switch(state) {
+		final State current = state.get();
+		switch(current) {
 		case UNSCHEDULED: break;
 		case COMPLETE: break;
 		case BLOCKED:
-			setState(State.INITIALIZING);
+			transition(current, State.INITIALIZING);
 			break;
 		case INITIALIZING:
-			setState(State.EXECUTING);
+			transition(current, State.EXECUTING);
 			break;
 		case EXECUTING:
-			setState(State.FINALIZING);
+			transition(current, State.FINALIZING);
 			break;
 		case FINALIZING:
-			setState(State.COMPLETE);
+			transition(current, State.COMPLETE);
 			break;
 		}
 	}
 
-	private void setState(final State state) {
-		if (state != State.COMPLETE && isInError()) {
-			setState(State.COMPLETE);
+	private void transition(final State from, final State to) {
+		if (state.compareAndSet(from, to)) {
+			if (stats != null) {
+				stats.transition(from, to, System.nanoTime());
+			}
+			enterState(to);
+		}
+	}
+
+	/** Perform the actions for a state which has just been entered. */
+	private void enterState(final State entered) {
+		if (deadline != null && isPhase(entered) && deadline.isExpired()) {
+			stop(new DeadlineExceededException());
+		}
+		if (entered != State.COMPLETE && isInError()) {
+			transition(entered, State.COMPLETE);
 			return;
 		}
 
-		this.state = state;
-		switch(state) {
+		switch(entered) {
 		case UNSCHEDULED: break;
 		case BLOCKED:
 			if (!scheduledWork.isLocked()) {
-				setState(State.INITIALIZING);
+				transition(State.BLOCKED, State.INITIALIZING);
 			}
 			break;
 		case INITIALIZING:
@@ -235,6 +557,10 @@ public class Task {
 		}
 	}
 
+	private static boolean isPhase(final State state) {
+		return state == State.INITIALIZING || state == State.EXECUTING || state == State.FINALIZING;
+	}
+
 	private boolean isInError() {
 		return !errors.isEmpty();
 	}
@@ -251,26 +577,52 @@ public class Task {
 		forkRunnables(finalizers);
 	}
 
-	private synchronized void notifyTaskWaiters() {
-		for (final Runnable runnable : completionListeners) {
-			runnable.run();
-		}
-		notifyAll();
+	private void notifyTaskWaiters() {
+		pendingFutures.clear();
+		completionListeners.close();
+		completion.countDown();
+		externalListeners.close();
 	}
 
+	/**
+	 * Execute the runnables for a phase.
+	 * 
+	 * When the phase starts on a thread which is finishing work for this same
+	 * task, one of the runnables is handed back to that thread as a
+	 * continuation rather than submitted to the executor.  A node whose
+	 * phases complete synchronously therefore runs every phase in a single
+	 * executor hop.
+	 */
 	private void forkRunnables(final Collection<Runnable> runnables) {
+		// Every runnable is counted before any is submitted so the guard can
+		// be released first.  Otherwise the guard could be the last release
+		// and the next phase would start on this thread rather than fused.
+		final List<Runnable> submitted = Lists.newArrayList();
+		Runnable fused = null;
 		try {
 			scheduledWork.acquire();
+			final boolean canFuse = current() == this;
 			for (final Runnable runnable : runnables) {
-				execute(runnable);
+				scheduledWork.acquire();
+				if (canFuse && fused == null) {
+					fused = runnable;
+				} else {
+					submitted.add(runnable);
+				}
+			}
+			if (fused != null) {
+				continuation.set(fused);
 			}
 		} finally {
 			scheduledWork.release();
 		}
+		for (final Runnable runnable : submitted) {
+			executor.execute(new Worker(runnable, true, false));
+		}
 	}
 
 	public static void addFatalError(final Throwable e) {
-		final Task task = currentTask.get();
+		final Task task = current();
 		task.errors.add(e);
 	}
 
@@ -279,25 +631,100 @@ public class Task {
 	}
 	private class Worker implements Runnable {
 		private final Runnable inner;
-		public Worker(final Runnable inner) {
+
+		/**
+		 * True if this runs on the task's own executor and so may continue
+		 * directly into the next phase.
+		 */
+		private final boolean fusible;
+
+		/** True if this waits on a future rather than an executor queue. */
+		private final boolean onFuture;
+
+		/** Time this was submitted, or 0 if stats are not recorded. */
+		private final long queued;
+
+		public Worker(final Runnable inner, final boolean fusible, final boolean onFuture) {
 			this.inner = inner;
+			this.fusible = fusible;
+			this.onFuture = onFuture;
+			this.queued = stats == null ? 0 : System.nanoTime();
 		}
 
 		@Override
 		public void run() {
 			// If executor runs in same thread we can get recursive calls here
 			// we need to make sure we restore the correct value.
-			final Task previousTask = currentTask.get();
+			final Task previousTask = current();
+			if (!fusible) {
+				runUnfused(previousTask);
+				return;
+			}
+
+			try {
+				bind(Task.this);
+				runOne(inner, false);
+				for (Runnable next = continuation.getAndSet(null); next != null; next = continuation.getAndSet(null)) {
+					runOne(next, true);
+				}
+			} finally {
+				bind(previousTask);
+			}
+		}
+
+		/**
+		 * Run one work item and release it.  The release happens while this
+		 * task is still bound to the thread so a phase transition triggered
+		 * by the release can hand its work back as a continuation.
+		 */
+		private void runOne(final Runnable runnable, final boolean continued) {
+			final long started = stats == null ? 0 : System.nanoTime();
+			try {
+				if (!isStopped()) {
+					runnable.run();
+				}
+			} catch (final Throwable t) {
+				addFatalError(t);
+			} finally {
+				if (continued) {
+					record(started, started, false);
+				} else {
+					record(queued, started, onFuture);
+				}
+				scheduledWork.release();
+			}
+		}
+
+		/**
+		 * Run the work item and release it after unbinding the task so any
+		 * phase transition is submitted to the task's executor.
+		 */
+		private void runUnfused(final Task previousTask) {
+			final long started = stats == null ? 0 : System.nanoTime();
 			try {
-				currentTask.set(Task.this);
-				inner.run();
+				bind(Task.this);
+				if (!isStopped()) {
+					inner.run();
+				}
 			} catch (final Throwable t) {
 				addFatalError(t);
 			} finally {
-				currentTask.set(previousTask);
+				bind(previousTask);
+				record(queued, started, onFuture);
 				scheduledWork.release();
 			}
 		}
+
+		/**
+		 * Record the timings of a finished work item.  Called before the
+		 * release so the task is still in the phase the item ran in.  A
+		 * continuation was never queued so it passes its own start time.
+		 */
+		private void record(final long submitted, final long started, final boolean waitedOnFuture) {
+			if (stats != null) {
+				stats.ran(state.get(), submitted, started, System.nanoTime(), waitedOnFuture);
+			}
+		}
 	}
 
 	private static final class FutureCombiner<T> extends
@@ -305,8 +732,10 @@ public class Task {
 
 		private final AtomicInteger remaining;
 		private final ArrayList<T> values;
+		private final List<ListenableFuture<T>> futures;
 
 		public FutureCombiner(final List<ListenableFuture<T>> futures) {
+			this.futures = futures;
 			remaining = new AtomicInteger(futures.size());
 			values = new ArrayList<T>();
 			for (int n = 0; n < futures.size(); ++ n) {
@@ -327,12 +756,24 @@ public class Task {
 						if (remaining.decrementAndGet() == 0) {
 							set(values);
 						}
-					} catch (final ExecutionException e) {
+					} catch (final ExecutionException|CancellationException e) {
 						setException(e);
 						throw new FatalErrorException("Error unwinding list of futures.", e);
 					}
 				}});
 		}
+
+		/** Cancelling the combined future cancels every item. */
+		@Override
+		public boolean cancel(final boolean mayInterruptIfRunning) {
+			if (!super.cancel(mayInterruptIfRunning)) {
+				return false;
+			}
+			for (final ListenableFuture<T> item : futures) {
+				item.cancel(mayInterruptIfRunning);
+			}
+			return true;
+		}
 	}
 
 	public static class ForkFromNonTaskThreadException extends RuntimeException {
@@ -363,6 +804,13 @@ public class Task {
 
 	}
 
+	public static final class DeadlineExceededException extends RuntimeException {
+		private static final long serialVersionUID = 4461906227370318262L;
+		public DeadlineExceededException() {
+			super("The deadline of the task passed before its work was done.");
+		}
+	}
+
 	public static final class DependencyFailureException extends RuntimeException {
 		private static final long serialVersionUID = -5150369448056789457L;
 		private final Task predecessor;
@@ -380,7 +828,7 @@ public class Task {
 	@Override
 	public String toString() {
 		return "Task [workers=" + workers + ", errors=" + errors
-				+ ", scheduledWork=" + scheduledWork + ", state=" + state + "]\n";
+				+ ", scheduledWork=" + scheduledWork + ", state=" + state.get() + "]\n";
 	}
 
 }
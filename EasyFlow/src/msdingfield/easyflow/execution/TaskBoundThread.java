@@ -0,0 +1,21 @@
+package msdingfield.easyflow.execution;
+
+/**
+ * A thread which carries its Task binding in a field.
+ * 
+ * Task.fork() needs to find the task bound to the calling thread.  Threads
+ * created by DefaultExecutor implement this interface so the lookup is a
+ * field read instead of a ThreadLocal lookup.  Other threads fall back to a
+ * ThreadLocal.
+ * 
+ * @author Matt
+ *
+ */
+interface TaskBoundThread {
+
+	/** Get the task bound to this thread or null. */
+	Task getBoundTask();
+
+	/** Bind a task to this thread.  Null removes the binding. */
+	void setBoundTask(Task task);
+}
@@ -0,0 +1,200 @@
+package msdingfield.easyflow.execution;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Timings recorded for one scheduled Task.
+ * 
+ * A Task only records timings once Task.recordStats() has been called.  An
+ * unrecorded task holds no TaskStats and takes no timestamps.
+ * 
+ * All times are System.nanoTime() values.  A time which has not been reached
+ * yet is reported as 0 and a duration which can not be computed yet is
+ * reported as 0.
+ * 
+ * Work handed to Task.fork(ListenableFuture, Runnable) is counted as future
+ * wait rather than queue wait.  Its wait runs from the fork until the
+ * runnable starts, so it includes the hop onto the executor after the future
+ * completes.
+ * 
+ * @author Matt
+ *
+ */
+public final class TaskStats {
+
+	/** The phases of a Task which run work. */
+	public static enum Phase {
+		/** Runnables added with addInitializer(). */
+		INITIALIZING,
+
+		/** Runnables added with addWorker() plus anything they fork. */
+		EXECUTING,
+
+		/** Runnables added with addFinalizer(). */
+		FINALIZING
+	}
+
+	private static final int PHASES = Phase.values().length;
+
+	private volatile long scheduledTime;
+	private volatile long unblockedTime;
+	private volatile long completedTime;
+
+	private final AtomicLongArray phaseStart = new AtomicLongArray(PHASES);
+	private final AtomicLongArray phaseDequeued = new AtomicLongArray(PHASES);
+	private final AtomicLongArray phaseEnd = new AtomicLongArray(PHASES);
+	private final AtomicLongArray queueWait = new AtomicLongArray(PHASES);
+	private final AtomicLongArray runTime = new AtomicLongArray(PHASES);
+	private final AtomicLongArray runCount = new AtomicLongArray(PHASES);
+	private final AtomicLong futureWait = new AtomicLong();
+	private final AtomicLong futureCount = new AtomicLong();
+
+	TaskStats() {}
+
+	/** Time the task was scheduled. */
+	public long getScheduledTime() {
+		return scheduledTime;
+	}
+
+	/** Time the last dependency of the task completed. */
+	public long getUnblockedTime() {
+		return unblockedTime;
+	}
+
+	/** Time the task completed. */
+	public long getCompletedTime() {
+		return completedTime;
+	}
+
+	/** Time the phase started and its runnables were submitted. */
+	public long getPhaseStartTime(final Phase phase) {
+		return phaseStart.get(phase.ordinal());
+	}
+
+	/** Time the first runnable of the phase started running. */
+	public long getPhaseDequeuedTime(final Phase phase) {
+		return phaseDequeued.get(phase.ordinal());
+	}
+
+	/** Time the last runnable of the phase finished. */
+	public long getPhaseEndTime(final Phase phase) {
+		return phaseEnd.get(phase.ordinal());
+	}
+
+	/** Time spent waiting for dependencies. */
+	public long getBlockedNanos() {
+		return duration(scheduledTime, unblockedTime);
+	}
+
+	/** Time from the start of a phase to its end. */
+	public long getPhaseNanos(final Phase phase) {
+		return duration(getPhaseStartTime(phase), getPhaseEndTime(phase));
+	}
+
+	/** Sum of the time the runnables of a phase spent queued on an executor. */
+	public long getQueueWaitNanos(final Phase phase) {
+		return queueWait.get(phase.ordinal());
+	}
+
+	/** Sum of the time the runnables of a phase spent running. */
+	public long getRunNanos(final Phase phase) {
+		return runTime.get(phase.ordinal());
+	}
+
+	/** Number of runnables run in a phase. */
+	public long getRunCount(final Phase phase) {
+		return runCount.get(phase.ordinal());
+	}
+
+	/** Sum of the time runnables forked on a future waited to start. */
+	public long getFutureWaitNanos() {
+		return futureWait.get();
+	}
+
+	/** Number of runnables forked on a future. */
+	public long getFutureWaitCount() {
+		return futureCount.get();
+	}
+
+	/** Time from scheduling to completion. */
+	public long getElapsedNanos() {
+		return duration(scheduledTime, completedTime);
+	}
+
+	void scheduled(final long now) {
+		scheduledTime = now;
+	}
+
+	/** Record a state transition.  Called once per transition. */
+	void transition(final Task.State from, final Task.State to, final long now) {
+		final Phase ended = phaseOf(from);
+		if (ended != null) {
+			phaseEnd.set(ended.ordinal(), now);
+		} else if (from == Task.State.BLOCKED) {
+			unblockedTime = now;
+		}
+
+		final Phase started = phaseOf(to);
+		if (started != null) {
+			phaseStart.set(started.ordinal(), now);
+		} else if (to == Task.State.COMPLETE) {
+			completedTime = now;
+		}
+	}
+
+	/**
+	 * Record one runnable.
+	 * 
+	 * @param state The state the task was in when the runnable started.
+	 * @param queued Time the runnable was submitted.
+	 * @param started Time the runnable started.
+	 * @param finished Time the runnable finished.
+	 * @param onFuture True if the runnable waited on a future.
+	 */
+	void ran(final Task.State state, final long queued, final long started, final long finished, final boolean onFuture) {
+		final Phase phase = phaseOf(state);
+		if (phase == null) {
+			return;
+		}
+		final int i = phase.ordinal();
+		phaseDequeued.compareAndSet(i, 0, started);
+		if (onFuture) {
+			futureWait.addAndGet(started - queued);
+			futureCount.incrementAndGet();
+		} else {
+			queueWait.addAndGet(i, started - queued);
+		}
+		runTime.addAndGet(i, finished - started);
+		runCount.incrementAndGet(i);
+	}
+
+	private static Phase phaseOf(final Task.State state) {
+		switch (state) {
+		case INITIALIZING:
+			return Phase.INITIALIZING;
+		case EXECUTING:
+			return Phase.EXECUTING;
+		case FINALIZING:
+			return Phase.FINALIZING;
+		default:
+			return null;
+		}
+	}
+
+	private static long duration(final long from, final long to) {
+		return from == 0 || to == 0 ? 0 : to - from;
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder str = new StringBuilder("TaskStats [blocked=").append(getBlockedNanos());
+		for (final Phase phase : Phase.values()) {
+			str.append(", ").append(phase).append("=[queueWait=").append(getQueueWaitNanos(phase))
+			.append(", run=").append(getRunNanos(phase))
+			.append(", elapsed=").append(getPhaseNanos(phase)).append(']');
+		}
+		return str.append(", futureWait=").append(getFutureWaitNanos())
+				.append(", elapsed=").append(getElapsedNanos()).append(']').toString();
+	}
+}
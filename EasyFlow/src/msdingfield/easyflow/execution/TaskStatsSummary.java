@@ -0,0 +1,90 @@
+package msdingfield.easyflow.execution;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import msdingfield.easyflow.execution.TaskStats.Phase;
+
+/**
+ * TaskStats added up over many runs of the same node.
+ * 
+ * Durations are totals in nanoseconds.  Divide by getCount() for the mean.
+ * Runs may be added concurrently.
+ * 
+ * @author Matt
+ *
+ */
+public final class TaskStatsSummary {
+
+	private static final int PHASES = Phase.values().length;
+
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong blocked = new AtomicLong();
+	private final AtomicLongArray queueWait = new AtomicLongArray(PHASES);
+	private final AtomicLongArray runTime = new AtomicLongArray(PHASES);
+	private final AtomicLong futureWait = new AtomicLong();
+	private final AtomicLong elapsed = new AtomicLong();
+	private final AtomicLong maxElapsed = new AtomicLong();
+
+	/** Add the stats of one completed run. */
+	public void add(final TaskStats stats) {
+		blocked.addAndGet(stats.getBlockedNanos());
+		for (final Phase phase : Phase.values()) {
+			queueWait.addAndGet(phase.ordinal(), stats.getQueueWaitNanos(phase));
+			runTime.addAndGet(phase.ordinal(), stats.getRunNanos(phase));
+		}
+		futureWait.addAndGet(stats.getFutureWaitNanos());
+
+		final long runElapsed = stats.getElapsedNanos();
+		elapsed.addAndGet(runElapsed);
+		for (long max = maxElapsed.get(); runElapsed > max; max = maxElapsed.get()) {
+			if (maxElapsed.compareAndSet(max, runElapsed)) {
+				break;
+			}
+		}
+		count.incrementAndGet();
+	}
+
+	/** Number of runs added. */
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getBlockedNanos() {
+		return blocked.get();
+	}
+
+	public long getQueueWaitNanos(final Phase phase) {
+		return queueWait.get(phase.ordinal());
+	}
+
+	public long getRunNanos(final Phase phase) {
+		return runTime.get(phase.ordinal());
+	}
+
+	public long getFutureWaitNanos() {
+		return futureWait.get();
+	}
+
+	public long getElapsedNanos() {
+		return elapsed.get();
+	}
+
+	/** The longest elapsed time of a single run. */
+	public long getMaxElapsedNanos() {
+		return maxElapsed.get();
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder str = new StringBuilder("TaskStatsSummary [count=").append(getCount())
+				.append(", blocked=").append(getBlockedNanos());
+		for (final Phase phase : Phase.values()) {
+			str.append(", ").append(phase).append("=[queueWait=").append(getQueueWaitNanos(phase))
+			.append(", run=").append(getRunNanos(phase)).append(']');
+		}
+		return str.append(", futureWait=").append(getFutureWaitNanos())
+				.append(", elapsed=").append(getElapsedNanos())
+				.append(", maxElapsed=").append(getMaxElapsedNanos()).append(']').toString();
+	}
+}
@@ -0,0 +1,197 @@
+package msdingfield.easyflow.graph;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import msdingfield.easyflow.execution.Deadline;
+import msdingfield.easyflow.execution.Task;
+
+/**
+ * An immutable, precompiled schedule for evaluating a Graph.
+ * 
+ * Building a Task for a Graph requires walking all of the nodes and looking
+ * up the predecessors of each.  Since the shape of a graph never changes,
+ * this work is done once when the plan is compiled.  Each node is assigned an
+ * integer id equal to its position in topological order and the dependency
+ * structure is stored as predecessor counts and successor id arrays.
+ * 
+ * Creating a Task from a plan only allocates one Task per node plus a
+ * single completion listener per node which signals the successors.
+ * 
+ * An ExecutionPlan may be used to create any number of Tasks sequentially or
+ * concurrently.
+ * 
+ * @author Matt
+ *
+ */
+public final class ExecutionPlan<T extends GraphNode> {
+
+	/** Nodes in topological order.  The index is the node id. */
+	private final List<T> nodes;
+
+	/** Number of direct predecessors for each node id. */
+	private final int[] predecessorCounts;
+
+	/** Ids of the direct successors for each node id. */
+	private final int[][] successors;
+
+	/**
+	 * Compile a plan for the given graph.
+	 * 
+	 * @param graph The graph to compile.
+	 * @return The compiled plan.
+	 */
+	public static <T extends GraphNode> ExecutionPlan<T> compile(final Graph<T> graph) {
+		return new ExecutionPlan<T>(graph);
+	}
+
+	private ExecutionPlan(final Graph<T> graph) {
+		nodes = graph.getTopologicalOrder();
+		predecessorCounts = new int[nodes.size()];
+		successors = new int[nodes.size()][];
+		for (int id = 0; id < nodes.size(); ++id) {
+			predecessorCounts[id] = graph.getPredecessorCount(id);
+			successors[id] = graph.getSuccessorIds(id);
+		}
+	}
+
+	/** Get all nodes in topological order.  The index of a node is its id. */
+	public List<T> getNodes() {
+		return nodes;
+	}
+
+	/** Get the number of nodes in the plan. */
+	public int size() {
+		return nodes.size();
+	}
+
+	/** Get the number of direct predecessors of the node with the given id. */
+	public int getPredecessorCount(final int id) {
+		return predecessorCounts[id];
+	}
+
+	/** Get the ids of the direct successors of the node with the given id. */
+	public int[] getSuccessors(final int id) {
+		return successors[id].clone();
+	}
+
+	/**
+	 * Create an unscheduled Task which evaluates every node in the plan.
+	 * 
+	 * The returned task completes once all of the node tasks complete.
+	 * Scheduling it schedules all of the node tasks.
+	 * 
+	 * @param factory Creates the Task for each node.
+	 * @param executor Executor bound to each created task.
+	 * @return The unscheduled task.
+	 */
+	public Task newTask(final TaskFactory<T> factory, final Executor executor) {
+		return newTask(factory, executor, null);
+	}
+
+	/**
+	 * Create an unscheduled Task which evaluates every node in the plan
+	 * within a deadline.
+	 * 
+	 * Every node task gets the deadline.  The returned task watches it and
+	 * stops any node tasks still running when it passes, failing them with
+	 * a DeadlineExceededException.
+	 * 
+	 * @param factory Creates the Task for each node.
+	 * @param executor Executor bound to each created task.
+	 * @param deadline The deadline or null for none.
+	 * @return The unscheduled task.
+	 */
+	public Task newTask(final TaskFactory<T> factory, final Executor executor, final Deadline deadline) {
+		final Task[] tasks = new Task[nodes.size()];
+		for (int id = 0; id < tasks.length; ++id) {
+			tasks[id] = factory.create(executor, nodes.get(id));
+			tasks[id].addDependencies(predecessorCounts[id]);
+			if (deadline != null) {
+				tasks[id].setDeadline(deadline);
+			}
+		}
+
+		final PlanTask planTask = new PlanTask(executor, tasks);
+		for (int id = 0; id < tasks.length; ++id) {
+			tasks[id].addCompletionListener(new SuccessorSignal(tasks, successors[id], id, planTask));
+		}
+		if (deadline != null) {
+			planTask.setDeadline(deadline).watchDeadline();
+		}
+		return planTask;
+	}
+
+	/** Signals the successors of a node and the plan task on completion. */
+	private static final class SuccessorSignal implements Runnable {
+		private final Task[] tasks;
+		private final int[] successorIds;
+		private final int id;
+		private final Task planTask;
+
+		public SuccessorSignal(final Task[] tasks, final int[] successorIds, final int id, final Task planTask) {
+			this.tasks = tasks;
+			this.successorIds = successorIds;
+			this.id = id;
+			this.planTask = planTask;
+		}
+
+		@Override
+		public void run() {
+			final Task completed = tasks[id];
+			for (final int successorId : successorIds) {
+				tasks[successorId].dependencyComplete(completed);
+			}
+			planTask.dependencyComplete(completed);
+		}
+	}
+
+	/**
+	 * Task which completes when all node tasks complete.
+	 * 
+	 * This behaves like a GroupTask except the dependencies are signalled by
+	 * SuccessorSignal rather than a listener per subtask.
+	 */
+	private static final class PlanTask extends Task {
+		private final Task[] tasks;
+
+		public PlanTask(final Executor executor, final Task[] tasks) {
+			super(executor);
+			this.tasks = tasks;
+			addDependencies(tasks.length);
+		}
+
+		@Override
+		public Task schedule() {
+			for (final Task task : tasks) {
+				task.schedule();
+			}
+
+			super.schedule();
+
+			return this;
+		}
+
+		@Override
+		protected boolean stop(final Throwable reason) {
+			if (!super.stop(reason)) {
+				return false;
+			}
+			for (final Task task : tasks) {
+				stopTask(task, reason);
+			}
+			return true;
+		}
+
+		@Override
+		public String toString() {
+			return "PlanTask [super=" + super.toString() + ", tasks=" + Arrays.toString(tasks) + "]";
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "ExecutionPlan [nodes=" + nodes + "]";
+	}
+}
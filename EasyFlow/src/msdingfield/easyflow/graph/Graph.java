@@ -1,6 +1,7 @@
 package msdingfield.easyflow.graph;
 
-import java.util.Collection;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -11,12 +12,14 @@ import msdingfield.easyflow.graph.support.DuplicateOutputsFoundException;
 import msdingfield.easyflow.graph.support.NodeNotFoundException;
 import msdingfield.easyflow.graph.support.OutputNotFoundException;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
 /** A graph of FlowNodes.
- *
+ * 
  * A FlowGraph analysis and exposes the dependency structure of a collection
  * of FlowNodes.  A FlowNode instance defines a node of a directed graph by
  * naming input and output vertices.  The FlowGraph connects nodes by matching
@@ -28,224 +31,504 @@ import com.google.common.collect.Sets;
  * a set of FlowNodes will throw a DuplicateOutputsFoundException.
  * 
  * Cycles are also not allowed.  Constructing a FlowGraph which contains cycles
- * will throw CyclicDependencyException.
+ * will throw CyclicDependencyException naming the nodes of one cycle.
  * 
  * However, it is not required that every output be consumed or that every
- * input receive a value.  Unused outputs are ignored.  Typically, nodes
- * with unsatisfied inputs are also ignored.  The expectation is that the graph
- * will define a superset of the task nodes desired for a single use and so
- * only those required should be evaluated.
- *
+ * input receive a value.  Unused outputs are ignored.  The expectation is
+ * that the graph will define a superset of the task nodes desired for a
+ * single use and so only those required should be evaluated.
+ * getSubGraphForOutputs() selects them, and given the inputs which will be
+ * provided it also drops nodes with unsatisfied inputs.
+ * 
+ * Internally each node has an integer id equal to its position in
+ * topological order and edges are stored as arrays of ids.  Construction is
+ * linear in the number of nodes and edges and does not recurse, so very
+ * large and very deep graphs can be built.
+ * 
  * @author Matt
  *
  */
 public class Graph<Node extends GraphNode> {
 
 	/** All nodes in graph. */
-	private final Set<Node> allNodes = Sets.newHashSet();
+	private final ImmutableSet<Node> allNodes;
 
 	/**
-	 * Map from the named output to producing node.
+	 * Map from the named output to the id of the producing node.
 	 * 
 	 * The presence of a name in this map implies the name is the output of
 	 * exactly 1 node in the graph.  However, no inference is possible on the
 	 * number of nodes consuming the output.
 	 */
-	private final Map<String, Node> outputNameToNode = Maps.newHashMap();
+	private final Map<String, Integer> outputNameToId;
 
 	/**
-	 * Map from named input to all consuming nodes.
+	 * All nodes in topological order.
 	 * 
-	 * The presence of a name in this map implies the name is the input of
-	 * 1 or more nodes in the graph.  However, no inference is possible on the
-	 * number of nodes producing the input.
+	 * Every node appears after all of its predecessors.  The index of a node
+	 * is its id.
 	 */
-	private final Map<String, Set<Node>> inputNameToNodes = Maps.newHashMap();
+	private final List<Node> topologicalOrder;
+
+	/** Id of each node. */
+	private final Map<Node, Integer> ids;
 
 	/**
-	 * Map of a node to its direct predecessor nodes.
-	 * 
-	 * This is a map from a node to all of its non-transitive predecessors.
-	 * That is, there is a directed edge into Node N from each node in the set
-	 * directPredecessors.get(N).
+	 * Ids of the direct predecessors of each node.
 	 * 
 	 * This implies the following constraint:
 	 * 
-	 * ND.getInputs().contains(NM) iff exists P in directPredecessors.get(ND)
-	 * such that P.getOutputs().contains(NM)
+	 * ND.getInputs().contains(NM) iff exists P in predecessors of ND such
+	 * that P.getOutputs().contains(NM)
 	 */
-	private final Map<Node, Set<Node>> directPredecessors = Maps.newHashMap();
+	private final Adjacency predecessors;
 
 	/**
-	 * Map of node to its direct successor nodes.
-	 * 
-	 * This is a map from a node to all of its non-transitive successors.
-	 * That is, there is a directed edge from Node N into each node in the set
-	 * directSuccessors.get(N).
+	 * Ids of the direct successors of each node.
 	 * 
 	 * This implies the following constraint:
 	 * 
-	 * ND.getOutputs().contains(NM) iff exists S in directSuccessors.get(ND)
-	 * such that S.getInputs().contains(NM)
+	 * ND.getOutputs().contains(NM) iff exists S in successors of ND such
+	 * that S.getInputs().contains(NM)
 	 */
-	private final Map<Node, Set<Node>> directSuccessors = Maps.newHashMap();
+	private final Adjacency successors;
+
+	/** Built by the first transitive query. */
+	private volatile Reachability reachability = null;
 
 	/** Create FlowGraph from a set of nodes. */
 	public Graph(final Set<Node> nodes) {
-		allNodes.addAll(nodes);
-		init();
+		allNodes = ImmutableSet.copyOf(nodes);
+
+		// Until sorted, nodes are numbered by their position in allNodes
+		final List<Node> unsorted = allNodes.asList();
+		outputNameToId = indexOutputs(unsorted);
+		final Adjacency unsortedPredecessors = Adjacency.predecessors(unsorted, outputNameToId);
+		final int[] order = sort(unsorted, unsortedPredecessors);
+
+		final int[] rank = new int[order.length];
+		final ImmutableList.Builder<Node> sorted = ImmutableList.builder();
+		ids = Maps.newHashMapWithExpectedSize(order.length);
+		for (int id = 0; id < order.length; ++id) {
+			rank[order[id]] = id;
+			sorted.add(unsorted.get(order[id]));
+			ids.put(unsorted.get(order[id]), id);
+		}
+		topologicalOrder = sorted.build();
+		for (final Map.Entry<String, Integer> entry : outputNameToId.entrySet()) {
+			entry.setValue(rank[entry.getValue()]);
+		}
+
+		predecessors = unsortedPredecessors.relabel(order, rank);
+		successors = predecessors.reverse();
 	}
 
 	/** Get all nodes in the graph. */
 	public Set<Node> getAllNodes() {
-		return Collections.unmodifiableSet(allNodes);
+		return allNodes;
+	}
+
+	/** Get all nodes in the graph ordered so each follows its predecessors. */
+	public List<Node> getTopologicalOrder() {
+		return topologicalOrder;
 	}
 
 	/** Get all direct predecessors of a node. */
 	public Set<Node> getDirectPredecessors(final Node node) {
 		assert node != null;
-		if (!directSuccessors.containsKey(node)) {
-			throw new NodeNotFoundException("Failed to get direct predecessors.  The requested node is not part of the graph.");
-		}
-		return Collections.unmodifiableSet(directPredecessors.get(node));
+		final int id = getId(node, "Failed to get direct predecessors.");
+		return Collections.unmodifiableSet(toNodes(predecessors, id));
 	}
 
 	/** Get all transitive predecessors of a node. */
 	public Set<Node> getTransitivePredecessors(final Node node) {
 		assert node != null;
-		final Set<Node> predecessors = Sets.newHashSet();
+		final int id = getId(node, "Failed to get transitive predecessors.");
+		return toNodes(getReachability().ancestors[id]);
+	}
 
-		// We can do this because we know there are no cycles
-		final List<Node> stack = Lists.newArrayList(getDirectPredecessors(node));
-		while (!stack.isEmpty()) {
-			final Node current = stack.remove(stack.size()-1);
-			predecessors.add(current);
-			stack.addAll(getDirectPredecessors(current));
-		}
+	/** Get all transitive successors of a node. */
+	public Set<Node> getTransitiveSuccessors(final Node node) {
+		assert node != null;
+		final int id = getId(node, "Failed to get transitive successors.");
+		return toNodes(getReachability().descendants[id]);
+	}
 
-		return predecessors;
+	/** True if there is a path from predecessor to node. */
+	public boolean isTransitivePredecessor(final Node predecessor, final Node node) {
+		assert predecessor != null && node != null;
+		final int predecessorId = getId(predecessor, "Failed to check for a path.");
+		final int id = getId(node, "Failed to check for a path.");
+		return predecessorId < id && getReachability().ancestors[id].get(predecessorId);
 	}
 
 	/** Get all nodes which are required to produce a given output. */
 	public Set<Node> getTransitiveProducerSet(final String outputName) {
 		assert outputName != null;
-		if (!outputNameToNode.containsKey(outputName)) {
-			throw new OutputNotFoundException("Could not find transitive predecssors for '" + outputName + "'.");
-		}
-		final Node node = outputNameToNode.get(outputName);
-		final Set<Node> pred = getTransitivePredecessors(node);
-		pred.add(node);
-		return pred;
+		return toNodes(getProducerIds(Collections.singleton(outputName)));
 	}
 
 	/** Get all direct successors of a node. */
 	public Set<Node> getDirectSuccessors(final Node node) {
 		assert node != null;
-		if (!directSuccessors.containsKey(node)) {
-			throw new NodeNotFoundException("Failed to get direct successors.  The requested node is not part of the graph.");
-		}
-		return Collections.unmodifiableSet(directSuccessors.get(node));
+		final int id = getId(node, "Failed to get direct successors.");
+		return Collections.unmodifiableSet(toNodes(successors, id));
 	}
 
 	/** Creates a minimal graph with the requested outputs. */
 	public Graph<Node> getSubGraphForOutputs(final Set<String> outputNames) {
-		final Set<Node> subgraphNodes = Sets.newHashSet();
-		for (final String outputName : outputNames) {
-			subgraphNodes.addAll(getTransitiveProducerSet(outputName));
+		return new Graph<Node>(toNodes(getProducerIds(outputNames)));
+	}
+
+	/**
+	 * Creates a minimal graph with the requested outputs which can be
+	 * evaluated given a set of provided inputs.
+	 * 
+	 * A node is dropped if one of its inputs is neither provided nor produced
+	 * by a node which is kept.  A requested output whose producer is dropped
+	 * is not produced.
+	 * 
+	 * @param outputNames The requested outputs.
+	 * @param providedInputs Names of the values which will be provided.
+	 * @return The subgraph.
+	 */
+	public Graph<Node> getSubGraphForOutputs(final Set<String> outputNames, final Set<String> providedInputs) {
+		// Ids ascend in topological order so predecessors are checked first
+		final BitSet producerIds = getProducerIds(outputNames);
+		final BitSet runnable = new BitSet(topologicalOrder.size());
+		for (int id = producerIds.nextSetBit(0); id >= 0; id = producerIds.nextSetBit(id + 1)) {
+			if (isSatisfied(topologicalOrder.get(id), providedInputs, runnable)) {
+				runnable.set(id);
+			}
 		}
-		return new Graph<Node>(subgraphNodes);
+
+		final BitSet subgraphIds = new BitSet(topologicalOrder.size());
+		final List<String> stack = Lists.newArrayList(outputNames);
+		while (!stack.isEmpty()) {
+			final Integer id = outputNameToId.get(stack.remove(stack.size()-1));
+			if (id != null && runnable.get(id) && !subgraphIds.get(id)) {
+				subgraphIds.set(id);
+				stack.addAll(topologicalOrder.get(id).getInputs());
+			}
+		}
+		return new Graph<Node>(toNodes(subgraphIds));
+	}
+
+	/** Get the number of direct predecessors of the node with the given id. */
+	int getPredecessorCount(final int id) {
+		return predecessors.count(id);
 	}
 
-	private void init() {
-		initInputOutputMaps();
-		initGraph();
-		checkCycles();
+	/** Get the sorted ids of the direct successors of the node with the given id. */
+	int[] getSuccessorIds(final int id) {
+		return successors.get(id);
 	}
 
-	private void initInputOutputMaps() {
-		for (final Node op : allNodes) {
-			for (final String output : op.getOutputs()) {
-				if (outputNameToNode.containsKey(output)) {
-					throw new DuplicateOutputsFoundException("Duplicate output.");
+	/** True if every input of the node is provided or produced by a runnable node. */
+	private boolean isSatisfied(final Node node, final Set<String> providedInputs, final BitSet runnable) {
+		for (final String input : node.getInputs()) {
+			if (!providedInputs.contains(input)) {
+				final Integer producerId = outputNameToId.get(input);
+				if (producerId == null || !runnable.get(producerId)) {
+					return false;
 				}
-				outputNameToNode.put(output, op);
 			}
+		}
+		return true;
+	}
 
-			for (final String inputName : op.getInputs()) {
-				if (!inputNameToNodes.containsKey(inputName)) {
-					inputNameToNodes.put(inputName, Sets.<Node>newHashSet());
+	/**
+	 * Ids of the producers of some outputs and all of their transitive predecessors.
+	 * 
+	 * This walks the predecessors from the producers, visiting each node once,
+	 * so it does not build the Reachability of the whole graph.
+	 */
+	private BitSet getProducerIds(final Set<String> outputNames) {
+		final BitSet producerIds = new BitSet(topologicalOrder.size());
+		final int[] stack = new int[topologicalOrder.size()];
+		int depth = 0;
+		for (final String outputName : outputNames) {
+			final Integer id = outputNameToId.get(outputName);
+			if (id == null) {
+				throw new OutputNotFoundException("Could not find transitive predecssors for '" + outputName + "'.");
+			}
+			if (!producerIds.get(id)) {
+				producerIds.set(id);
+				stack[depth++] = id;
+			}
+		}
+		while (depth > 0) {
+			final int id = stack[--depth];
+			for (int i = predecessors.offsets[id]; i < predecessors.offsets[id + 1]; ++i) {
+				final int predecessorId = predecessors.ids[i];
+				if (!producerIds.get(predecessorId)) {
+					producerIds.set(predecessorId);
+					stack[depth++] = predecessorId;
 				}
-				inputNameToNodes.get(inputName).add(op);
 			}
 		}
+		return producerIds;
+	}
+
+	private int getId(final Node node, final String message) {
+		final Integer id = ids.get(node);
+		if (id == null) {
+			throw new NodeNotFoundException(message + "  The requested node is not part of the graph.");
+		}
+		return id;
+	}
+
+	private Set<Node> toNodes(final BitSet nodeIds) {
+		final Set<Node> nodes = Sets.newHashSetWithExpectedSize(nodeIds.cardinality());
+		for (int id = nodeIds.nextSetBit(0); id >= 0; id = nodeIds.nextSetBit(id + 1)) {
+			nodes.add(topologicalOrder.get(id));
+		}
+		return nodes;
+	}
+
+	private Set<Node> toNodes(final Adjacency adjacency, final int id) {
+		final Set<Node> nodes = Sets.newHashSetWithExpectedSize(adjacency.count(id));
+		for (int i = adjacency.offsets[id]; i < adjacency.offsets[id + 1]; ++i) {
+			nodes.add(topologicalOrder.get(adjacency.ids[i]));
+		}
+		return nodes;
 	}
 
-	private void initGraph() {
-		for (final Node op : allNodes) {
-			directSuccessors.put(op, Sets.<Node>newHashSet());
-			for (final String output : op.getOutputs()) {
-				if (inputNameToNodes.containsKey(output)) {
-					final Collection<Node> followers = inputNameToNodes.get(output);
-					directSuccessors.get(op).addAll(followers);
+	private Reachability getReachability() {
+		Reachability result = reachability;
+		if (result == null) {
+			synchronized (this) {
+				result = reachability;
+				if (result == null) {
+					result = new Reachability(predecessors, successors);
+					reachability = result;
 				}
 			}
+		}
+		return result;
+	}
 
-			directPredecessors.put(op, Sets.<Node>newHashSet());
-			for (final String input : op.getInputs()) {
-				if (outputNameToNode.containsKey(input)) {
-					directPredecessors.get(op).add(outputNameToNode.get(input));
+	/** Map each output to the position of its producer, rejecting duplicates. */
+	private static <N extends GraphNode> Map<String, Integer> indexOutputs(final List<N> nodes) {
+		final Map<String, Integer> outputs = Maps.newHashMapWithExpectedSize(nodes.size());
+		for (int index = 0; index < nodes.size(); ++index) {
+			for (final String output : nodes.get(index).getOutputs()) {
+				final Integer previous = outputs.put(output, index);
+				if (previous != null) {
+					throw new DuplicateOutputsFoundException("Duplicate output '" + output + "' produced by "
+							+ nodes.get(previous) + " and " + nodes.get(index) + ".");
 				}
 			}
 		}
+		return outputs;
 	}
 
-	private void checkCycles() {
-		GraphSort.sort(this);
+	/**
+	 * Sort nodes so each follows its predecessors.
+	 * 
+	 * This is Kahn's algorithm: a node is emitted once all of its
+	 * predecessors have been.  Any nodes never emitted are on or downstream
+	 * of a cycle.
+	 * 
+	 * @return The positions of the nodes in topological order.
+	 */
+	private static <N extends GraphNode> int[] sort(final List<N> nodes, final Adjacency predecessors) {
+		final Adjacency successors = predecessors.reverse();
+		final int[] remaining = new int[nodes.size()];
+		final int[] order = new int[nodes.size()];
+		int tail = 0;
+		for (int index = 0; index < nodes.size(); ++index) {
+			remaining[index] = predecessors.count(index);
+			if (remaining[index] == 0) {
+				order[tail++] = index;
+			}
+		}
+
+		for (int head = 0; head < tail; ++head) {
+			final int index = order[head];
+			for (int i = successors.offsets[index]; i < successors.offsets[index + 1]; ++i) {
+				final int successor = successors.ids[i];
+				if (--remaining[successor] == 0) {
+					order[tail++] = successor;
+				}
+			}
+		}
+
+		if (tail < nodes.size()) {
+			throw new CyclicDependencyException("Cycle found: " + describeCycle(nodes, predecessors, remaining) + ".");
+		}
+		return order;
 	}
 
-	private static final class GraphSort<T extends GraphNode> {
+	/**
+	 * Find and describe one cycle among the nodes which could not be sorted.
+	 * 
+	 * Every such node has a predecessor which could not be sorted either, so
+	 * following them backwards must eventually revisit a node.
+	 */
+	private static <N extends GraphNode> String describeCycle(final List<N> nodes, final Adjacency predecessors, final int[] remaining) {
+		int current = 0;
+		while (remaining[current] == 0) {
+			++current;
+		}
 
-		public static <E extends GraphNode> List<E> sort(final Graph<E> system) {
-			return new GraphSort<E>(system).sortInternal();
+		final int[] visitedAt = new int[nodes.size()];
+		Arrays.fill(visitedAt, -1);
+		final List<Integer> path = Lists.newArrayList();
+		while (visitedAt[current] < 0) {
+			visitedAt[current] = path.size();
+			path.add(current);
+			int next = -1;
+			for (int i = predecessors.offsets[current]; next < 0; ++i) {
+				if (remaining[predecessors.ids[i]] > 0) {
+					next = predecessors.ids[i];
+				}
+			}
+			current = next;
 		}
 
-		private final List<T> schedule = Lists.newArrayList();
-		private final Map<T,Void> scheduling = Maps.newIdentityHashMap();
-		private final Map<T,Void> scheduled = Maps.newIdentityHashMap();
+		// The path runs from consumer to producer so print it backwards
+		final StringBuilder description = new StringBuilder().append(nodes.get(current));
+		for (int i = path.size() - 1; i >= visitedAt[current]; --i) {
+			description.append(" -> ").append(nodes.get(path.get(i)));
+		}
+		return description.toString();
+	}
 
-		private final Graph<T> sys;
+	/**
+	 * Node adjacency in compressed sparse row form.
+	 * 
+	 * The neighbours of node N are ids[offsets[N]] to ids[offsets[N+1]-1],
+	 * in ascending order and without duplicates.
+	 */
+	private static final class Adjacency {
+		private final int[] offsets;
+		private final int[] ids;
 
-		private GraphSort(final Graph<T> sys) {
-			this.sys = sys;
+		private Adjacency(final int[] offsets, final int[] ids) {
+			this.offsets = offsets;
+			this.ids = ids;
 		}
 
-		private List<T> sortInternal() {
-			for (final T op : sys.getAllNodes()) {
-				scheduleInternal(op);
+		/** The producers of the inputs of each node. */
+		public static <N extends GraphNode> Adjacency predecessors(final List<N> nodes, final Map<String, Integer> outputs) {
+			final int[] offsets = new int[nodes.size() + 1];
+			int[] ids = new int[nodes.size()];
+			int count = 0;
+			for (int index = 0; index < nodes.size(); ++index) {
+				offsets[index] = count;
+				for (final String input : nodes.get(index).getInputs()) {
+					final Integer producer = outputs.get(input);
+					if (producer != null) {
+						if (count == ids.length) {
+							ids = Arrays.copyOf(ids, 2 * count + 1);
+						}
+						ids[count++] = producer;
+					}
+				}
+				count = sortUnique(ids, offsets[index], count);
 			}
-			return schedule;
+			offsets[nodes.size()] = count;
+			return new Adjacency(offsets, ids);
+		}
+
+		public int count(final int node) {
+			return offsets[node + 1] - offsets[node];
 		}
 
-		private void scheduleInternal(final T op) {
-			if (scheduled.containsKey(op)) {
-				return;
+		public int[] get(final int node) {
+			return Arrays.copyOfRange(ids, offsets[node], offsets[node + 1]);
+		}
+
+		/** The same edges pointing the other way. */
+		public Adjacency reverse() {
+			final int size = offsets.length - 1;
+			final int[] reverseOffsets = new int[size + 1];
+			for (int i = 0; i < offsets[size]; ++i) {
+				++reverseOffsets[ids[i] + 1];
+			}
+			for (int node = 0; node < size; ++node) {
+				reverseOffsets[node + 1] += reverseOffsets[node];
 			}
 
-			if (scheduling.containsKey(op)) {
-				throw new CyclicDependencyException();
+			// Visiting sources in order keeps each reversed row sorted
+			final int[] next = Arrays.copyOf(reverseOffsets, size);
+			final int[] reverseIds = new int[offsets[size]];
+			for (int node = 0; node < size; ++node) {
+				for (int i = offsets[node]; i < offsets[node + 1]; ++i) {
+					reverseIds[next[ids[i]]++] = node;
+				}
 			}
+			return new Adjacency(reverseOffsets, reverseIds);
+		}
 
-			try {
-				scheduling.put(op, null);
+		/**
+		 * Renumber the nodes.
+		 * 
+		 * @param order The old number of each new number.
+		 * @param rank The new number of each old number.
+		 */
+		public Adjacency relabel(final int[] order, final int[] rank) {
+			final int[] newOffsets = new int[offsets.length];
+			final int[] newIds = new int[offsets[offsets.length - 1]];
+			int count = 0;
+			for (int node = 0; node < order.length; ++node) {
+				newOffsets[node] = count;
+				for (int i = offsets[order[node]]; i < offsets[order[node] + 1]; ++i) {
+					newIds[count++] = rank[ids[i]];
+				}
+				Arrays.sort(newIds, newOffsets[node], count);
+			}
+			newOffsets[order.length] = count;
+			return new Adjacency(newOffsets, newIds);
+		}
+
+		/** Sort ids[from, to) and remove duplicates, returning the new end. */
+		private static int sortUnique(final int[] ids, final int from, final int to) {
+			Arrays.sort(ids, from, to);
+			int end = from;
+			for (int i = from; i < to; ++i) {
+				if (end == from || ids[end - 1] != ids[i]) {
+					ids[end++] = ids[i];
+				}
+			}
+			return end;
+		}
+	}
 
-				for (final T pred : sys.getDirectPredecessors(op)) {
-					scheduleInternal(pred);
+	/**
+	 * Transitive predecessor and successor ids of each node id.
+	 * 
+	 * Since ids follow topological order, the bits of ancestors[N] are all
+	 * below N and those of descendants[N] are all above it.  The sets are
+	 * built in id order from the sets of the direct neighbours, so a
+	 * transitive query costs one pass over a bitset rather than a walk of the
+	 * graph.  They take up to n^2 bits so are only built when first needed.
+	 */
+	private static final class Reachability {
+		private final BitSet[] ancestors;
+		private final BitSet[] descendants;
+
+		public Reachability(final Adjacency predecessors, final Adjacency successors) {
+			final int size = predecessors.offsets.length - 1;
+			ancestors = new BitSet[size];
+			for (int id = 0; id < size; ++id) {
+				final BitSet reach = new BitSet(id);
+				for (int i = predecessors.offsets[id]; i < predecessors.offsets[id + 1]; ++i) {
+					reach.set(predecessors.ids[i]);
+					reach.or(ancestors[predecessors.ids[i]]);
 				}
+				ancestors[id] = reach;
+			}
 
-				schedule.add(op);
-				scheduled.put(op, null);
-			} finally {
-				scheduling.remove(op);
+			descendants = new BitSet[size];
+			for (int id = size - 1; id >= 0; --id) {
+				final BitSet reach = new BitSet();
+				for (int i = successors.offsets[id]; i < successors.offsets[id + 1]; ++i) {
+					reach.set(successors.ids[i]);
+					reach.or(descendants[successors.ids[i]]);
+				}
+				descendants[id] = reach;
 			}
 		}
 	}
@@ -1,23 +1,29 @@
 package msdingfield.easyflow.graph;
 
-import java.util.Map;
 import java.util.concurrent.Executor;
 
+import msdingfield.easyflow.execution.Deadline;
 import msdingfield.easyflow.execution.DefaultExecutor;
-import msdingfield.easyflow.execution.GroupTask;
 import msdingfield.easyflow.execution.Task;
 
-import com.google.common.collect.Maps;
-
 /**
  * A builder for creating a Task which executes a FlowGraph.
  * 
  * FlowGraphTaskBuilder
- *  .graph(graph)
+ *  .graph(graph) | .plan(plan)
  *  .taskFactory(taskFactory)
  *  [.executor(executor)]
+ *  [.deadline(deadline)]
  *  .build()
  *  
+ * The executor defaults to DefaultExecutor.get().  A specific shared pool
+ * can be chosen with .executor(DefaultExecutor.get(Mode.WORK_STEALING)) or
+ * .executor(DefaultExecutor.get(Mode.FIXED_POOL)).
+ * 
+ * Building from a graph compiles an ExecutionPlan on every call.  Callers
+ * which build many tasks for the same graph should compile the plan once and
+ * build from the plan instead.
+ *  
  * @author Matt
  *
  */
@@ -26,6 +32,10 @@ public class GraphTaskBuilder {
 	public static <T extends GraphNode> FactoryStep<T> graph(final Graph<T> graph) {
 		return new Builder<T>().graph(graph);
 	}
+
+	public static <T extends GraphNode> FactoryStep<T> plan(final ExecutionPlan<T> plan) {
+		return new Builder<T>().plan(plan);
+	}
 	
 	public static interface FactoryStep<T extends GraphNode> {
 		ExecutorStep<T> taskFactory(final TaskFactory<T> factory);
@@ -36,19 +46,27 @@ public class GraphTaskBuilder {
 	}
 	
 	public static interface BuildStep<T extends GraphNode> {
+		BuildStep<T> deadline(final Deadline deadline);
 		Task build();
 	}
 
 	public static class Builder<T extends GraphNode> implements FactoryStep<T>, ExecutorStep<T>, BuildStep<T> {
 		private Graph<T> graph = null;
+		private ExecutionPlan<T> plan = null;
 		private TaskFactory<T> factory = null;
 		private Executor executor = DefaultExecutor.get();
+		private Deadline deadline = null;
 		
 		public FactoryStep<T> graph(final Graph<T> graph) {
 			this.graph = graph;
 			return this;
 		}
 
+		public FactoryStep<T> plan(final ExecutionPlan<T> plan) {
+			this.plan = plan;
+			return this;
+		}
+
 		@Override
 		public ExecutorStep<T> taskFactory(final TaskFactory<T> factory) {
 			this.factory = factory;
@@ -62,26 +80,15 @@ public class GraphTaskBuilder {
 		}
 		
 		@Override
-		public Task build() {
-			final Map<T, Task> table = Maps.newHashMap();
-			
-			// Initialize runners
-			for (final T op : graph.getAllNodes()) {
-				final Task task = factory.create(executor, op);
-				table.put(op, task);
-			}
-			
-			// Setup graph
-			for (final Map.Entry<T, Task> entry : table.entrySet()) {
-				final T currentOp = entry.getKey();
-				final Task currentTask = entry.getValue();
-				for (final T predecessorOp : graph.getDirectPredecessors(currentOp)) {
-					final Task predecessorTask = table.get(predecessorOp);
-					currentTask.waitFor(predecessorTask);
-				}
-			}
+		public BuildStep<T> deadline(final Deadline deadline) {
+			this.deadline = deadline;
+			return this;
+		}
 
-			return new GroupTask(executor, table.values());
+		@Override
+		public Task build() {
+			final ExecutionPlan<T> compiled = plan != null ? plan : ExecutionPlan.compile(graph);
+			return compiled.newTask(factory, executor, deadline);
 		}
 
 	}
@@ -0,0 +1,373 @@
+package msdingfield.easyflow.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+import msdingfield.easyflow.annotations.Activity;
+import msdingfield.easyflow.annotations.Batch;
+import msdingfield.easyflow.annotations.Cached;
+import msdingfield.easyflow.annotations.ForkOn;
+import msdingfield.easyflow.annotations.Input;
+import msdingfield.easyflow.annotations.Operation;
+import msdingfield.easyflow.annotations.Output;
+import msdingfield.easyflow.reflect.RegistryClassOperationBuilder;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Generates an OperationRegistry for each graph at build time.
+ * 
+ * For every package containing @Activity classes of a graph, a registry class
+ * is generated in that package.  The registry builds the ClassOperations with
+ * invokers and ports which call the constructor, operation method and fields
+ * directly.  The registry classes of each graph are listed in a resource
+ * which RegistryClassOperationBuilder reads at run time, so loading a graph
+ * does not scan the class path.
+ * 
+ * A generated class can not be rewritten, so @Activity classes found in a
+ * later round, such as those generated by another processor, get a further
+ * registry with a numbered name.  The resources are written in the last round.
+ * 
+ * Classes are selected the same way ClassPathScannerClassOperationBuilder
+ * selects them.  Classes which would fail to bind at run time are reported as
+ * compile errors instead.
+ * 
+ * The processor is registered in META-INF/services and runs whenever the
+ * EasyFlow jar is on the processor path.
+ * 
+ * @author Matt
+ *
+ */
+@SupportedAnnotationTypes("msdingfield.easyflow.annotations.Activity")
+public class ActivityProcessor extends AbstractProcessor {
+
+	/** Prefix of the generated registry class names. */
+	public static final String REGISTRY_CLASS_PREFIX = "EasyFlowGraph_";
+
+	/** Registry class names for each graph, collected over all rounds. */
+	private final Map<String, Set<String>> registries = Maps.newTreeMap();
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+		if (roundEnv.processingOver()) {
+			writeRegistryResources();
+			return false;
+		}
+
+		// graph -> package -> activities
+		final Map<String, Map<String, List<TypeElement>>> graphs = Maps.newTreeMap();
+		for (final Element element : roundEnv.getElementsAnnotatedWith(Activity.class)) {
+			if (!isOperationClass(element)) {
+				continue;
+			}
+			final TypeElement type = (TypeElement) element;
+			if (!validate(type)) {
+				continue;
+			}
+
+			final String graph = type.getAnnotation(Activity.class).graph();
+			final String pkg = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+			if (!graphs.containsKey(graph)) {
+				graphs.put(graph, Maps.<String, List<TypeElement>>newTreeMap());
+			}
+			if (!graphs.get(graph).containsKey(pkg)) {
+				graphs.get(graph).put(pkg, Lists.<TypeElement>newArrayList());
+			}
+			graphs.get(graph).get(pkg).add(type);
+		}
+
+		for (final Entry<String, Map<String, List<TypeElement>>> graph : graphs.entrySet()) {
+			for (final Entry<String, List<TypeElement>> pkg : graph.getValue().entrySet()) {
+				writeRegistry(graph.getKey(), pkg.getKey(), pkg.getValue());
+			}
+		}
+		return false;
+	}
+
+	/** Same selection as ClassPathScannerClassOperationBuilder. */
+	private boolean isOperationClass(final Element element) {
+		if (element.getKind() != ElementKind.CLASS) {
+			return false;
+		}
+		final TypeElement type = (TypeElement) element;
+		if (type.getNestingKind() != NestingKind.TOP_LEVEL && !type.getModifiers().contains(Modifier.STATIC)) {
+			return false;
+		}
+		for (final ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+			if (method.getAnnotation(Operation.class) != null) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/** Report classes which can not be bound. */
+	private boolean validate(final TypeElement type) {
+		boolean valid = true;
+		if (type.getModifiers().contains(Modifier.ABSTRACT)) {
+			error(type, "@Activity class cannot be abstract.");
+			valid = false;
+		}
+		for (Element enclosing = type; enclosing instanceof TypeElement; enclosing = enclosing.getEnclosingElement()) {
+			if (enclosing.getModifiers().contains(Modifier.PRIVATE)) {
+				error(type, "@Activity class must not be private or nested in a private class.");
+				valid = false;
+				break;
+			}
+		}
+		if (findNoArgConstructor(type) == null) {
+			error(type, "@Activity class must have a public default (no arg) constructor.");
+			valid = false;
+		}
+		final ExecutableElement method = findOperationMethod(type);
+		if (method == null) {
+			error(type, "@Activity class must have a public @Operation method.");
+			valid = false;
+		} else if (!method.getParameters().isEmpty()) {
+			error(method, "@Operation method must take an empty parameter list.");
+			valid = false;
+		}
+		final TypeMirror list = processingEnv.getTypeUtils().erasure(
+				processingEnv.getElementUtils().getTypeElement("java.util.List").asType());
+		for (final VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+			if (field.getAnnotation(Batch.class) != null && (field.getAnnotation(ForkOn.class) == null
+					|| !processingEnv.getTypeUtils().isAssignable(list, processingEnv.getTypeUtils().erasure(field.asType())))) {
+				error(field, "@Batch input must be @ForkOn and accept a java.util.List.");
+				valid = false;
+			}
+		}
+		return valid;
+	}
+
+	private ExecutableElement findNoArgConstructor(final TypeElement type) {
+		for (final ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+			if (constructor.getModifiers().contains(Modifier.PUBLIC) && constructor.getParameters().isEmpty()) {
+				return constructor;
+			}
+		}
+		return null;
+	}
+
+	private ExecutableElement findOperationMethod(final TypeElement type) {
+		for (final ExecutableElement method : ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(type))) {
+			if (method.getModifiers().contains(Modifier.PUBLIC) && method.getAnnotation(Operation.class) != null) {
+				return method;
+			}
+		}
+		return null;
+	}
+
+	private void writeRegistry(final String graph, final String pkg, final List<TypeElement> types) {
+		final String simpleName = newRegistryClassName(graph, pkg);
+		final String qualifiedName = pkg.isEmpty() ? simpleName : pkg + "." + simpleName;
+
+		final StringBuilder source = new StringBuilder();
+		if (!pkg.isEmpty()) {
+			source.append("package ").append(pkg).append(";\n\n");
+		}
+		// Names are fully qualified so they can not clash with user classes.
+		source.append("/** Operations of graph \"").append(escape(graph)).append("\".  Generated by ")
+		.append(getClass().getName()).append(".  Do not edit. */\n")
+		.append("public final class ").append(simpleName).append(" extends msdingfield.easyflow.reflect.AbstractOperationRegistry {\n\n")
+		.append("\tpublic ").append(simpleName).append("() {\n")
+		.append("\t\tsuper(\"").append(escape(graph)).append("\");\n")
+		.append("\t}\n\n")
+		.append("\t@Override\n")
+		.append("\t@SuppressWarnings({\"unchecked\", \"rawtypes\"})\n")
+		.append("\tpublic java.util.List<msdingfield.easyflow.reflect.ClassOperation> getOperations() {\n")
+		.append("\t\tfinal java.util.List<msdingfield.easyflow.reflect.ClassOperation> operations = new java.util.ArrayList<msdingfield.easyflow.reflect.ClassOperation>();\n");
+		for (final TypeElement type : types) {
+			appendOperation(source, type);
+		}
+		source.append("\t\treturn operations;\n")
+		.append("\t}\n")
+		.append("}\n");
+
+		try {
+			final Writer writer = processingEnv.getFiler().createSourceFile(qualifiedName, types.toArray(new Element[types.size()])).openWriter();
+			try {
+				writer.write(source.toString());
+			} finally {
+				writer.close();
+			}
+		} catch (final IOException e) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Failed to write " + qualifiedName + ": " + e);
+			return;
+		}
+
+		if (!registries.containsKey(graph)) {
+			registries.put(graph, Sets.<String>newTreeSet());
+		}
+		registries.get(graph).add(qualifiedName);
+	}
+
+	private void appendOperation(final StringBuilder source, final TypeElement type) {
+		final String name = type.getQualifiedName().toString();
+		final ExecutableElement method = findOperationMethod(type);
+		final boolean blocking = method.getAnnotation(Operation.class).blocking();
+		final boolean coalesce = type.getAnnotation(Activity.class).coalesce();
+
+		source.append("\t\t{\n")
+		.append("\t\t\tfinal msdingfield.easyflow.reflect.ClassOperation op = newOperation(").append(name).append(".class, \"")
+		.append(method.getSimpleName()).append("\", ").append(blocking).append(", ").append(coalesce)
+		.append(", new msdingfield.easyflow.reflect.OperationInvoker() {\n")
+		.append("\t\t\t\t@Override public Object newInstance() throws Throwable {\n")
+		.append("\t\t\t\t\treturn new ").append(name).append("();\n")
+		.append("\t\t\t\t}\n")
+		.append("\t\t\t\t@Override public void invoke(final Object instance) throws Throwable {\n")
+		.append("\t\t\t\t\t((").append(name).append(") instance).").append(method.getSimpleName()).append("();\n")
+		.append("\t\t\t\t}});\n");
+
+		for (final VariableElement field : ElementFilter.fieldsIn(processingEnv.getElementUtils().getAllMembers(type))) {
+			if (!field.getModifiers().contains(Modifier.PUBLIC)) {
+				continue;
+			}
+			final Input input = field.getAnnotation(Input.class);
+			final Output output = field.getAnnotation(Output.class);
+			if (input != null) {
+				appendInput(source, name, field, edgeName(field, input.connectedEdgeName()));
+			} else if (output != null) {
+				appendOutput(source, name, field, edgeName(field, output.connectedEdgeName()));
+			}
+		}
+
+		final Cached cached = type.getAnnotation(Cached.class);
+		if (cached != null) {
+			source.append("\t\t\top.setResultCache(new msdingfield.easyflow.reflect.ResultCache(")
+			.append(cached.maxSize()).append(", ").append(cached.ttlMillis()).append("L, ")
+			.append(cached.admitOnRepeat()).append("));\n");
+		}
+
+		source.append("\t\t\toperations.add(op);\n")
+		.append("\t\t}\n");
+	}
+
+	private void appendInput(final StringBuilder source, final String owner, final VariableElement field, final String edgeName) {
+		final TypeMirror fieldType = processingEnv.getTypeUtils().erasure(field.asType());
+		final ForkOn forkOn = field.getAnnotation(ForkOn.class);
+		final Batch batch = field.getAnnotation(Batch.class);
+		source.append("\t\t\top.addInput(new msdingfield.easyflow.reflect.GeneratedOperationInputPort(").append(owner).append(".class, \"")
+		.append(field.getSimpleName()).append("\", ").append(fieldType).append(".class, \"")
+		.append(escape(edgeName)).append("\", ").append(forkOn != null);
+		if (forkOn != null && batch != null) {
+			source.append(", new msdingfield.easyflow.reflect.ForkOptions(")
+			.append("msdingfield.easyflow.reflect.ForkOptions.batchSize(").append(batch.maxSize()).append("), false, ")
+			.append(forkOn.maxInFlight()).append(", true, ").append(batch.windowMillis()).append(")");
+		} else if (forkOn != null) {
+			source.append(", new msdingfield.easyflow.reflect.ForkOptions(")
+			.append(forkOn.chunkSize()).append(", ").append(forkOn.reuseInstance())
+			.append(", ").append(forkOn.maxInFlight()).append(")");
+		}
+		source.append(") {\n")
+		.append("\t\t\t\t@Override protected void write(final Object instance, final Object value) {\n")
+		.append("\t\t\t\t\t((").append(owner).append(") instance).").append(field.getSimpleName())
+		.append(" = (").append(boxedName(fieldType)).append(") value;\n")
+		.append("\t\t\t\t}});\n");
+	}
+
+	private void appendOutput(final StringBuilder source, final String owner, final VariableElement field, final String edgeName) {
+		final TypeMirror fieldType = processingEnv.getTypeUtils().erasure(field.asType());
+		source.append("\t\t\top.addOutput(new msdingfield.easyflow.reflect.GeneratedOperationOutputPort(").append(owner).append(".class, \"")
+		.append(field.getSimpleName()).append("\", ").append(fieldType).append(".class, \"")
+		.append(escape(edgeName)).append("\") {\n")
+		.append("\t\t\t\t@Override protected Object read(final Object instance) {\n")
+		.append("\t\t\t\t\treturn ((").append(owner).append(") instance).").append(field.getSimpleName()).append(";\n")
+		.append("\t\t\t\t}});\n");
+	}
+
+	/** Primitive types are cast to their box and unboxed on assignment. */
+	private String boxedName(final TypeMirror type) {
+		if (type.getKind().isPrimitive()) {
+			return processingEnv.getTypeUtils().boxedClass(processingEnv.getTypeUtils().getPrimitiveType(type.getKind())).getQualifiedName().toString();
+		}
+		return type.toString();
+	}
+
+	private static String edgeName(final VariableElement field, final String explicitEdgeName) {
+		return explicitEdgeName == null || explicitEdgeName.isEmpty() ? field.getSimpleName().toString() : explicitEdgeName;
+	}
+
+	private void writeRegistryResources() {
+		for (final Entry<String, Set<String>> graph : registries.entrySet()) {
+			final String resource = RegistryClassOperationBuilder.getResourceName(graph.getKey());
+			try {
+				final FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", resource);
+				final Writer writer = file.openWriter();
+				try {
+					for (final String name : graph.getValue()) {
+						writer.write(name);
+						writer.write("\n");
+					}
+				} finally {
+					writer.close();
+				}
+			} catch (final IOException e) {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Failed to write " + resource + ": " + e);
+			}
+		}
+	}
+
+	/** Name of a registry class for a graph which was not written in an earlier round. */
+	private String newRegistryClassName(final String graph, final String pkg) {
+		final String base = registryClassName(graph);
+		final Set<String> written = registries.containsKey(graph) ? registries.get(graph) : Collections.<String>emptySet();
+		String name = base;
+		for (int i = 2; written.contains(pkg.isEmpty() ? name : pkg + "." + name); ++i) {
+			name = base + "_" + i;
+		}
+		return name;
+	}
+
+	/**
+	 * Name of the registry class for a graph.  Graph names which are not
+	 * valid identifiers are sanitized and made unique with their hash.
+	 */
+	static String registryClassName(final String graph) {
+		final StringBuilder name = new StringBuilder(REGISTRY_CLASS_PREFIX);
+		for (final char c : graph.toCharArray()) {
+			name.append(Character.isJavaIdentifierPart(c) ? c : '_');
+		}
+		if (!name.toString().equals(REGISTRY_CLASS_PREFIX + graph)) {
+			name.append('_').append(Integer.toHexString(graph.hashCode()));
+		}
+		return name.toString();
+	}
+
+	private static String escape(final String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"");
+	}
+
+	private void error(final Element element, final String message) {
+		processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+	}
+
+}
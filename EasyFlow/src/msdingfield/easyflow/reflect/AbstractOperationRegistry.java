@@ -0,0 +1,77 @@
+package msdingfield.easyflow.reflect;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+
+import msdingfield.easyflow.reflect.support.InvalidOperationBindingException;
+
+/**
+ * Base class for generated OperationRegistry implementations.
+ * 
+ * @author Matt
+ *
+ */
+public abstract class AbstractOperationRegistry implements OperationRegistry {
+
+	private final String graph;
+
+	protected AbstractOperationRegistry(final String graph) {
+		this.graph = graph;
+	}
+
+	@Override
+	public String getGraph() {
+		return graph;
+	}
+
+	/**
+	 * Create a ClassOperation which uses the given invoker.
+	 * 
+	 * The constructor and operation method are still looked up so the
+	 * operation can be validated and compared like one built by
+	 * AnnotationClassOperationBuilder.  They are not used to invoke it.
+	 * 
+	 * @param type The operation class.
+	 * @param methodName Name of the public no arg operation method.
+	 * @param blocking True if the operation is a blocking operation.
+	 * @param invoker Creates instances and invokes the operation method.
+	 * @return The operation with no ports.
+	 */
+	protected static ClassOperation newOperation(final Class<?> type, final String methodName, final boolean blocking, final OperationInvoker invoker) {
+		return newOperation(type, methodName, blocking, false, invoker);
+	}
+
+	/**
+	 * Create a ClassOperation which uses the given invoker.
+	 * 
+	 * @param type The operation class.
+	 * @param methodName Name of the public no arg operation method.
+	 * @param blocking True if the operation is a blocking operation.
+	 * @param coalescing True if concurrent invocations with equal inputs share a run.
+	 * @param invoker Creates instances and invokes the operation method.
+	 * @return The operation with no ports.
+	 * @see #newOperation(Class, String, boolean, OperationInvoker)
+	 */
+	protected static ClassOperation newOperation(final Class<?> type, final String methodName, final boolean blocking,
+			final boolean coalescing, final OperationInvoker invoker) {
+		final ClassOperation operation = new ClassOperation();
+		operation.setOperationClass(type);
+		try {
+			final Constructor<?> constructor = type.getConstructor();
+			final Method method = type.getMethod(methodName);
+			operation.setConstructor(constructor);
+			operation.setOperationMethod(method);
+		} catch (final NoSuchMethodException e) {
+			throw new InvalidOperationBindingException("Generated registry does not match " + type.getName() + ".  Recompile the graph.", e);
+		}
+		operation.setBlocking(blocking);
+		operation.setCoalescing(coalescing);
+		operation.setInvoker(invoker);
+		return operation;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + " [graph=" + graph + "]";
+	}
+}
@@ -0,0 +1,250 @@
+package msdingfield.easyflow.reflect;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the parts of a class file needed to find operation classes.
+ * 
+ * The class file is parsed directly so the class is neither loaded nor
+ * initialized.  Only the constant pool, the class level @Activity annotation,
+ * the method level @Operation annotations and the InnerClasses attribute are
+ * decoded; everything else is skipped.
+ * 
+ * @author Matt
+ *
+ */
+final class ActivityClassFile {
+
+	private static final int MAGIC = 0xCAFEBABE;
+	private static final int ACC_STATIC = 0x0008;
+
+	private static final String ACTIVITY_DESCRIPTOR = "Lmsdingfield/easyflow/annotations/Activity;";
+	private static final String OPERATION_DESCRIPTOR = "Lmsdingfield/easyflow/annotations/Operation;";
+	private static final String ANNOTATIONS_ATTRIBUTE = "RuntimeVisibleAnnotations";
+	private static final String INNER_CLASSES_ATTRIBUTE = "InnerClasses";
+
+	/** Binary name of the class, e.g. pkg.Outer$Inner. */
+	private final String className;
+
+	/** Graph from @Activity or null if not annotated. */
+	private final String graph;
+
+	/** True for top level and static nested classes. */
+	private final boolean staticClass;
+
+	private ActivityClassFile(final String className, final String graph, final boolean staticClass) {
+		this.className = className;
+		this.graph = graph;
+		this.staticClass = staticClass;
+	}
+
+	public String getClassName() {
+		return className;
+	}
+
+	public String getGraph() {
+		return graph;
+	}
+
+	public boolean isStaticClass() {
+		return staticClass;
+	}
+
+	/**
+	 * Read a class file.
+	 * 
+	 * @param in The class file contents.  Not closed.
+	 * @return The class if it declares a method annotated with @Operation,
+	 *         otherwise null.
+	 * @throws IOException If the stream can not be read or is not a class file.
+	 */
+	public static ActivityClassFile read(final InputStream in) throws IOException {
+		final DataInputStream data = new DataInputStream(in);
+		if (data.readInt() != MAGIC) {
+			throw new IOException("Not a class file.");
+		}
+		data.readUnsignedShort(); // minor
+		data.readUnsignedShort(); // major
+
+		final String[] utf8 = new String[data.readUnsignedShort()];
+		final int[] classNameIndex = new int[utf8.length];
+		boolean mentionsOperation = false;
+		for (int i = 1; i < utf8.length; ++i) {
+			final int tag = data.readUnsignedByte();
+			switch (tag) {
+			case 1: // Utf8
+				utf8[i] = data.readUTF();
+				mentionsOperation |= OPERATION_DESCRIPTOR.equals(utf8[i]);
+				break;
+			case 7: // Class
+				classNameIndex[i] = data.readUnsignedShort();
+				break;
+			case 8: case 16: case 19: case 20: // String, MethodType, Module, Package
+				skip(data, 2);
+				break;
+			case 15: // MethodHandle
+				skip(data, 3);
+				break;
+			case 3: case 4: case 9: case 10: case 11: case 12: case 17: case 18:
+				skip(data, 4);
+				break;
+			case 5: case 6: // Long, Double take two entries
+				skip(data, 8);
+				++i;
+				break;
+			default:
+				throw new IOException("Unknown constant pool tag " + tag + ".");
+			}
+		}
+
+		// Cheap rejection of the vast majority of classes.
+		if (!mentionsOperation) {
+			return null;
+		}
+
+		data.readUnsignedShort(); // access flags
+		final int thisClass = data.readUnsignedShort();
+		data.readUnsignedShort(); // super class
+		skip(data, 2 * data.readUnsignedShort()); // interfaces
+
+		skipMembers(data, utf8, false); // fields
+		if (!skipMembers(data, utf8, true)) {
+			return null;
+		}
+
+		String graph = null;
+		boolean staticClass = true;
+		final int attributes = data.readUnsignedShort();
+		for (int a = 0; a < attributes; ++a) {
+			final String name = utf8[data.readUnsignedShort()];
+			final int length = data.readInt();
+			if (ANNOTATIONS_ATTRIBUTE.equals(name)) {
+				final int count = data.readUnsignedShort();
+				for (int n = 0; n < count; ++n) {
+					final String found = readAnnotation(data, utf8, ACTIVITY_DESCRIPTOR, "graph");
+					if (found != null) {
+						graph = found;
+					}
+				}
+			} else if (INNER_CLASSES_ATTRIBUTE.equals(name)) {
+				final int count = data.readUnsignedShort();
+				for (int n = 0; n < count; ++n) {
+					final int inner = data.readUnsignedShort();
+					data.readUnsignedShort(); // outer
+					data.readUnsignedShort(); // simple name
+					final int flags = data.readUnsignedShort();
+					if (inner == thisClass) {
+						staticClass = (flags & ACC_STATIC) != 0;
+					}
+				}
+			} else {
+				skip(data, length);
+			}
+		}
+
+		final String className = utf8[classNameIndex[thisClass]].replace('/', '.');
+		return new ActivityClassFile(className, graph, staticClass);
+	}
+
+	/**
+	 * Skip fields or methods.
+	 * 
+	 * @return True if checkOperation and a member is annotated @Operation.
+	 */
+	private static boolean skipMembers(final DataInputStream data, final String[] utf8, final boolean checkOperation) throws IOException {
+		boolean found = false;
+		final int members = data.readUnsignedShort();
+		for (int m = 0; m < members; ++m) {
+			skip(data, 6); // access, name, descriptor
+			final int attributes = data.readUnsignedShort();
+			for (int a = 0; a < attributes; ++a) {
+				final String name = utf8[data.readUnsignedShort()];
+				final int length = data.readInt();
+				if (checkOperation && ANNOTATIONS_ATTRIBUTE.equals(name)) {
+					final int count = data.readUnsignedShort();
+					for (int n = 0; n < count; ++n) {
+						found |= OPERATION_DESCRIPTOR.equals(readAnnotationType(data, utf8));
+					}
+				} else {
+					skip(data, length);
+				}
+			}
+		}
+		return found;
+	}
+
+	/** Read an annotation returning only its type. */
+	private static String readAnnotationType(final DataInputStream data, final String[] utf8) throws IOException {
+		final String type = utf8[data.readUnsignedShort()];
+		final int pairs = data.readUnsignedShort();
+		for (int p = 0; p < pairs; ++p) {
+			data.readUnsignedShort(); // element name
+			readElementValue(data, utf8);
+		}
+		return type;
+	}
+
+	/**
+	 * Read an annotation.
+	 * 
+	 * @return The string value of element if the annotation has the given
+	 *         type and element, otherwise null.
+	 */
+	private static String readAnnotation(final DataInputStream data, final String[] utf8, final String type, final String element) throws IOException {
+		final boolean matches = type.equals(utf8[data.readUnsignedShort()]);
+		String result = null;
+		final int pairs = data.readUnsignedShort();
+		for (int p = 0; p < pairs; ++p) {
+			final String name = utf8[data.readUnsignedShort()];
+			final String value = readElementValue(data, utf8);
+			if (matches && element.equals(name)) {
+				result = value;
+			}
+		}
+		return result;
+	}
+
+	/** Read an element value returning it if it is a String constant. */
+	private static String readElementValue(final DataInputStream data, final String[] utf8) throws IOException {
+		final int tag = data.readUnsignedByte();
+		switch (tag) {
+		case 's':
+			return utf8[data.readUnsignedShort()];
+		case 'B': case 'C': case 'D': case 'F': case 'I': case 'J': case 'S': case 'Z': case 'c':
+			skip(data, 2);
+			return null;
+		case 'e':
+			skip(data, 4);
+			return null;
+		case '@':
+			readAnnotationType(data, utf8);
+			return null;
+		case '[':
+			final int count = data.readUnsignedShort();
+			for (int i = 0; i < count; ++i) {
+				readElementValue(data, utf8);
+			}
+			return null;
+		default:
+			throw new IOException("Unknown element value tag " + (char) tag + ".");
+		}
+	}
+
+	private static void skip(final DataInputStream data, final int bytes) throws IOException {
+		int remaining = bytes;
+		while (remaining > 0) {
+			final int skipped = data.skipBytes(remaining);
+			if (skipped <= 0) {
+				throw new IOException("Unexpected end of class file.");
+			}
+			remaining -= skipped;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "ActivityClassFile [className=" + className + ", graph=" + graph + ", staticClass=" + staticClass + "]";
+	}
+}
@@ -4,6 +4,8 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 
+import msdingfield.easyflow.annotations.Activity;
+import msdingfield.easyflow.annotations.Cached;
 import msdingfield.easyflow.annotations.Input;
 import msdingfield.easyflow.annotations.Operation;
 import msdingfield.easyflow.annotations.Output;
@@ -26,9 +28,19 @@ public final class AnnotationClassOperationBuilder {
 		final ClassOperation operation = new ClassOperation();
 		operation.setOperationClass(type);
 
-		operation.setConstructor(findNoArgConstructor(type));
+		final Constructor<?> constructor = findNoArgConstructor(type);
+		operation.setConstructor(constructor);
 
-		operation.setOperationMethod(findOperationAnnotatedMethod(type));
+		final Method method = findOperationAnnotatedMethod(type);
+		operation.setOperationMethod(method);
+		operation.setBlocking(method.getAnnotation(Operation.class).blocking());
+		final Activity activity = type.getAnnotation(Activity.class);
+		operation.setCoalescing(activity != null && activity.coalesce());
+		final Cached cached = type.getAnnotation(Cached.class);
+		if (cached != null) {
+			operation.setResultCache(ResultCache.of(cached));
+		}
+		operation.setInvoker(MethodHandleOperationInvoker.create(constructor, method));
 
 		for (final Field field : type.getFields()) {
 			if (field.isAnnotationPresent(Input.class)) {
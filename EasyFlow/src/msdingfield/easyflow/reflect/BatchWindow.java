@@ -0,0 +1,226 @@
+package msdingfield.easyflow.reflect;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import msdingfield.easyflow.execution.DefaultExecutor;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Merges the batches of a batch operation from concurrent evaluations.
+ * 
+ * The first batch submitted opens a window.  Batches submitted while it is
+ * open whose other inputs are equal join it and their items are
+ * deduplicated.  The window closes windowMillis after it opened, or as soon
+ * as it holds maxSize distinct items.  The operation is then invoked once
+ * with the items of the window and the results are handed back to every
+ * evaluation which submitted to it.
+ * 
+ * The operation is invoked on the instance of the evaluation which opened
+ * the window.  It runs outside of any task, on DefaultExecutor.getBlocking()
+ * for a blocking operation and DefaultExecutor.get() otherwise, so it must
+ * not fork.
+ * 
+ * @author Matt
+ *
+ */
+final class BatchWindow {
+
+	/** Invokes the operation on a batch of items. */
+	interface BatchCall {
+		/**
+		 * Invoke the operation.
+		 * 
+		 * @param items The distinct items of the batch.
+		 * @return The value of each output by output index.
+		 */
+		Object[] invoke(List<Object> items);
+	}
+
+	/** Time each window stays open. */
+	private final long windowMillis;
+
+	/** Maximum number of distinct items in a window. */
+	private final int maxSize;
+
+	/** Runs the operation once a window closes. */
+	private final Executor executor;
+
+	/** The open windows by the other inputs of the operation. */
+	private final Map<List<Object>, Window> open = Maps.newHashMap();
+
+	/**
+	 * @param windowMillis Time each window stays open.
+	 * @param maxSize Maximum number of distinct items in a window.
+	 * @param blocking True if the operation may block.
+	 */
+	public BatchWindow(final long windowMillis, final int maxSize, final boolean blocking) {
+		this.windowMillis = windowMillis;
+		this.maxSize = maxSize;
+		this.executor = blocking ? DefaultExecutor.getBlocking() : DefaultExecutor.get();
+	}
+
+	/**
+	 * Add the items of a batch to the open window for its inputs.
+	 * 
+	 * Windows are opened as needed and a batch may be split across several
+	 * if a window fills up.  The future returned belongs to the caller, so
+	 * cancelling it does not affect the other evaluations in the window.
+	 * 
+	 * @param inputs The values of the other inputs of the operation.
+	 * @param items The items of the batch.
+	 * @param call Invokes the operation if this batch opens a window.
+	 * @return The outputs of each item by output index.
+	 */
+	public ListenableFuture<Map<Object, Object[]>> submit(final List<Object> inputs, final List<?> items, final BatchCall call) {
+		final List<ListenableFuture<Map<Object, Object[]>>> results = Lists.newArrayList();
+		final List<Window> full = Lists.newArrayList();
+		synchronized (open) {
+			Window window = null;
+			for (final Object item : items) {
+				if (window == null) {
+					window = open.get(inputs);
+					if (window == null) {
+						window = new Window(inputs, call);
+						open.put(inputs, window);
+						window.schedule();
+					}
+					results.add(window.results);
+				}
+				window.items.add(item);
+				if (window.items.size() >= maxSize) {
+					open.remove(inputs);
+					full.add(window);
+					window = null;
+				}
+			}
+		}
+		for (final Window window : full) {
+			window.close();
+		}
+
+		final SettableFuture<Map<Object, Object[]>> future = SettableFuture.create();
+		Futures.addCallback(Futures.transform(Futures.allAsList(results), new Function<List<Map<Object, Object[]>>, Map<Object, Object[]>>() {
+			@Override public Map<Object, Object[]> apply(final List<Map<Object, Object[]>> windows) {
+				if (windows.size() == 1) {
+					return windows.get(0);
+				}
+				final Map<Object, Object[]> merged = Maps.newHashMap();
+				for (final Map<Object, Object[]> window : windows) {
+					merged.putAll(window);
+				}
+				return merged;
+			}}), new FutureCallback<Map<Object, Object[]>>() {
+			@Override public void onSuccess(final Map<Object, Object[]> result) {
+				future.set(result);
+			}
+			@Override public void onFailure(final Throwable t) {
+				future.setException(t);
+			}});
+		return future;
+	}
+
+	/** The items of one window and the future of their results. */
+	private final class Window implements Runnable {
+		private final List<Object> inputs;
+		private final BatchCall call;
+		private final Set<Object> items = Sets.newLinkedHashSet();
+		private final SettableFuture<Map<Object, Object[]>> results = SettableFuture.create();
+		private final AtomicBoolean closed = new AtomicBoolean();
+		private ScheduledFuture<?> timer;
+
+		public Window(final List<Object> inputs, final BatchCall call) {
+			this.inputs = inputs;
+			this.call = call;
+		}
+
+		/** Close the window once windowMillis have passed. */
+		public void schedule() {
+			timer = DefaultExecutor.getTimer().schedule(new Runnable(){
+				@Override public void run() {
+					synchronized (open) {
+						if (open.get(inputs) == Window.this) {
+							open.remove(inputs);
+						}
+					}
+					close();
+				}}, windowMillis, TimeUnit.MILLISECONDS);
+		}
+
+		/** Invoke the operation unless already closed. */
+		public void close() {
+			if (closed.compareAndSet(false, true)) {
+				timer.cancel(false);
+				executor.execute(this);
+			}
+		}
+
+		@Override
+		public void run() {
+			try {
+				final List<Object> batch;
+				synchronized (open) {
+					batch = Collections.unmodifiableList(Lists.newArrayList(items));
+				}
+				final Object[] outputs = call.invoke(batch);
+				final List<ListenableFuture<Object>> futures = Lists.newArrayList();
+				for (final Object output : outputs) {
+					if (output instanceof ListenableFuture) {
+						@SuppressWarnings("unchecked")
+						final ListenableFuture<Object> future = (ListenableFuture<Object>) output;
+						futures.add(future);
+					}
+				}
+				if (futures.isEmpty()) {
+					results.set(split(batch, outputs));
+					return;
+				}
+				final ListenableFuture<List<Object>> resolved = Futures.allAsList(futures);
+				resolved.addListener(new Runnable(){
+					@Override public void run() {
+						try {
+							Uninterruptibles.getUninterruptibly(resolved);
+							for (int i = 0; i < outputs.length; ++i) {
+								if (outputs[i] instanceof ListenableFuture) {
+									outputs[i] = Uninterruptibles.getUninterruptibly((ListenableFuture<?>) outputs[i]);
+								}
+							}
+							results.set(split(batch, outputs));
+						} catch (final Throwable t) {
+							results.setException(t);
+						}
+					}}, executor);
+			} catch (final Throwable t) {
+				results.setException(t);
+			}
+		}
+
+		/** Split the outputs of the batch into the outputs of each item. */
+		private Map<Object, Object[]> split(final List<Object> batch, final Object[] outputs) {
+			final Map<Object, Object[]> byItem = Maps.newHashMapWithExpectedSize(batch.size());
+			for (int i = 0; i < batch.size(); ++i) {
+				final Object[] itemOutputs = new Object[outputs.length];
+				for (int output = 0; output < outputs.length; ++output) {
+					itemOutputs[output] = ClassOperationInstance.batchResult(outputs[output], batch, i);
+				}
+				byItem.put(batch.get(i), itemOutputs);
+			}
+			return byItem;
+		}
+	}
+}
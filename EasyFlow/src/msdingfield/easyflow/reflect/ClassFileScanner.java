@@ -0,0 +1,355 @@
+package msdingfield.easyflow.reflect;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import msdingfield.easyflow.reflect.support.InvalidOperationBindingException;
+
+import com.google.common.base.Splitter;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Finds operation classes by reading class files rather than loading them.
+ * 
+ * The class path of a class loader is taken from the URLs of any
+ * URLClassLoader in its parent chain plus the java.class.path system
+ * property, so any class loader may be used.  The Class-Path entries of jar
+ * manifests are followed as the JVM follows them.  Directories and jar files
+ * are read in parallel in batches of class files.
+ * 
+ * The result of a scan is cached per class loader and package.  Loading
+ * several graphs from the same package, or from a package inside one which
+ * was already scanned, reuses the earlier scan.
+ * 
+ * @author Matt
+ *
+ */
+public final class ClassFileScanner {
+
+	/** Number of class files read by one scan task. */
+	private static final int BATCH_SIZE = 64;
+
+	/** Key used for a scan of all packages. */
+	private static final String ALL_PACKAGES = "";
+
+	/**
+	 * Scan results by class loader, then by package.  The inner caches hold
+	 * the class path rather than the class loader so the loader can be
+	 * collected.
+	 */
+	private static final LoadingCache<ClassLoader, LoadingCache<String, ClassIndex>> CACHE = CacheBuilder.newBuilder()
+			.weakKeys()
+			.build(new CacheLoader<ClassLoader, LoadingCache<String, ClassIndex>>() {
+				@Override
+				public LoadingCache<String, ClassIndex> load(final ClassLoader classLoader) {
+					final Set<File> classPath = findClassPath(classLoader);
+					return CacheBuilder.newBuilder().build(new CacheLoader<String, ClassIndex>() {
+						@Override
+						public ClassIndex load(final String basePkg) {
+							return scan(classPath, basePkg);
+						}});
+				}});
+
+	private ClassFileScanner() {}
+
+	/**
+	 * Get the index of the operation classes in a package tree.
+	 * 
+	 * @param classLoader The class loader whose class path is scanned.
+	 * @param basePkg Java package to scan, including sub-packages.  Null for
+	 *                all packages.
+	 * @return The index.
+	 */
+	public static ClassIndex getIndex(final ClassLoader classLoader, final String basePkg) {
+		final String key = basePkg == null ? ALL_PACKAGES : basePkg;
+		final LoadingCache<String, ClassIndex> indexes = CACHE.getUnchecked(classLoader);
+		final ClassIndex cached = indexes.getIfPresent(key);
+		if (cached != null) {
+			return cached;
+		}
+
+		// Reuse a scan of an enclosing package if there is one.  The filtered
+		// index is cached too so every lookup of the package gets the same one.
+		for (String pkg = key; !pkg.isEmpty(); pkg = parentPackage(pkg)) {
+			final ClassIndex enclosing = indexes.getIfPresent(parentPackage(pkg));
+			if (enclosing != null) {
+				final ClassIndex filtered = enclosing.filter(key);
+				final ClassIndex raced = indexes.asMap().putIfAbsent(key, filtered);
+				return raced != null ? raced : filtered;
+			}
+		}
+		return indexes.getUnchecked(key);
+	}
+
+	/** Discard all cached scan results. */
+	public static void clearCache() {
+		CACHE.invalidateAll();
+	}
+
+	/**
+	 * Scan class path entries without caching.
+	 * 
+	 * @param classPath Directories and jar files to scan.
+	 * @param basePkg Java package to scan, including sub-packages.
+	 * @return The index.
+	 */
+	static ClassIndex scan(final Collection<File> classPath, final String basePkg) {
+		final String prefix = basePkg == null || basePkg.isEmpty() ? "" : basePkg.replace('.', '/') + "/";
+		final List<ZipFile> jars = Lists.newArrayList();
+		final List<Callable<List<ActivityClassFile>>> batches = Lists.newArrayList();
+		try {
+			for (final File entry : classPath) {
+				if (entry.isDirectory()) {
+					addDirectoryBatches(entry, prefix, batches);
+				} else if (entry.isFile()) {
+					final ZipFile jar = openJar(entry);
+					if (jar != null) {
+						jars.add(jar);
+						addJarBatches(jar, prefix, batches);
+					}
+				}
+			}
+			return new ClassIndex(runBatches(batches));
+		} finally {
+			for (final ZipFile jar : jars) {
+				try {
+					jar.close();
+				} catch (final IOException e) {
+					// Nothing else to do with it.
+				}
+			}
+		}
+	}
+
+	private static List<ActivityClassFile> runBatches(final List<Callable<List<ActivityClassFile>>> batches) {
+		final List<ActivityClassFile> classFiles = Lists.newArrayList();
+		if (batches.isEmpty()) {
+			return classFiles;
+		}
+
+		final int threads = Math.min(batches.size(), Runtime.getRuntime().availableProcessors());
+		final ExecutorService pool = Executors.newFixedThreadPool(threads,
+				new ThreadFactoryBuilder().setDaemon(true).setNameFormat("easyflow-scan-%d").build());
+		try {
+			// Results are collected in submission order so the first entry
+			// on the class path wins.
+			for (final Future<List<ActivityClassFile>> batch : pool.invokeAll(batches)) {
+				classFiles.addAll(Uninterruptibles.getUninterruptibly(batch));
+			}
+			return classFiles;
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InvalidOperationBindingException("Interrupted while scanning class path.", e);
+		} catch (final ExecutionException e) {
+			throw new InvalidOperationBindingException("Failed to scan class path.", e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	private static void addDirectoryBatches(final File root, final String prefix,
+			final List<Callable<List<ActivityClassFile>>> batches) {
+		final List<File> files = Lists.newArrayList();
+		collectClassFiles(new File(root, prefix), files);
+		for (final List<File> batch : Lists.partition(files, BATCH_SIZE)) {
+			batches.add(new Callable<List<ActivityClassFile>>() {
+				@Override public List<ActivityClassFile> call() throws IOException {
+					final List<ActivityClassFile> found = Lists.newArrayList();
+					for (final File file : batch) {
+						final InputStream in = new BufferedInputStream(new FileInputStream(file));
+						try {
+							addIfOperation(in, found);
+						} finally {
+							in.close();
+						}
+					}
+					return found;
+				}});
+		}
+	}
+
+	private static void collectClassFiles(final File dir, final List<File> files) {
+		final File[] children = dir.listFiles();
+		if (children == null) {
+			return;
+		}
+		for (final File child : children) {
+			if (child.isDirectory()) {
+				collectClassFiles(child, files);
+			} else if (child.getName().endsWith(".class")) {
+				files.add(child);
+			}
+		}
+	}
+
+	private static void addJarBatches(final ZipFile jar, final String prefix,
+			final List<Callable<List<ActivityClassFile>>> batches) {
+		final List<ZipEntry> entries = Lists.newArrayList();
+		final Enumeration<? extends ZipEntry> all = jar.entries();
+		while (all.hasMoreElements()) {
+			final ZipEntry entry = all.nextElement();
+			if (entry.getName().startsWith(prefix) && entry.getName().endsWith(".class")
+					&& !entry.getName().startsWith("META-INF/")) {
+				entries.add(entry);
+			}
+		}
+		for (final List<ZipEntry> batch : Lists.partition(entries, BATCH_SIZE)) {
+			batches.add(new Callable<List<ActivityClassFile>>() {
+				@Override public List<ActivityClassFile> call() throws IOException {
+					final List<ActivityClassFile> found = Lists.newArrayList();
+					for (final ZipEntry entry : batch) {
+						final InputStream in = new BufferedInputStream(jar.getInputStream(entry));
+						try {
+							addIfOperation(in, found);
+						} finally {
+							in.close();
+						}
+					}
+					return found;
+				}});
+		}
+	}
+
+	private static void addIfOperation(final InputStream in, final List<ActivityClassFile> found) {
+		try {
+			final ActivityClassFile classFile = ActivityClassFile.read(in);
+			if (classFile != null) {
+				found.add(classFile);
+			}
+		} catch (final IOException e) {
+			// Not a readable class file.  It could not be an operation anyway.
+		}
+	}
+
+	private static ZipFile openJar(final File file) {
+		try {
+			return new ZipFile(file);
+		} catch (final IOException e) {
+			return null;
+		}
+	}
+
+	/** Class path entries visible to a class loader, in search order. */
+	static Set<File> findClassPath(final ClassLoader classLoader) {
+		final List<ClassLoader> loaders = Lists.newArrayList();
+		for (ClassLoader loader = classLoader; loader != null; loader = loader.getParent()) {
+			loaders.add(0, loader);
+		}
+
+		final Set<File> entries = Sets.newLinkedHashSet();
+		for (final String path : Splitter.on(File.pathSeparatorChar).omitEmptyStrings().split(System.getProperty("java.class.path", ""))) {
+			addEntry(new File(path).getAbsoluteFile(), entries);
+		}
+		for (final ClassLoader loader : loaders) {
+			if (loader instanceof URLClassLoader) {
+				for (final URL url : ((URLClassLoader) loader).getURLs()) {
+					if ("file".equals(url.getProtocol())) {
+						addEntry(toFile(url), entries);
+					}
+				}
+			}
+		}
+		return entries;
+	}
+
+	/** Add an entry and, if it is a jar, the entries of its manifest Class-Path. */
+	private static void addEntry(final File entry, final Set<File> entries) {
+		if (entries.add(entry) && entry.isFile()) {
+			for (final File dependency : getManifestClassPath(entry)) {
+				addEntry(dependency, entries);
+			}
+		}
+	}
+
+	/**
+	 * Get the Class-Path entries of a jar's manifest.
+	 * 
+	 * Entries are URLs relative to the jar.  Those which are not files are
+	 * skipped.
+	 * 
+	 * @param jarFile The jar.
+	 * @return The entries, empty if the file is not a jar or has none.
+	 */
+	static Set<File> getManifestClassPath(final File jarFile) {
+		final Set<File> entries = Sets.newLinkedHashSet();
+		final JarFile jar;
+		try {
+			jar = new JarFile(jarFile);
+		} catch (final IOException e) {
+			return entries;
+		}
+		try {
+			final Manifest manifest = jar.getManifest();
+			final String classPath = manifest == null ? null : manifest.getMainAttributes().getValue(Attributes.Name.CLASS_PATH);
+			if (classPath != null) {
+				final URL base = jarFile.toURI().toURL();
+				for (final String path : Splitter.on(' ').omitEmptyStrings().split(classPath)) {
+					try {
+						final URL url = new URL(base, path);
+						if ("file".equals(url.getProtocol())) {
+							entries.add(toFile(url));
+						}
+					} catch (final MalformedURLException e) {
+						// The JVM ignores these too.
+					}
+				}
+			}
+		} catch (final IOException e) {
+			// Nothing else to do with it.
+		} finally {
+			try {
+				jar.close();
+			} catch (final IOException e) {
+				// Nothing else to do with it.
+			}
+		}
+		return entries;
+	}
+
+	private static File toFile(final URL url) {
+		try {
+			return new File(url.toURI()).getAbsoluteFile();
+		} catch (final URISyntaxException e) {
+			return new File(url.getPath()).getAbsoluteFile();
+		}
+	}
+
+	static boolean isInPackage(final String className, final String basePkg) {
+		if (basePkg == null || basePkg.isEmpty()) {
+			return true;
+		}
+		return className.startsWith(basePkg + ".");
+	}
+
+	private static String parentPackage(final String pkg) {
+		final int dot = pkg.lastIndexOf('.');
+		return dot < 0 ? ALL_PACKAGES : pkg.substring(0, dot);
+	}
+}
@@ -0,0 +1,90 @@
+package msdingfield.easyflow.reflect;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * The operation classes found by ClassFileScanner in one package tree.
+ * 
+ * Instances of ClassIndex are immutable and are shared by every graph
+ * loaded from the same package.
+ * 
+ * @author Matt
+ *
+ */
+public final class ClassIndex {
+
+	/** Static operation classes by binary class name. */
+	private final ImmutableSortedMap<String, ActivityClassFile> classes;
+
+	ClassIndex(final Collection<ActivityClassFile> classFiles) {
+		final ImmutableSortedMap.Builder<String, ActivityClassFile> builder = ImmutableSortedMap.naturalOrder();
+		final Set<String> seen = Sets.newHashSet();
+		for (final ActivityClassFile classFile : classFiles) {
+			// The first class on the class path hides later duplicates.
+			if (classFile.isStaticClass() && seen.add(classFile.getClassName())) {
+				builder.put(classFile.getClassName(), classFile);
+			}
+		}
+		classes = builder.build();
+	}
+
+	private ClassIndex(final ImmutableSortedMap<String, ActivityClassFile> classes) {
+		this.classes = classes;
+	}
+
+	/**
+	 * Get the names of the operation classes in a graph, sorted by name.
+	 * 
+	 * @param graph The graph or null for all operation classes.
+	 * @return The binary class names.
+	 */
+	public List<String> getClassNames(final String graph) {
+		final List<String> names = Lists.newArrayList();
+		for (final ActivityClassFile classFile : classes.values()) {
+			if (graph == null || graph.equals(classFile.getGraph())) {
+				names.add(classFile.getClassName());
+			}
+		}
+		return ImmutableList.copyOf(names);
+	}
+
+	/** Get the names of all graphs with at least one operation class. */
+	public Set<String> getGraphs() {
+		final ImmutableSortedSet.Builder<String> graphs = ImmutableSortedSet.naturalOrder();
+		for (final ActivityClassFile classFile : classes.values()) {
+			if (classFile.getGraph() != null) {
+				graphs.add(classFile.getGraph());
+			}
+		}
+		return graphs.build();
+	}
+
+	/** Get the subset of the index within a package tree. */
+	ClassIndex filter(final String basePkg) {
+		final ImmutableSortedMap.Builder<String, ActivityClassFile> builder = ImmutableSortedMap.naturalOrder();
+		for (final ActivityClassFile classFile : classes.values()) {
+			if (ClassFileScanner.isInPackage(classFile.getClassName(), basePkg)) {
+				builder.put(classFile.getClassName(), classFile);
+			}
+		}
+		return new ClassIndex(builder.build());
+	}
+
+	/** Number of operation classes in the index. */
+	public int size() {
+		return classes.size();
+	}
+
+	@Override
+	public String toString() {
+		return "ClassIndex [classes=" + classes.values() + "]";
+	}
+}
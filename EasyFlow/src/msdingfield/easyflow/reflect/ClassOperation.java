@@ -4,6 +4,7 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.google.common.collect.Sets;
 
@@ -32,6 +33,24 @@ public class ClassOperation {
 	/** The outputs from the operation. */
 	private Set<OperationOutputPort> outputs = Sets.newHashSet();
 
+	/** True if the operation method may block and must not run on the task executor. */
+	private boolean blocking = false;
+
+	/** Shares runs among concurrent invocations with equal inputs, or null if not coalescing. */
+	private SingleFlight singleFlight = null;
+
+	/** Outputs reused across evaluations, or null if not cached. */
+	private ResultCache resultCache = null;
+
+	/** Creates instances and invokes operationMethod.  Built on first use if not set. */
+	private volatile OperationInvoker invoker;
+
+	/** Running average nanoseconds per forked item, or 0 if not yet measured. */
+	private final AtomicLong forkItemNanos = new AtomicLong();
+
+	/** Merges batches across evaluations.  Created on first use. */
+	private volatile BatchWindow batchWindow;
+
 	public ClassOperation() {
 
 	}
@@ -42,6 +61,10 @@ public class ClassOperation {
 		operationMethod = other.operationMethod;
 		inputs = Sets.newHashSet(other.inputs);
 		outputs = Sets.newHashSet(other.outputs);
+		blocking = other.blocking;
+		singleFlight = other.singleFlight == null ? null : new SingleFlight();
+		resultCache = other.resultCache;
+		invoker = other.invoker;
 	}
 
 	public Class<?> getOperationClass() {
@@ -58,6 +81,7 @@ public class ClassOperation {
 
 	public void setConstructor(final Constructor<?> constructor) {
 		this.constructor = constructor;
+		this.invoker = null;
 	}
 
 	public Method getOperationMethod() {
@@ -66,6 +90,98 @@ public class ClassOperation {
 
 	public void setOperationMethod(final Method operationMethod) {
 		this.operationMethod = operationMethod;
+		this.invoker = null;
+	}
+
+	public boolean isBlocking() {
+		return blocking;
+	}
+
+	public void setBlocking(final boolean blocking) {
+		this.blocking = blocking;
+	}
+
+	public boolean isCoalescing() {
+		return singleFlight != null;
+	}
+
+	public void setCoalescing(final boolean coalescing) {
+		if (coalescing != isCoalescing()) {
+			singleFlight = coalescing ? new SingleFlight() : null;
+		}
+	}
+
+	/** Get the runs shared by invocations, or null if not coalescing. */
+	public SingleFlight getSingleFlight() {
+		return singleFlight;
+	}
+
+	/** Get the outputs reused across evaluations, or null if not cached. */
+	public ResultCache getResultCache() {
+		return resultCache;
+	}
+
+	public void setResultCache(final ResultCache resultCache) {
+		this.resultCache = resultCache;
+	}
+
+	/**
+	 * Get the invoker for the operation.
+	 * 
+	 * Unless one has been set, an invoker using method handles for
+	 * constructor and operationMethod is created on first use.
+	 */
+	public OperationInvoker getInvoker() {
+		OperationInvoker current = invoker;
+		if (current == null) {
+			current = MethodHandleOperationInvoker.create(constructor, operationMethod);
+			invoker = current;
+		}
+		return current;
+	}
+
+	public void setInvoker(final OperationInvoker invoker) {
+		this.invoker = invoker;
+	}
+
+	/** Get the average nanoseconds taken by one forked item, or 0 if unknown. */
+	public long getForkItemNanos() {
+		return forkItemNanos.get();
+	}
+
+	/**
+	 * Add a measurement of the time taken by forked items to the average.
+	 * 
+	 * Concurrent updates may lose a measurement, which only makes the
+	 * average a little less smooth.
+	 * 
+	 * @param nanos Time taken by the items.
+	 * @param items Number of items measured.
+	 */
+	public void recordForkItems(final long nanos, final int items) {
+		final long sample = Math.max(1, nanos / items);
+		final long average = forkItemNanos.get();
+		forkItemNanos.set(average == 0 ? sample : average + (sample - average) / 8);
+	}
+
+	/**
+	 * Get the window merging batches of this operation across evaluations.
+	 * 
+	 * @param options The options of the batch input, used on first call.
+	 * @return The window.
+	 */
+	BatchWindow getBatchWindow(final ForkOptions options) {
+		BatchWindow window = batchWindow;
+		if (window == null) {
+			synchronized (this) {
+				window = batchWindow;
+				if (window == null) {
+					window = new BatchWindow(options.getBatchWindowMillis(), options.getChunkSize(), blocking);
+					batchWindow = window;
+				}
+			}
+		}
+		return window;
 	}
 
 	public Set<OperationInputPort> getInputs() {
@@ -1,18 +1,27 @@
 package msdingfield.easyflow.reflect;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import msdingfield.easyflow.annotations.ForkOn;
+import msdingfield.easyflow.execution.DefaultExecutor;
 import msdingfield.easyflow.execution.Task;
 
 import com.google.common.base.Function;
 import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import com.google.common.util.concurrent.Uninterruptibles;
 
 /**
@@ -30,26 +39,83 @@ import com.google.common.util.concurrent.Uninterruptibles;
  * exactly that order.  Care must be taken because method may initiate
  * asynchronous tasks which continue after method returns.  The next method in
  * the sequence must not be invoked until all of the asynchronous tasks complete
-
+ * 
+ * A parallel operation whose ForkOptions are chunked runs consecutive items
+ * in one task.  If it reuses instances there is one iteration per chunk
+ * which is invoked once for each item of the chunk.  A batch operation also
+ * has one iteration per chunk but is invoked once with the list of items in
+ * the chunk, and its outputs are split into results per item.  With a batch
+ * window the whole collection is one chunk which is submitted to the
+ * operation's BatchWindow instead of being invoked directly.  If the number
+ * of items in flight is bounded, later chunks are started from listeners on
+ * the output futures of earlier chunks so no thread waits for a slot.
+ * 
+ * A cached operation first looks up its input values in its ResultCache
+ * and a coalescing operation joins the SingleFlight for them.  If outputs
+ * are cached, or another instance with equal inputs is already running,
+ * this instance creates no iterations and writes those outputs in after().
+ * 
  * @author Matt
  *
  */
 public class ClassOperationInstance {
 
+	/** Target run time of a chunk when the chunk size is adaptive. */
+	private static final long ADAPTIVE_CHUNK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
 	private final ClassOperation operation;
 	private final Context context;
 	private final List<OperationIteration> iterations = Lists.newArrayList();
 
-	/** Points to a collection on which to parallelized if this is a parallel operation. */
-	private final OperationInputPort forkOn;
+	/** Ports of the operation resolved to slots in context. */
+	private final OperationBinding binding;
+
+	/** Creates and invokes the user level operation class instances. */
+	private final OperationInvoker invoker;
+
+	/** How the operation forks on its fork input. */
+	private final ForkOptions forkOptions;
+
+	/** Items handled by each chunk.  Set when the iterations are created. */
+	private int chunkSize = 1;
+
+	/** Items of the fork input when iterations are reused, otherwise null. */
+	private List<?> forkItems = null;
+
+	/** Outputs of each item by output index when iterations are reused. */
+	private Object[][] forkOutputs = null;
+
+	/** Values of the other inputs when submitting to a batch window, otherwise null. */
+	private List<Object> batchWindowKey = null;
+
+	/** Values of every input when cached or coalescing, or null if any is a future. */
+	private List<Object> inputValues = null;
+
+	/** Input values of the flight this instance leads, or null if not leading. */
+	private List<Object> flightKey = null;
+
+	/** Outputs published to instances following this one. */
+	private SettableFuture<Object[]> flightOutputs = null;
+
+	/** Outputs from the cache or another instance, or null if not reused. */
+	private volatile Object[] sharedOutputs = null;
+
+	/** True if outputs are reused rather than computed by this instance. */
+	private boolean reusingOutputs = false;
 
 	public ClassOperationInstance(final ClassOperation outer, final Context context) {
+		this(outer, new OperationBinding(outer, context.getLayout()), context);
+	}
+
+	ClassOperationInstance(final ClassOperation outer, final OperationBinding binding, final Context context) {
 		this.operation = outer;
-		this.forkOn = getForkInput();
+		this.binding = binding;
+		this.invoker = outer.getInvoker();
+		this.forkOptions = binding.getForkOptions();
 
 		// Bind this instance to the context
 		this.context = context;
-		context.setStateValue(operation.getOperationClass(), this);
+		binding.setState(context, this);
 	}
 
 	/**
@@ -65,18 +131,22 @@ public class ClassOperationInstance {
 	 * Must be invoked within a Task context.
 	 */
 	public void before() {
-		final Object forkValue
-		= isParallelOperation()
-		? context.getEdgeValue(forkOn.getConnectedEdgeName())
-				: null;
-		initializeOperationClassInstances(forkValue);
+		if (operation.isCoalescing() || operation.getResultCache() != null) {
+			inputValues = readInputValues();
+			if (inputValues != null && (readCachedOutputs() || (operation.isCoalescing() && joinFlight()))) {
+				return;
+			}
+		}
+		initialize();
 	}
 
 	/**
 	 * Invoke operation method on instances.
 	 * 
-	 * NOTE: The operation methods are invoke asynchronously.  This is required
-	 * in order to avoid blocking when there is more than one operation instance.
+	 * NOTE: When there is more than one operation instance the operation
+	 * methods are invoked asynchronously.  This is required in order to avoid
+	 * blocking.  A single instance is invoked directly on the calling thread.
+	 * Blocking operations are always invoked on DefaultExecutor.getBlocking().
 	 * 
 	 * Must not be invoked until before() and all asynchronous tasks
 	 * initiated by before() have completed.
@@ -86,6 +156,33 @@ public class ClassOperationInstance {
 	 * Must be invoked within a Task context.
 	 */
 	public void execute() {
+		// Every iteration holds its inputs by now so the edges may be cleared
+		binding.inputsRead(context);
+
+		if (reusingOutputs) {
+			return;
+		}
+
+		if ((forkOptions.isChunked() || forkOptions.isBounded()) && isParallelOperation()) {
+			executeChunks();
+			return;
+		}
+
+		if (operation.isBlocking()) {
+			for (final OperationIteration iteration : iterations) {
+				Task.fork(DefaultExecutor.getBlocking(), new Runnable(){
+					@Override public void run() {
+						iteration.execute();
+					}});
+			}
+			return;
+		}
+
+		if (iterations.size() == 1) {
+			iterations.get(0).execute();
+			return;
+		}
+
 		for (final OperationIteration iteration : iterations) {
 			Task.fork(new Runnable(){
 				@Override public void run() {
@@ -103,12 +200,501 @@ public class ClassOperationInstance {
 	 * Must only be executed once on a given ClassOperationInstance.
 	 */
 	public void after() {
-		for (final OperationOutputPort port : operation.getOutputs()) {
-			final Object value = isParallelOperation() ? aggregateOutput(port) : iterations.get(0).read(port);
-			context.setEdgeValue(port.getConnectedEdgeName(), value);
+		if (reusingOutputs) {
+			for (int i = 0; i < binding.getOutputCount(); ++i) {
+				binding.writeOutput(context, i, sharedOutputs[i]);
+			}
+			return;
+		}
+
+		final Object[] outputs = new Object[binding.getOutputCount()];
+		for (int i = 0; i < binding.getOutputCount(); ++i) {
+			final OperationOutputPort port = binding.getOutput(i);
+			if (forkOutputs != null) {
+				outputs[i] = Collections.unmodifiableList(Arrays.asList(forkOutputs[i]));
+			} else {
+				outputs[i] = isParallelOperation() ? aggregateOutput(port) : iterations.get(0).read(port);
+			}
+		}
+
+		// Followers share the outputs of a flight so our own edges get relays
+		// which cancelling this evaluation may cancel without reaching them.
+		final Object[] edges = flightOutputs != null ? relayFutures(outputs) : outputs;
+		for (int i = 0; i < binding.getOutputCount(); ++i) {
+			binding.writeOutput(context, i, edges[i]);
+		}
+		if (inputValues != null) {
+			landFlight(outputs, null);
+			if (operation.getResultCache() != null) {
+				cacheOutputs(outputs);
+			}
+		}
+	}
+
+	/**
+	 * Release instances following this one if it has not landed yet.
+	 * 
+	 * Must be invoked once the task of the operation completes, whether or
+	 * not it succeeded.
+	 * 
+	 * @param stopped True if the task was cancelled or its deadline expired,
+	 *                in which case the followers run the operation themselves.
+	 */
+	public void complete(final boolean stopped) {
+		if (flightKey != null) {
+			landFlight(null, stopped ? null : new Task.FatalErrorException("Coalesced invocation did not complete."));
 		}
 	}
 
+	/** Create the iterations from the inputs. */
+	private void initialize() {
+		final Object forkValue
+		= isParallelOperation()
+		? binding.readInput(context, binding.getForkIndex())
+				: null;
+		initializeOperationClassInstances(forkValue);
+	}
+
+	/**
+	 * Read the values of every input.
+	 * 
+	 * @return The values, or null if any is a future.
+	 */
+	private List<Object> readInputValues() {
+		final List<Object> values = Lists.newArrayListWithCapacity(binding.getInputCount());
+		for (int i = 0; i < binding.getInputCount(); ++i) {
+			final Object value = binding.readInput(context, i);
+			if (value instanceof ListenableFuture) {
+				return null;
+			}
+			values.add(value);
+		}
+		return values;
+	}
+
+	/**
+	 * Reuse the cached outputs of the input values, if any.
+	 * 
+	 * @return True if outputs were found.
+	 */
+	private boolean readCachedOutputs() {
+		final ResultCache cache = operation.getResultCache();
+		final Object[] cached = cache == null ? null : cache.get(inputValues);
+		if (cached == null) {
+			return false;
+		}
+		sharedOutputs = cached;
+		reusingOutputs = true;
+		return true;
+	}
+
+	/**
+	 * Cache the outputs once any future outputs resolve successfully.
+	 * 
+	 * This does not hold up the task.  Futures, and futures directly inside
+	 * a List, are replaced by their values so no evaluation reusing the
+	 * outputs can cancel them.  Outputs with futures inside any other
+	 * collection are not cached.
+	 * 
+	 * @param outputs The outputs by output index.
+	 */
+	private void cacheOutputs(final Object[] outputs) {
+		final ResultCache cache = operation.getResultCache();
+		final List<Object> key = inputValues;
+		final List<ListenableFuture<Object>> futures = Lists.newArrayList();
+		for (final Object output : outputs) {
+			if (output instanceof ListenableFuture) {
+				futures.add(asObjectFuture(output));
+			} else if (output instanceof Collection) {
+				for (final Object item : (Collection<?>) output) {
+					if (item instanceof ListenableFuture) {
+						if (!(output instanceof List)) {
+							return;
+						}
+						futures.add(asObjectFuture(item));
+					}
+				}
+			}
+		}
+
+		Futures.addCallback(Futures.allAsList(futures), new FutureCallback<List<Object>>() {
+			@Override public void onSuccess(final List<Object> values) {
+				final Iterator<Object> next = values.iterator();
+				final Object[] resolved = new Object[outputs.length];
+				for (int i = 0; i < resolved.length; ++i) {
+					if (outputs[i] instanceof ListenableFuture) {
+						resolved[i] = next.next();
+					} else if (outputs[i] instanceof List) {
+						final List<Object> items = Lists.newArrayList();
+						for (final Object item : (List<?>) outputs[i]) {
+							items.add(item instanceof ListenableFuture ? next.next() : item);
+						}
+						resolved[i] = Collections.unmodifiableList(items);
+					} else {
+						resolved[i] = outputs[i];
+					}
+				}
+				cache.put(key, resolved);
+			}
+			@Override public void onFailure(final Throwable t) {
+				// Failures are not cached
+			}});
+	}
+
+	@SuppressWarnings("unchecked")
+	private static ListenableFuture<Object> asObjectFuture(final Object future) {
+		return (ListenableFuture<Object>) future;
+	}
+
+	/**
+	 * Join the SingleFlight for the input values of this instance.
+	 * 
+	 * If another instance leads the flight, its outputs are asynchronously
+	 * copied once available.  If the leader is stopped before it lands, this
+	 * instance joins again and runs the operation if it then leads.
+	 * 
+	 * @return True if this instance follows another.
+	 */
+	private boolean joinFlight() {
+		final SettableFuture<Object[]> lead = SettableFuture.create();
+		final SettableFuture<Object[]> leader = operation.getSingleFlight().join(inputValues, lead);
+		if (leader == null) {
+			flightKey = inputValues;
+			flightOutputs = lead;
+			return false;
+		}
+
+		// Waiting on a future of our own so cancelling this task leaves the flight alone
+		final SettableFuture<Object[]> shared = SettableFuture.create();
+		Futures.addCallback(leader, new FutureCallback<Object[]>() {
+			@Override public void onSuccess(final Object[] result) {
+				shared.set(result);
+			}
+			@Override public void onFailure(final Throwable t) {
+				shared.setException(t);
+			}});
+		reusingOutputs = true;
+		Task.fork(shared, new Runnable(){
+			@Override public void run() {
+				final Object[] outputs;
+				try {
+					outputs = Uninterruptibles.getUninterruptibly(shared);
+				} catch (final ExecutionException e) {
+					throw new Task.FatalErrorException("Coalesced invocation failed.", e);
+				}
+				if (outputs != null) {
+					sharedOutputs = relayFutures(outputs);
+				} else {
+					reusingOutputs = false;
+					if (!joinFlight()) {
+						initialize();
+					}
+				}
+			}});
+		return true;
+	}
+
+	/**
+	 * End the flight this instance leads.
+	 * 
+	 * @param outputs The outputs to share, or null if failed or stopped.
+	 * @param failure The failure to share, or null if followers must run
+	 *                the operation themselves.
+	 */
+	private synchronized void landFlight(final Object[] outputs, final Throwable failure) {
+		if (flightKey == null) {
+			return;
+		}
+		operation.getSingleFlight().land(flightKey, flightOutputs);
+		flightKey = null;
+		if (outputs != null || failure == null) {
+			flightOutputs.set(outputs);
+		} else {
+			flightOutputs.setException(failure);
+		}
+	}
+
+	/**
+	 * Copy the outputs of a flight with a future of this instance's own for
+	 * each future output, or future directly inside a List output.
+	 * 
+	 * Cancelling the evaluation of an instance cancels the futures on its
+	 * edges, which must not cancel those shared with the other instances of
+	 * the flight, whether this instance leads or follows it.
+	 */
+	private static Object[] relayFutures(final Object[] outputs) {
+		final Object[] relayed = new Object[outputs.length];
+		for (int i = 0; i < outputs.length; ++i) {
+			if (outputs[i] instanceof ListenableFuture) {
+				relayed[i] = relay((ListenableFuture<?>) outputs[i]);
+			} else if (outputs[i] instanceof List) {
+				final List<Object> items = Lists.newArrayList();
+				for (final Object item : (List<?>) outputs[i]) {
+					items.add(item instanceof ListenableFuture ? relay((ListenableFuture<?>) item) : item);
+				}
+				relayed[i] = Collections.unmodifiableList(items);
+			} else {
+				relayed[i] = outputs[i];
+			}
+		}
+		return relayed;
+	}
+
+	/** Get a future completed from source which does not cancel it. */
+	private static ListenableFuture<Object> relay(final ListenableFuture<?> source) {
+		final SettableFuture<Object> relay = SettableFuture.create();
+		Futures.addCallback(source, new FutureCallback<Object>() {
+			@Override public void onSuccess(final Object result) {
+				relay.set(result);
+			}
+			@Override public void onFailure(final Throwable t) {
+				if (t instanceof CancellationException) {
+					relay.cancel(false);
+				} else {
+					relay.setException(t);
+				}
+			}});
+		return relay;
+	}
+
+	/** Fork a task for each chunk of items, or for the first few if bounded. */
+	private void executeChunks() {
+		final int chunks = (itemCount() + chunkSize - 1) / chunkSize;
+		if (forkOptions.isBounded()) {
+			final ChunkAdmission admission = new ChunkAdmission(chunks);
+			final int inFlight = Math.min(chunks, Math.max(1, forkOptions.getMaxInFlight() / chunkSize));
+			for (int i = 0; i < inFlight; ++i) {
+				admission.run();
+			}
+			return;
+		}
+
+		for (int chunk = 0; chunk < chunks; ++chunk) {
+			final int index = chunk;
+			final Runnable runnable = new Runnable(){
+				@Override public void run() {
+					runChunk(index);
+				}};
+			if (chunks == 1 && !operation.isBlocking()) {
+				runnable.run();
+			} else {
+				forkChunk(runnable);
+			}
+		}
+	}
+
+	/** Fork a chunk onto the executor suited to the operation. */
+	private void forkChunk(final Runnable runnable) {
+		if (operation.isBlocking()) {
+			Task.fork(DefaultExecutor.getBlocking(), runnable);
+		} else {
+			Task.fork(runnable);
+		}
+	}
+
+	/** Get the number of items being forked on. */
+	private int itemCount() {
+		return forkItems != null ? forkItems.size() : iterations.size();
+	}
+
+	/**
+	 * Run the items of one chunk in order.
+	 * 
+	 * @param chunk Index of the chunk.
+	 */
+	private void runChunk(final int chunk) {
+		final int start = chunk * chunkSize;
+		final int end = Math.min(itemCount(), start + chunkSize);
+		final long started = System.nanoTime();
+		if (forkItems == null) {
+			for (int i = start; i < end; ++i) {
+				iterations.get(i).execute();
+			}
+		} else if (batchWindowKey != null) {
+			submitToBatchWindow(iterations.get(chunk), start, end);
+			return;
+		} else if (forkOptions.isBatch()) {
+			final OperationIteration iteration = iterations.get(chunk);
+			iteration.execute();
+			for (int output = 0; output < forkOutputs.length; ++output) {
+				splitBatchOutput(output, start, end, iteration.read(binding.getOutput(output)));
+			}
+		} else {
+			final OperationIteration iteration = iterations.get(chunk);
+			for (int i = start; i < end; ++i) {
+				iteration.writeForkInputs(forkItems.get(i));
+				iteration.execute();
+				for (int output = 0; output < forkOutputs.length; ++output) {
+					forkOutputs[output][i] = iteration.read(binding.getOutput(output));
+				}
+			}
+		}
+		operation.recordForkItems(System.nanoTime() - started, end - start);
+	}
+
+	/**
+	 * Submit the items of a chunk to the operation's batch window.
+	 * 
+	 * The outputs are written once the window's results arrive.
+	 * 
+	 * @param iteration Invokes the operation if the chunk opens a window.
+	 * @param start Index of the first item.
+	 * @param end Index after the last item.
+	 */
+	private void submitToBatchWindow(final OperationIteration iteration, final int start, final int end) {
+		final ListenableFuture<Map<Object, Object[]>> results
+		= operation.getBatchWindow(forkOptions).submit(batchWindowKey, forkItems.subList(start, end), iteration);
+		Task.fork(results, new Runnable(){
+			@Override public void run() {
+				try {
+					final Map<Object, Object[]> byItem = Uninterruptibles.getUninterruptibly(results);
+					for (int i = start; i < end; ++i) {
+						final Object[] outputs = byItem.get(forkItems.get(i));
+						for (int output = 0; output < forkOutputs.length; ++output) {
+							forkOutputs[output][i] = outputs[output];
+						}
+					}
+				} catch (final ExecutionException e) {
+					throw new Task.FatalErrorException("Batch operation failed.", e);
+				}
+			}});
+	}
+
+	/**
+	 * Split the output of a batch into the results of its items.
+	 * 
+	 * @param output Index of the output.
+	 * @param start Index of the first item of the batch.
+	 * @param end Index after the last item of the batch.
+	 * @param value The output of the batch, possibly a future.
+	 */
+	private void splitBatchOutput(final int output, final int start, final int end, final Object value) {
+		if (!(value instanceof ListenableFuture)) {
+			for (int i = start; i < end; ++i) {
+				forkOutputs[output][i] = batchResult(value, forkItems.subList(start, end), i - start);
+			}
+			return;
+		}
+
+		final ListenableFuture<?> future = (ListenableFuture<?>) value;
+		for (int i = start; i < end; ++i) {
+			final int index = i;
+			forkOutputs[output][i] = Futures.transform(future, new Function<Object,Object>() {
+				@Override public Object apply(final Object results) {
+					return batchResult(results, forkItems.subList(start, end), index - start);
+				}});
+		}
+	}
+
+	/**
+	 * Get the result of one item from the results of its batch.
+	 * 
+	 * @param results A List with a result per item or a Map keyed by item.
+	 * @param batch The items of the batch.
+	 * @param index Index of the item in the batch.
+	 * @return The result of the item.
+	 */
+	static Object batchResult(final Object results, final List<?> batch, final int index) {
+		if (results instanceof List) {
+			final List<?> list = (List<?>) results;
+			if (list.size() != batch.size()) {
+				throw new Task.FatalErrorException(String.format(
+						"Batch operation returned %d results for %d items.", list.size(), batch.size()));
+			}
+			return list.get(index);
+		} else if (results instanceof Map) {
+			return ((Map<?,?>) results).get(batch.get(index));
+		}
+		throw new Task.FatalErrorException("Batch operation output must be a List or Map but was "
+				+ (results == null ? "null" : results.getClass().getName()) + ".");
+	}
+
+	/**
+	 * Get the future outputs of the items of one chunk.
+	 * 
+	 * @param chunk Index of the chunk.
+	 * @return The outputs which are futures, possibly none.
+	 */
+	private List<ListenableFuture<Object>> futureOutputs(final int chunk) {
+		final List<ListenableFuture<Object>> futures = Lists.newArrayList();
+		final int start = chunk * chunkSize;
+		final int end = Math.min(itemCount(), start + chunkSize);
+		for (int output = 0; output < binding.getOutputCount(); ++output) {
+			for (int i = start; i < end; ++i) {
+				final Object value = forkOutputs != null
+						? forkOutputs[output][i]
+						: iterations.get(i).read(binding.getOutput(output));
+				if (value instanceof ListenableFuture) {
+					@SuppressWarnings("unchecked")
+					final ListenableFuture<Object> future = (ListenableFuture<Object>) value;
+					futures.add(future);
+				}
+			}
+		}
+		return futures;
+	}
+
+	/**
+	 * Starts the next chunk each time it is run.
+	 * 
+	 * Each chunk runs this again once its output futures have resolved,
+	 * successfully or not, so the number of chunks in flight stays at the
+	 * number of times it was first run.
+	 */
+	private final class ChunkAdmission implements Runnable {
+		/** Index of the next chunk to start. */
+		private final AtomicInteger next = new AtomicInteger();
+
+		/** Total number of chunks. */
+		private final int chunks;
+
+		public ChunkAdmission(final int chunks) {
+			this.chunks = chunks;
+		}
+
+		@Override
+		public void run() {
+			final int chunk = next.getAndIncrement();
+			if (chunk >= chunks) {
+				return;
+			}
+			forkChunk(new Runnable(){
+				@Override public void run() {
+					runChunk(chunk);
+					final List<ListenableFuture<Object>> futures = futureOutputs(chunk);
+					if (futures.isEmpty()) {
+						ChunkAdmission.this.run();
+					} else {
+						Task.fork(Futures.successfulAsList(futures), ChunkAdmission.this);
+					}
+				}});
+		}
+	}
+
+	/**
+	 * Get the number of items per chunk.
+	 * 
+	 * An adaptive chunk aims to run for ADAPTIVE_CHUNK_NANOS given the
+	 * measured cost per item.  It is never so large that there are fewer
+	 * chunks than processors, which is also the size used before any items
+	 * have been measured.
+	 * 
+	 * @param items The number of items.
+	 * @return The chunk size.
+	 */
+	private int chunkSizeFor(final int items) {
+		if (forkOptions.getChunkSize() != ForkOn.ADAPTIVE) {
+			return Math.min(forkOptions.getChunkSize(), Math.max(1, items));
+		}
+		final int processors = Runtime.getRuntime().availableProcessors();
+		final int maxChunkSize = Math.max(1, (items + processors - 1) / processors);
+		final long itemNanos = operation.getForkItemNanos();
+		if (itemNanos == 0) {
+			return maxChunkSize;
+		}
+		return (int) Math.max(1, Math.min(maxChunkSize, ADAPTIVE_CHUNK_NANOS / itemNanos));
+	}
+
 	/**
 	 * Aggregate an output from all iterations into a list.
 	 * 
@@ -127,7 +713,7 @@ public class ClassOperationInstance {
 	 * @return True for parallel operation.
 	 */
 	private boolean isParallelOperation() {
-		return forkOn != null;
+		return binding.hasForkInput();
 	}
 
 	/**
@@ -161,11 +747,86 @@ public class ClassOperationInstance {
 	 * @param collection
 	 */
 	private void initializeForkOnCollection(final Collection<?> collection) {
+		if (forkOptions.isReuseInstance() || forkOptions.isBatch()) {
+			initializeChunkInstances(collection);
+			return;
+		}
+		chunkSize = chunkSizeFor(collection.size());
 		for (final Object ob : collection) {
 			initializeOneOperationClassInstance(ob);
 		}
 	}
 
+	/**
+	 * Initialize one operation class instance per chunk of the collection.
+	 * 
+	 * The fork inputs are written from the items of the chunk so any futures
+	 * in the collection are first waited for asynchronously.
+	 * 
+	 * @param collection
+	 */
+	@SuppressWarnings("unchecked")
+	private void initializeChunkInstances(final Collection<?> collection) {
+		final List<Object> items = Lists.newArrayList(collection);
+		boolean hasFutures = false;
+		for (final Object item : items) {
+			hasFutures |= item instanceof ListenableFuture;
+		}
+		if (!hasFutures) {
+			initializeChunks(items);
+			return;
+		}
+
+		final List<ListenableFuture<Object>> futures = Lists.newArrayListWithCapacity(items.size());
+		for (final Object item : items) {
+			futures.add(item instanceof ListenableFuture ? (ListenableFuture<Object>) item : Futures.immediateFuture(item));
+		}
+		final ListenableFuture<List<Object>> resolved = Futures.allAsList(futures);
+		Task.fork(resolved, new Runnable(){
+			@Override public void run() {
+				try {
+					initializeChunks(Uninterruptibles.getUninterruptibly(resolved));
+				} catch (final ExecutionException e) {
+					throw new Task.FatalErrorException("Error getting values from collection of futures.", e);
+				}
+			}});
+	}
+
+	/** Create an iteration for each chunk of items. */
+	private void initializeChunks(final List<?> items) {
+		batchWindowKey = forkOptions.isBatchWindow() ? readBatchWindowKey() : null;
+		// A batch window splits the items itself
+		chunkSize = batchWindowKey != null ? Math.max(1, items.size()) : chunkSizeFor(items.size());
+		forkItems = items;
+		forkOutputs = new Object[binding.getOutputCount()][items.size()];
+		for (int start = 0; start < items.size(); start += chunkSize) {
+			final OperationIteration iteration = newIteration();
+			if (forkOptions.isBatch()) {
+				final int end = Math.min(items.size(), start + chunkSize);
+				iteration.writeForkInputs(Collections.unmodifiableList(items.subList(start, end)));
+			}
+		}
+	}
+
+	/**
+	 * Read the other inputs which select the batch window to join.
+	 * 
+	 * @return The values of the inputs, or null if any is a future.
+	 */
+	private List<Object> readBatchWindowKey() {
+		final List<Object> key = Lists.newArrayList();
+		for (int i = 0; i < binding.getInputCount(); ++i) {
+			if (!binding.getInput(i).fork()) {
+				final Object value = binding.readInput(context, i);
+				if (value instanceof ListenableFuture) {
+					return null;
+				}
+				key.add(value);
+			}
+		}
+		return key;
+	}
+
 	/**
 	 * Asynchronously initialize class instances using value from future.
 	 * @param future
@@ -190,27 +851,26 @@ public class ClassOperationInstance {
 	 * @param forkValue Value to be provided to the fork input.
 	 */
 	private void initializeOneOperationClassInstance(final Object forkValue) {
-		final OperationIteration iteration = new OperationIteration();
-		iterations.add(iteration);
-		for (final OperationInputPort setter : operation.getInputs()) {
-			final Object attribute
-			= setter.fork()
-			? forkValue : context.getEdgeValue(setter.getConnectedEdgeName());
-			iteration.writeVariant(setter, attribute);
+		final OperationIteration iteration = newIteration();
+		for (int i = 0; i < binding.getInputCount(); ++i) {
+			final OperationInputPort setter = binding.getInput(i);
+			if (setter.fork()) {
+				iteration.writeVariant(setter, forkValue);
+			}
 		}
 	}
 
-	/**
-	 * Gets the input marked as the fork attribute.
-	 * @return The InputPort if fork input exists.
-	 */
-	private OperationInputPort getForkInput() {
-		for (final OperationInputPort setter : operation.getInputs()) {
-			if (setter.fork()) {
-				return setter;
+	/** Create an iteration and write all of its inputs except fork inputs. */
+	private OperationIteration newIteration() {
+		final OperationIteration iteration = new OperationIteration();
+		iterations.add(iteration);
+		for (int i = 0; i < binding.getInputCount(); ++i) {
+			final OperationInputPort setter = binding.getInput(i);
+			if (!setter.fork()) {
+				iteration.writeVariant(setter, binding.readInput(context, i));
 			}
 		}
-		return null;
+		return iteration;
 	}
 
 	/**
@@ -244,16 +904,20 @@ public class ClassOperationInstance {
 
 	/**
 	 * This is a helper class for the method unwindTopLevelFuturesIfAny.
-	 * Note that this does not correctly handle cancellation.
+	 * Cancelling it cancels the futures in the list.
 	 * @author Matt
 	 *
 	 */
 	private static class ListWithFuturesMasherFuture extends AbstractFuture<List<Object>> {
+		/** The futures in the list combined, or null if there are none. */
+		private final ListenableFuture<List<Object>> combinedFuture;
+
 		public ListWithFuturesMasherFuture(final List<Object> nonFutureList, final List<ListenableFuture<Object>> futureList) {
 			if (futureList.size() == 0) {
+				combinedFuture = null;
 				set(nonFutureList);
 			} else {
-				final ListenableFuture<List<Object>> combinedFuture = Task.combineFutures(futureList);
+				combinedFuture = Task.combineFutures(futureList);
 				Task.fork(combinedFuture, new Runnable(){
 					@Override public void run() {
 						try {
@@ -268,6 +932,17 @@ public class ClassOperationInstance {
 					}});
 			}
 		}
+
+		@Override
+		public boolean cancel(final boolean mayInterruptIfRunning) {
+			if (!super.cancel(mayInterruptIfRunning)) {
+				return false;
+			}
+			if (combinedFuture != null) {
+				combinedFuture.cancel(mayInterruptIfRunning);
+			}
+			return true;
+		}
 	}
 
 	/**
@@ -279,37 +954,32 @@ public class ClassOperationInstance {
 	 * @author Matt
 	 *
 	 */
-	private final class OperationIteration {
+	private final class OperationIteration implements BatchWindow.BatchCall {
 		/** Instance of user level operation class. */
 		private final Object object;
 
 		/** Create a new user level operation class instance. */
 		public OperationIteration() {
 			try {
-				this.object = operation.getConstructor().newInstance();
+				this.object = invoker.newInstance();
 			} catch (IllegalAccessException|InstantiationException e) {
 				throw new Task.FatalErrorException("Failed to create instance of operation class.", e);
-			} catch (final InvocationTargetException e) {
-				throw new Task.FatalErrorException("User exception in operation constructor.", e.getCause());
+			} catch (final Throwable e) {
+				throw new Task.FatalErrorException("User exception in operation constructor.", e);
 			}
 		}
 
 		/** Invoke the operation method of the user class. */
 		public void execute() {
 			try {
-				call(operation.getOperationMethod());
-			} catch (IllegalAccessException|IllegalArgumentException e) {
+				invoker.invoke(object);
+			} catch (final IllegalAccessException e) {
 				throw new Task.FatalErrorException("Internal error while invoking operation.", e);
-			} catch (final InvocationTargetException e) {
-				throw new Task.FatalErrorException("User operation threw exception.", e.getCause());
+			} catch (final Throwable e) {
+				throw new Task.FatalErrorException("User operation threw exception.", e);
 			}
 		}
 
-		private void call(final Method method) throws IllegalAccessException, IllegalArgumentException, InvocationTargetException {
-			method.invoke(object);
-		}
-
-
 		/**
 		 * Read value from the output of an operation class instance.
 		 * 
@@ -342,6 +1012,27 @@ public class ClassOperationInstance {
 			}
 		}
 
+		/** Invoke the operation on a batch of items from a BatchWindow. */
+		@Override
+		public Object[] invoke(final List<Object> items) {
+			writeForkInputs(items);
+			execute();
+			final Object[] outputs = new Object[binding.getOutputCount()];
+			for (int i = 0; i < outputs.length; ++i) {
+				outputs[i] = read(binding.getOutput(i));
+			}
+			return outputs;
+		}
+
+		/** Write an item directly to every fork input. */
+		public void writeForkInputs(final Object item) {
+			for (int i = 0; i < binding.getInputCount(); ++i) {
+				if (binding.getInput(i).fork()) {
+					write(binding.getInput(i), item);
+				}
+			}
+		}
+
 		/**
 		 * Write an unknown variant type to port.
 		 * 
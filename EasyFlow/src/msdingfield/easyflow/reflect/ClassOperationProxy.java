@@ -17,9 +17,23 @@ public class ClassOperationProxy {
 
 	public final ClassOperation operation;
 
+	/** Ports and state of operation resolved to Context slots. */
+	private final OperationBinding binding;
+
 	public ClassOperationProxy(final ClassOperation operation) {
 		this.operation = operation;
 		validate();
+		this.binding = new OperationBinding(operation, ContextLayout.EMPTY);
+	}
+
+	/**
+	 * Create a proxy whose ports are resolved against a ContextLayout.  It
+	 * must only be used with a Context created from that layout.
+	 */
+	ClassOperationProxy(final ClassOperation operation, final OperationBinding binding) {
+		this.operation = operation;
+		validate();
+		this.binding = binding;
 	}
 
 	/**
@@ -50,12 +64,26 @@ public class ClassOperationProxy {
 		getDelegate(context).after();
 	}
 
+	/**
+	 * This runs once the task of the operation completes, whether or not it
+	 * succeeded.
+	 * 
+	 * @param context
+	 * @param stopped True if the task was cancelled or its deadline expired.
+	 */
+	public void complete(final Context context, final boolean stopped) {
+		final ClassOperationInstance delegate = getDelegate(context);
+		if (delegate != null) {
+			delegate.complete(stopped);
+		}
+	}
+
 	private ClassOperationInstance createDelegate(final Context context) {
-		return new ClassOperationInstance(operation, context);
+		return new ClassOperationInstance(operation, binding, context);
 	}
 
 	private ClassOperationInstance getDelegate(final Context context) {
-		return (ClassOperationInstance) context.getStateValue(operation.getOperationClass());
+		return (ClassOperationInstance) binding.getState(context);
 	}
 
 	private void validate() {
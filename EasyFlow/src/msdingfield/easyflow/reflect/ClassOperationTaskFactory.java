@@ -39,7 +39,7 @@ public class ClassOperationTaskFactory implements TaskFactory<ClassOperationFlow
 	 * @return The newly created Task.
 	 */
 	public static Task create(final Executor executor, final ClassOperation op, final Context context) {
-		final ClassOperationProxy proxy = new ClassOperationProxy(op);
+		final ClassOperationProxy proxy = context.getLayout().getProxy(op);
 		final Task task = new Task(executor);
 		task.addWorker(new Runnable(){
 			@Override public void run() {
@@ -53,6 +53,12 @@ public class ClassOperationTaskFactory implements TaskFactory<ClassOperationFlow
 			@Override public void run() {
 				proxy.after(context);
 			}});
+		if (op.isCoalescing()) {
+			task.addCompletionListener(new Runnable(){
+				@Override public void run() {
+					proxy.complete(context, task.isStopped());
+				}});
+		}
 		return task;
 	}
 }
@@ -1,19 +1,15 @@
 package msdingfield.easyflow.reflect;
 
-import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
-import java.net.URLClassLoader;
 import java.util.List;
 
-import msdingfield.easyflow.annotations.Activity;
-import msdingfield.easyflow.annotations.Operation;
+import msdingfield.easyflow.reflect.support.InvalidOperationBindingException;
 
 import com.google.common.collect.Lists;
 
 /** Helpers for scanning the class path for ClassOperations.
  * 
- * This class uses its own class loader and assumes it was loaded with a
- * URLClassLoader implementation.
+ * Class files are read by ClassFileScanner so only the matching classes are
+ * loaded, and they are not initialized.  Any class loader may be used.
  * 
  * @author Matt
  *
@@ -34,58 +30,20 @@ public class ClassPathScannerClassOperationBuilder {
 	 */
 	public static List<ClassOperation> loadOperationsOnClasspath(
 			final String basePkg, final String scope) {
+		final ClassLoader classLoader = ClassPathScannerClassOperationBuilder.class.getClassLoader();
 		final List<ClassOperation> operations = Lists.newArrayList();
-
-		final URLClassLoader classLoader = (URLClassLoader) ClassPathScannerClassOperationBuilder.class.getClassLoader();
-		loadFrom(ClassScanner.from(classLoader, basePkg), scope, operations);
-		return operations;
-	}
-
-	private static void loadFrom(final Iterable<Class<?>> scanner, final String scope,
-			final List<ClassOperation> operations) {
-		for (final Class<?> type : scanner) {
-			loadFrom(ClassScanner.from(type), scope, operations);
-
-			if (isStaticClass(type) && isInScope(type, scope) && ClassPathScannerClassOperationBuilder.isAnnotatedOperationClass(type)) {
-				final ClassOperation op = AnnotationClassOperationBuilder.fromClass(type);
-				operations.add(op);
-			}
-		}
-	}
-
-	private static boolean isStaticClass(final Class<?> type) {
-		final int modifiers = type.getModifiers();
-		final boolean isStatic = (modifiers & Modifier.STATIC) != 0;
-		final boolean isTopmost = type.getEnclosingClass() == null;
-		return isStatic || isTopmost;
-	}
-
-	private static boolean isInScope(final Class<?> type, final String scope) {
-		if (scope == null) {
-			return true;
-		}
-
-		if (!type.isAnnotationPresent(Activity.class)) {
-			return false;
+		for (final String name : ClassFileScanner.getIndex(classLoader, basePkg).getClassNames(scope)) {
+			operations.add(AnnotationClassOperationBuilder.fromClass(loadClass(classLoader, name)));
 		}
-
-		final Activity scopeAnnotation = type.getAnnotation(Activity.class);
-		if (scope.equals(scopeAnnotation.graph())) {
-			return true;
-		}
-
-		return false;
+		return operations;
 	}
 
-	private static boolean isAnnotatedOperationClass(final Class<?> type) {
-		final Method[] methods = type.getDeclaredMethods();
-		for (final Method method : methods) {
-			final Operation annotation = method.getAnnotation(Operation.class);
-			if (annotation != null) {
-				return true;
-			}
+	private static Class<?> loadClass(final ClassLoader classLoader, final String name) {
+		try {
+			return Class.forName(name, false, classLoader);
+		} catch (final ClassNotFoundException e) {
+			throw new InvalidOperationBindingException("Failed to load operation class " + name + ".", e);
 		}
-		return false;
 	}
 
 }
@@ -1,60 +1,234 @@
 package msdingfield.easyflow.reflect;
 
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 import com.google.common.collect.Maps;
 
 /**
  * Contains state for the evaluation of a Tasks.
  * 
+ * Edges and state keys which have a slot in the ContextLayout are stored in
+ * plain arrays.  The arrays are not synchronized.  A value written by one
+ * operation is only read by operations which depend on it, and the task
+ * dependency edges provide the happens-before ordering between the write and
+ * the read.  Any other key is stored in a concurrent map which is only
+ * allocated when first needed.
+ * 
+ * A null value is treated the same as a value which was never set.
+ * 
+ * A Context created with an EdgeLiveness clears each counted edge slot once
+ * all of its reads are done.  See edgeRead().
+ * 
  * @author Matt
  *
  */
 public class Context {
 
+	private final ContextLayout layout;
+
 	/**
-	 * Map which holds edge values.  The edge values are read and written by
+	 * Holds edge values by slot.  The edge values are read and written by
 	 * the input/output ports of the operations.
 	 */
-	private final Map<String, Object> edgeValues = Maps.newConcurrentMap();
-	private final Map<Object, Object> stateMap = Maps.newConcurrentMap();
+	private final Object[] edgeSlots;
+	private final Object[] stateSlots;
 
-	public Context() {
+	/** Values for keys not in the layout.  Allocated on first use. */
+	private volatile Map<String, Object> extraEdgeValues;
+	private volatile Map<Object, Object> extraStateValues;
+
+	/** Reads left before each edge slot is cleared, or null to keep every edge. */
+	private final AtomicIntegerArray unreadCounts;
 
+	public Context() {
+		this(ContextLayout.EMPTY);
 	}
 
 	public Context(final Map<String, Object> params) {
-		edgeValues.putAll(params);
+		this(ContextLayout.EMPTY, params);
+	}
+
+	public Context(final ContextLayout layout) {
+		this(layout, (EdgeLiveness) null);
+	}
+
+	private Context(final ContextLayout layout, final EdgeLiveness liveness) {
+		this.layout = layout;
+		this.edgeSlots = new Object[layout.getEdgeCount()];
+		this.stateSlots = new Object[layout.getStateCount()];
+		this.unreadCounts = liveness == null ? null : readCounts(liveness);
+	}
+
+	public Context(final ContextLayout layout, final Map<String, Object> params) {
+		this(layout, params, null);
+	}
+
+	/**
+	 * Create a Context which clears edges once they have been read.
+	 * 
+	 * @param layout The layout of the graph.
+	 * @param params Initial edge values.
+	 * @param liveness Reads of each edge before it is cleared, or null to
+	 *                 keep every edge.  Must be counted against layout.
+	 */
+	public Context(final ContextLayout layout, final Map<String, Object> params, final EdgeLiveness liveness) {
+		this(layout, liveness);
+		for (final Entry<String, Object> param : params.entrySet()) {
+			setEdgeValue(param.getKey(), param.getValue());
+		}
+	}
+
+	public ContextLayout getLayout() {
+		return layout;
 	}
 
 	public void setEdgeValue(final String key, final Object value) {
-		edgeValues.put(key, value);
+		final int slot = layout.getEdgeSlot(key);
+		if (slot >= 0) {
+			edgeSlots[slot] = value;
+		} else if (value != null) {
+			getExtraEdgeValues().put(key, value);
+		} else if (extraEdgeValues != null) {
+			extraEdgeValues.remove(key);
+		}
 	}
 
 	public Object getEdgeValue(final String key) {
-		return edgeValues.get(key);
+		final int slot = layout.getEdgeSlot(key);
+		if (slot >= 0) {
+			return edgeSlots[slot];
+		}
+		final Map<String, Object> extra = extraEdgeValues;
+		return extra == null ? null : extra.get(key);
+	}
+
+	/**
+	 * Record that an operation has finished reading an edge slot.
+	 * 
+	 * The edge is cleared when this is the last read counted by the
+	 * EdgeLiveness.  The reader must not read the slot again.
+	 */
+	void edgeRead(final int slot) {
+		if (unreadCounts != null && unreadCounts.decrementAndGet(slot) == 0) {
+			edgeSlots[slot] = null;
+		}
+	}
+
+	private static AtomicIntegerArray readCounts(final EdgeLiveness liveness) {
+		final int[] counts = new int[liveness.getEdgeCount()];
+		for (int slot = 0; slot < counts.length; ++slot) {
+			counts[slot] = liveness.getReadCount(slot);
+		}
+		return new AtomicIntegerArray(counts);
+	}
+
+	public void setEdgeValue(final int slot, final Object value) {
+		edgeSlots[slot] = value;
+	}
+
+	public Object getEdgeValue(final int slot) {
+		return edgeSlots[slot];
 	}
 
 	public boolean isEdgeSet(final String key) {
-		return edgeValues.containsKey(key);
+		return getEdgeValue(key) != null;
 	}
 
 	public void setStateValue(final Object key, final Object value) {
-		stateMap.put(key, value);
+		final int slot = layout.getStateSlot(key);
+		if (slot >= 0) {
+			stateSlots[slot] = value;
+		} else if (value != null) {
+			getExtraStateValues().put(key, value);
+		} else if (extraStateValues != null) {
+			extraStateValues.remove(key);
+		}
 	}
 
 	public Object getStateValue(final Object key) {
-		return stateMap.get(key);
+		final int slot = layout.getStateSlot(key);
+		if (slot >= 0) {
+			return stateSlots[slot];
+		}
+		final Map<Object, Object> extra = extraStateValues;
+		return extra == null ? null : extra.get(key);
+	}
+
+	public void setStateValue(final int slot, final Object value) {
+		stateSlots[slot] = value;
+	}
+
+	public Object getStateValue(final int slot) {
+		return stateSlots[slot];
 	}
 
 	public boolean isStateVariableSet(final Object key) {
-		return stateMap.containsKey(key);
+		return getStateValue(key) != null;
+	}
+
+	/** Get a snapshot of all edges which are set. */
+	public Map<String, Object> getEdgeValues() {
+		final Map<String, Object> values = Maps.newHashMap();
+		for (int slot = 0; slot < edgeSlots.length; ++slot) {
+			if (edgeSlots[slot] != null) {
+				values.put(layout.getEdgeName(slot), edgeSlots[slot]);
+			}
+		}
+		final Map<String, Object> extra = extraEdgeValues;
+		if (extra != null) {
+			values.putAll(extra);
+		}
+		return values;
+	}
+
+	private Map<Object, Object> getStateValues() {
+		final Map<Object, Object> values = Maps.newHashMap();
+		for (int slot = 0; slot < stateSlots.length; ++slot) {
+			if (stateSlots[slot] != null) {
+				values.put(layout.getStateKey(slot), stateSlots[slot]);
+			}
+		}
+		final Map<Object, Object> extra = extraStateValues;
+		if (extra != null) {
+			values.putAll(extra);
+		}
+		return values;
+	}
+
+	private Map<String, Object> getExtraEdgeValues() {
+		Map<String, Object> extra = extraEdgeValues;
+		if (extra == null) {
+			synchronized (this) {
+				extra = extraEdgeValues;
+				if (extra == null) {
+					extra = Maps.newConcurrentMap();
+					extraEdgeValues = extra;
+				}
+			}
+		}
+		return extra;
+	}
+
+	private Map<Object, Object> getExtraStateValues() {
+		Map<Object, Object> extra = extraStateValues;
+		if (extra == null) {
+			synchronized (this) {
+				extra = extraStateValues;
+				if (extra == null) {
+					extra = Maps.newConcurrentMap();
+					extraStateValues = extra;
+				}
+			}
+		}
+		return extra;
 	}
 
 	@Override
 	public String toString() {
-		return "Context [edgeValues=" + edgeValues + ", stateMap=" + stateMap
+		return "Context [edgeValues=" + getEdgeValues() + ", stateMap=" + getStateValues()
 				+ "]";
 	}
 
@@ -62,10 +236,8 @@ public class Context {
 	public int hashCode() {
 		final int prime = 31;
 		int result = 1;
-		result = prime * result
-				+ ((edgeValues == null) ? 0 : edgeValues.hashCode());
-		result = prime * result
-				+ ((stateMap == null) ? 0 : stateMap.hashCode());
+		result = prime * result + getEdgeValues().hashCode();
+		result = prime * result + getStateValues().hashCode();
 		return result;
 	}
 
@@ -81,25 +253,17 @@ public class Context {
 			return false;
 		}
 		final Context other = (Context) obj;
-		if (edgeValues == null) {
-			if (other.edgeValues != null) {
-				return false;
-			}
-		} else if (!edgeValues.equals(other.edgeValues)) {
+		if (!getEdgeValues().equals(other.getEdgeValues())) {
 			return false;
 		}
-		if (stateMap == null) {
-			if (other.stateMap != null) {
-				return false;
-			}
-		} else if (!stateMap.equals(other.stateMap)) {
+		if (!getStateValues().equals(other.getStateValues())) {
 			return false;
 		}
 		return true;
 	}
 
 	public Set<String> getEdgeKeys() {
-		return edgeValues.keySet();
+		return getEdgeValues().keySet();
 	}
 
 }
@@ -0,0 +1,143 @@
+package msdingfield.easyflow.reflect;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+/**
+ * Assigns integer slots to the edges and operation state of a flow graph.
+ * 
+ * The edge names and operations of a graph are fixed once the graph is
+ * loaded, so a layout is built once per graph and shared by every Context
+ * evaluating that graph.  A Context created with a layout stores the values
+ * in plain arrays indexed by slot instead of in hash maps.
+ * 
+ * Each operation in the layout also gets a ClassOperationProxy which is
+ * validated once and whose ports are already resolved to slots.
+ * 
+ * Instances of ContextLayout are immutable.
+ * 
+ * @author Matt
+ *
+ */
+public final class ContextLayout {
+
+	/** Layout with no slots.  Every value is stored by name. */
+	public static final ContextLayout EMPTY = new ContextLayout(Collections.<ClassOperation>emptyList());
+
+	/** Slot of each edge name. */
+	private final Map<String, Integer> edgeSlots;
+
+	/** Edge name of each slot. */
+	private final String[] edgeNames;
+
+	/** Slot of each state key.  The key of an operation is its class. */
+	private final Map<Object, Integer> stateSlots;
+
+	/** State key of each slot. */
+	private final Object[] stateKeys;
+
+	/** Precompiled proxy for each operation, keyed by identity. */
+	private final Map<ClassOperation, ClassOperationProxy> proxies;
+
+	/**
+	 * Build a layout for a set of operations.
+	 * 
+	 * @param operations The operations of the graph.
+	 * @return The layout.
+	 */
+	public static ContextLayout of(final Collection<ClassOperation> operations) {
+		return new ContextLayout(operations);
+	}
+
+	private ContextLayout(final Collection<ClassOperation> operations) {
+		final Map<String, Integer> edges = Maps.newLinkedHashMap();
+		final Map<Object, Integer> states = Maps.newLinkedHashMap();
+		for (final ClassOperation op : operations) {
+			for (final OperationPort port : op.getInputs()) {
+				addSlot(edges, port.getConnectedEdgeName());
+			}
+			for (final OperationPort port : op.getOutputs()) {
+				addSlot(edges, port.getConnectedEdgeName());
+			}
+			addSlot(states, op.getOperationClass());
+		}
+		edgeSlots = ImmutableMap.copyOf(edges);
+		edgeNames = edges.keySet().toArray(new String[edges.size()]);
+		stateSlots = ImmutableMap.copyOf(states);
+		stateKeys = states.keySet().toArray();
+
+		proxies = Maps.newIdentityHashMap();
+		for (final ClassOperation op : operations) {
+			proxies.put(op, new ClassOperationProxy(op, new OperationBinding(op, this)));
+		}
+	}
+
+	private static <K> void addSlot(final Map<K, Integer> slots, final K key) {
+		if (!slots.containsKey(key)) {
+			slots.put(key, slots.size());
+		}
+	}
+
+	/** Get the number of edge slots. */
+	public int getEdgeCount() {
+		return edgeNames.length;
+	}
+
+	/** Get the number of state slots. */
+	public int getStateCount() {
+		return stateKeys.length;
+	}
+
+	/**
+	 * Get the slot of an edge.
+	 * 
+	 * @param name The edge name.
+	 * @return The slot or -1 if the edge is not part of the layout.
+	 */
+	public int getEdgeSlot(final String name) {
+		final Integer slot = edgeSlots.get(name);
+		return slot == null ? -1 : slot;
+	}
+
+	/** Get the edge name of a slot. */
+	public String getEdgeName(final int slot) {
+		return edgeNames[slot];
+	}
+
+	/**
+	 * Get the slot of a state key.
+	 * 
+	 * @param key The state key.
+	 * @return The slot or -1 if the key is not part of the layout.
+	 */
+	public int getStateSlot(final Object key) {
+		final Integer slot = stateSlots.get(key);
+		return slot == null ? -1 : slot;
+	}
+
+	/** Get the state key of a slot. */
+	public Object getStateKey(final int slot) {
+		return stateKeys[slot];
+	}
+
+	/**
+	 * Get the proxy for an operation.
+	 * 
+	 * Operations which are not part of the layout get a new proxy which
+	 * resolves its ports by name.
+	 */
+	ClassOperationProxy getProxy(final ClassOperation operation) {
+		final ClassOperationProxy proxy = proxies.get(operation);
+		return proxy != null ? proxy : new ClassOperationProxy(operation);
+	}
+
+	@Override
+	public String toString() {
+		return "ContextLayout [edges=" + Arrays.toString(edgeNames) + ", states=" + stateSlots.keySet() + "]";
+	}
+}
@@ -0,0 +1,69 @@
+package msdingfield.easyflow.reflect;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Counts the reads of each edge so a Context can clear it after the last.
+ * 
+ * Once every operation input connected to an edge has been read, nothing in
+ * the evaluation needs the value again.  Unless the caller wants the edge as
+ * an output it can then be cleared so that large intermediate values, such
+ * as gathered fork lists, are not held until the evaluation is discarded.
+ * 
+ * The number of inputs reading each edge depends only on which operations
+ * are evaluated, so it is counted once when a plan is compiled.  Each Context
+ * counts down its own copy and the read which takes it to zero clears the
+ * edge.
+ * 
+ * Instances of EdgeLiveness are immutable.
+ * 
+ * @author Matt
+ *
+ */
+public final class EdgeLiveness {
+
+	/** Number of inputs reading each edge slot, or 0 to keep the edge. */
+	private final int[] readCounts;
+
+	/**
+	 * Count the reads of each edge by a set of operations.
+	 * 
+	 * @param layout The layout giving the edge slots.
+	 * @param operations The operations which will be evaluated.
+	 * @param retainedEdges Edges which must not be cleared.
+	 * @return The counts.
+	 */
+	public static EdgeLiveness of(final ContextLayout layout, final Collection<ClassOperation> operations, final Set<String> retainedEdges) {
+		final int[] readCounts = new int[layout.getEdgeCount()];
+		for (final ClassOperation operation : operations) {
+			for (final OperationPort port : operation.getInputs()) {
+				final int slot = layout.getEdgeSlot(port.getConnectedEdgeName());
+				if (slot >= 0) {
+					++readCounts[slot];
+				}
+			}
+		}
+		for (final String edge : retainedEdges) {
+			final int slot = layout.getEdgeSlot(edge);
+			if (slot >= 0) {
+				readCounts[slot] = 0;
+			}
+		}
+		return new EdgeLiveness(readCounts);
+	}
+
+	private EdgeLiveness(final int[] readCounts) {
+		this.readCounts = readCounts;
+	}
+
+	/** Get the number of edge slots counted. */
+	public int getEdgeCount() {
+		return readCounts.length;
+	}
+
+	/** Get the number of reads of an edge slot, or 0 if it is never cleared. */
+	public int getReadCount(final int slot) {
+		return readCounts[slot];
+	}
+}
@@ -1,35 +1,94 @@
 package msdingfield.easyflow.reflect;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.List;
 
+import msdingfield.easyflow.annotations.Batch;
 import msdingfield.easyflow.annotations.Input;
 import msdingfield.easyflow.annotations.ForkOn;
+import msdingfield.easyflow.reflect.support.InvalidOperationBindingException;
 
 /**
  * OperationInputPort implementation for java.lang.reflect.Field properties.
  * 
+ * Values are written through a setter method handle resolved once when the
+ * port is created.  A primitive field is unboxed by the handle itself.  If
+ * the field is not accessible as a handle, Field.set() is used instead.
+ * 
  * @author Matt
  *
  */
 public class FieldOperationInputPort extends FieldOperationPort implements OperationInputPort {
 	
+	private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+	/** Type (Object,Object)void or null if the field is not accessible. */
+	private final MethodHandle setter;
+
+	private final String connectedEdgeName;
+	private final boolean fork;
+	private final ForkOptions forkOptions;
+
 	/** Wrap a Field. */
 	public FieldOperationInputPort(final Field field) {
 		super(field);
+		this.setter = findSetter(field);
+		this.connectedEdgeName = findConnectedEdgeName();
+		this.fork = field.isAnnotationPresent(ForkOn.class);
+		this.forkOptions = ForkOptions.of(field.getAnnotation(ForkOn.class), field.getAnnotation(Batch.class));
+		if (field.isAnnotationPresent(Batch.class) && !(fork && field.getType().isAssignableFrom(List.class))) {
+			throw new InvalidOperationBindingException(String.format(
+					"Failed to build ClassOperation.  @Batch input %s must be @ForkOn and accept a java.util.List.", field));
+		}
 	}
 	
 	@Override
 	public void set(final Object instance, final Object value) throws IllegalArgumentException, IllegalAccessException {
-		field.set(instance, value);
+		if (setter == null) {
+			field.set(instance, value);
+			return;
+		}
+
+		try {
+			setter.invokeExact(instance, value);
+		} catch (ClassCastException|NullPointerException e) {
+			throw new IllegalArgumentException("Can not set " + field + " to " + value, e);
+		} catch (final Throwable e) {
+			throw new IllegalStateException("Unexpected error setting " + field, e);
+		}
 	}
 
 	@Override
 	public boolean fork() {
-		return field.isAnnotationPresent(ForkOn.class);
+		return fork;
+	}
+
+	@Override
+	public ForkOptions getForkOptions() {
+		return forkOptions;
 	}
 
 	@Override
 	public String getConnectedEdgeName() {
+		return connectedEdgeName;
+	}
+
+	private static MethodHandle findSetter(final Field field) {
+		if (Modifier.isStatic(field.getModifiers())) {
+			return null;
+		}
+		try {
+			return MethodHandles.lookup().unreflectSetter(field).asType(SETTER_TYPE);
+		} catch (final IllegalAccessException e) {
+			return null;
+		}
+	}
+
+	private String findConnectedEdgeName() {
 		final Input input = field.getAnnotation(Input.class);
 		if (input == null) {
 			return getFieldName();
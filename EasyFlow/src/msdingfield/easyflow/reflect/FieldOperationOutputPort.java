@@ -1,29 +1,71 @@
 package msdingfield.easyflow.reflect;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 
 import msdingfield.easyflow.annotations.Output;
 
 /**
  * OperationOutputPort implementation for java.lang.reflect.Field properties.
  * 
+ * Values are read through a getter method handle resolved once when the
+ * port is created, falling back to Field.get() if the field is not
+ * accessible as a handle.
+ * 
  * @author Matt
  *
  */
 public class FieldOperationOutputPort extends FieldOperationPort implements OperationOutputPort {
 
+	private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+	/** Type (Object)Object or null if the field is not accessible. */
+	private final MethodHandle getter;
+
+	private final String connectedEdgeName;
+
 	/** Wrap a Field. */
 	public FieldOperationOutputPort(final Field field) {
 		super(field);
+		this.getter = findGetter(field);
+		this.connectedEdgeName = findConnectedEdgeName();
 	}
 
 	@Override
 	public Object get(final Object instance) throws IllegalArgumentException, IllegalAccessException {
-		return field.get(instance);
+		if (getter == null) {
+			return field.get(instance);
+		}
+
+		try {
+			return (Object) getter.invokeExact(instance);
+		} catch (ClassCastException|NullPointerException e) {
+			throw new IllegalArgumentException("Can not get " + field + " from " + instance, e);
+		} catch (final Throwable e) {
+			throw new IllegalStateException("Unexpected error getting " + field, e);
+		}
 	}
 
 	@Override
 	public String getConnectedEdgeName() {
+		return connectedEdgeName;
+	}
+
+	private static MethodHandle findGetter(final Field field) {
+		if (Modifier.isStatic(field.getModifiers())) {
+			return null;
+		}
+		try {
+			return MethodHandles.lookup().unreflectGetter(field).asType(GETTER_TYPE);
+		} catch (final IllegalAccessException e) {
+			return null;
+		}
+	}
+
+	private String findConnectedEdgeName() {
 		final Output output = field.getAnnotation(Output.class);
 		if (output == null) {
 			return getFieldName();
@@ -0,0 +1,135 @@
+package msdingfield.easyflow.reflect;
+
+import msdingfield.easyflow.annotations.Batch;
+import msdingfield.easyflow.annotations.ForkOn;
+
+/**
+ * How an operation forks on the items of its fork input.
+ * 
+ * These are the settings of the ForkOn annotation and, for a batch operation,
+ * the Batch annotation.  A batch is a chunk whose items are all given to one
+ * invocation, so chunkSize is also the maximum batch size.  Instances of
+ * ForkOptions are immutable.
+ * 
+ * @author Matt
+ *
+ */
+public final class ForkOptions {
+
+	/** One instance and one task per item. */
+	public static final ForkOptions DEFAULT = new ForkOptions(1, false, ForkOn.UNLIMITED, false);
+
+	/** Items per task, or ForkOn.ADAPTIVE. */
+	private final int chunkSize;
+
+	/** True to use one operation instance for every item of a chunk. */
+	private final boolean reuseInstance;
+
+	/** Items which may have unresolved outputs at once, or ForkOn.UNLIMITED. */
+	private final int maxInFlight;
+
+	/** True to set the fork input to the list of items in each chunk. */
+	private final boolean batch;
+
+	/** Milliseconds to merge batches across evaluations, or 0 for none. */
+	private final int batchWindowMillis;
+
+	public ForkOptions(final int chunkSize, final boolean reuseInstance) {
+		this(chunkSize, reuseInstance, ForkOn.UNLIMITED, false);
+	}
+
+	public ForkOptions(final int chunkSize, final boolean reuseInstance, final int maxInFlight) {
+		this(chunkSize, reuseInstance, maxInFlight, false);
+	}
+
+	public ForkOptions(final int chunkSize, final boolean reuseInstance, final int maxInFlight, final boolean batch) {
+		this(chunkSize, reuseInstance, maxInFlight, batch, 0);
+	}
+
+	public ForkOptions(final int chunkSize, final boolean reuseInstance, final int maxInFlight, final boolean batch,
+			final int batchWindowMillis) {
+		if (chunkSize < 0) {
+			throw new IllegalArgumentException("chunkSize must be positive or ForkOn.ADAPTIVE.");
+		}
+		if (maxInFlight < 0) {
+			throw new IllegalArgumentException("maxInFlight must be positive or ForkOn.UNLIMITED.");
+		}
+		this.chunkSize = chunkSize;
+		this.reuseInstance = reuseInstance;
+		this.maxInFlight = maxInFlight;
+		if (batchWindowMillis < 0 || (batchWindowMillis > 0 && !batch)) {
+			throw new IllegalArgumentException("batchWindowMillis must be 0, or positive for a batch.");
+		}
+		this.batch = batch;
+		this.batchWindowMillis = batchWindowMillis;
+	}
+
+	/**
+	 * Get the options of the annotations on a fork input.
+	 * 
+	 * @param forkOn The ForkOn annotation, or null to get DEFAULT.
+	 * @param batch The Batch annotation, or null if not a batch operation.
+	 * @return The options.
+	 */
+	public static ForkOptions of(final ForkOn forkOn, final Batch batch) {
+		if (forkOn == null) {
+			return DEFAULT;
+		}
+		if (batch == null) {
+			return new ForkOptions(forkOn.chunkSize(), forkOn.reuseInstance(), forkOn.maxInFlight(), false);
+		}
+		return new ForkOptions(batchSize(batch.maxSize()), false, forkOn.maxInFlight(), true, batch.windowMillis());
+	}
+
+	/** Get the chunk size for a Batch maxSize. */
+	public static int batchSize(final int maxSize) {
+		return maxSize == Batch.UNLIMITED ? Integer.MAX_VALUE : maxSize;
+	}
+
+	/** Items per task, or ForkOn.ADAPTIVE. */
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	/** True to use one operation instance for every item of a chunk. */
+	public boolean isReuseInstance() {
+		return reuseInstance;
+	}
+
+	/** Items which may have unresolved outputs at once, or ForkOn.UNLIMITED. */
+	public int getMaxInFlight() {
+		return maxInFlight;
+	}
+
+	/** True to set the fork input to the list of items in each chunk. */
+	public boolean isBatch() {
+		return batch;
+	}
+
+	/** Milliseconds to merge batches across evaluations, or 0 for none. */
+	public int getBatchWindowMillis() {
+		return batchWindowMillis;
+	}
+
+	/** True if batches from concurrent evaluations are merged. */
+	public boolean isBatchWindow() {
+		return batchWindowMillis > 0;
+	}
+
+	/** True unless every item gets its own instance and task. */
+	public boolean isChunked() {
+		return chunkSize != 1 || reuseInstance || batch;
+	}
+
+	/** True if the number of items in flight is bounded. */
+	public boolean isBounded() {
+		return maxInFlight != ForkOn.UNLIMITED;
+	}
+
+	@Override
+	public String toString() {
+		return "ForkOptions [chunkSize=" + chunkSize + ", reuseInstance=" + reuseInstance
+				+ ", maxInFlight=" + maxInFlight + ", batch=" + batch
+				+ ", batchWindowMillis=" + batchWindowMillis + "]";
+	}
+}
@@ -0,0 +1,45 @@
+package msdingfield.easyflow.reflect;
+
+/**
+ * OperationInputPort whose write is generated code assigning the field.
+ * 
+ * @author Matt
+ *
+ */
+public abstract class GeneratedOperationInputPort extends GeneratedOperationPort implements OperationInputPort {
+
+	private final boolean fork;
+	private final ForkOptions forkOptions;
+
+	protected GeneratedOperationInputPort(final Class<?> declaringClass, final String fieldName, final Class<?> type, final String connectedEdgeName, final boolean fork) {
+		this(declaringClass, fieldName, type, connectedEdgeName, fork, ForkOptions.DEFAULT);
+	}
+
+	protected GeneratedOperationInputPort(final Class<?> declaringClass, final String fieldName, final Class<?> type, final String connectedEdgeName, final boolean fork, final ForkOptions forkOptions) {
+		super(declaringClass, fieldName, type, connectedEdgeName);
+		this.fork = fork;
+		this.forkOptions = forkOptions;
+	}
+
+	@Override
+	public void set(final Object instance, final Object value) throws IllegalArgumentException {
+		try {
+			write(instance, value);
+		} catch (ClassCastException|NullPointerException e) {
+			throw new IllegalArgumentException("Can not set " + getFieldName() + " to " + value, e);
+		}
+	}
+
+	@Override
+	public boolean fork() {
+		return fork;
+	}
+
+	@Override
+	public ForkOptions getForkOptions() {
+		return forkOptions;
+	}
+
+	/** Assign value to the field of instance. */
+	protected abstract void write(final Object instance, final Object value);
+}
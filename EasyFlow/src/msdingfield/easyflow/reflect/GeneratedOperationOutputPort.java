@@ -0,0 +1,26 @@
+package msdingfield.easyflow.reflect;
+
+/**
+ * OperationOutputPort whose read is generated code reading the field.
+ * 
+ * @author Matt
+ *
+ */
+public abstract class GeneratedOperationOutputPort extends GeneratedOperationPort implements OperationOutputPort {
+
+	protected GeneratedOperationOutputPort(final Class<?> declaringClass, final String fieldName, final Class<?> type, final String connectedEdgeName) {
+		super(declaringClass, fieldName, type, connectedEdgeName);
+	}
+
+	@Override
+	public Object get(final Object instance) throws IllegalArgumentException {
+		try {
+			return read(instance);
+		} catch (ClassCastException|NullPointerException e) {
+			throw new IllegalArgumentException("Can not get " + getFieldName() + " from " + instance, e);
+		}
+	}
+
+	/** Read the field of instance. */
+	protected abstract Object read(final Object instance);
+}
@@ -0,0 +1,69 @@
+package msdingfield.easyflow.reflect;
+
+/**
+ * A base class for ports whose access code is generated at build time.
+ * 
+ * Ports are equal if they are for the same field of the same class.
+ * 
+ * @author Matt
+ *
+ */
+public abstract class GeneratedOperationPort implements OperationPort {
+
+	private final Class<?> declaringClass;
+	private final String fieldName;
+	private final Class<?> type;
+	private final String connectedEdgeName;
+
+	protected GeneratedOperationPort(final Class<?> declaringClass, final String fieldName, final Class<?> type, final String connectedEdgeName) {
+		this.declaringClass = declaringClass;
+		this.fieldName = fieldName;
+		this.type = type;
+		this.connectedEdgeName = connectedEdgeName;
+	}
+
+	@Override
+	public Class<?> getType() {
+		return type;
+	}
+
+	/** Get the name of the field. */
+	public String getFieldName() {
+		return fieldName;
+	}
+
+	@Override
+	public String getConnectedEdgeName() {
+		return connectedEdgeName;
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + declaringClass.hashCode();
+		result = prime * result + fieldName.hashCode();
+		return result;
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (obj == null) {
+			return false;
+		}
+		if (getClass() != obj.getClass()) {
+			return false;
+		}
+		final GeneratedOperationPort other = (GeneratedOperationPort) obj;
+		return declaringClass == other.declaringClass && fieldName.equals(other.fieldName);
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + " [field=" + declaringClass.getName() + "." + fieldName
+				+ ", connectedEdgeName=" + connectedEdgeName + "]";
+	}
+}
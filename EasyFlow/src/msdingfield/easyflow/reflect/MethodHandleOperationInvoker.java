@@ -0,0 +1,95 @@
+package msdingfield.easyflow.reflect;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * OperationInvoker implemented with java.lang.invoke method handles.
+ * 
+ * The handles are resolved once and adapted to a fixed erased type so each
+ * call is a single invokeExact with no argument array and no access check.
+ * 
+ * If the constructor or method cannot be resolved to a handle, for example
+ * because the operation class is not accessible from this package, the
+ * invoker falls back to java.lang.reflect.
+ * 
+ * @author Matt
+ *
+ */
+final class MethodHandleOperationInvoker implements OperationInvoker {
+
+	private static final MethodType FACTORY_TYPE = MethodType.methodType(Object.class);
+	private static final MethodType INVOKER_TYPE = MethodType.methodType(void.class, Object.class);
+
+	/** Type ()Object. */
+	private final MethodHandle factory;
+
+	/** Type (Object)void. */
+	private final MethodHandle invoker;
+
+	/**
+	 * Create an invoker for a constructor and operation method.
+	 * 
+	 * @param constructor The no arg constructor of the operation class.
+	 * @param method The operation method.
+	 * @return The invoker.
+	 */
+	public static OperationInvoker create(final Constructor<?> constructor, final Method method) {
+		final MethodHandles.Lookup lookup = MethodHandles.lookup();
+		try {
+			return new MethodHandleOperationInvoker(
+					lookup.unreflectConstructor(constructor).asType(FACTORY_TYPE),
+					lookup.unreflect(method).asType(INVOKER_TYPE));
+		} catch (final IllegalAccessException e) {
+			return new ReflectiveOperationInvoker(constructor, method);
+		}
+	}
+
+	private MethodHandleOperationInvoker(final MethodHandle factory, final MethodHandle invoker) {
+		this.factory = factory;
+		this.invoker = invoker;
+	}
+
+	@Override
+	public Object newInstance() throws Throwable {
+		return (Object) factory.invokeExact();
+	}
+
+	@Override
+	public void invoke(final Object instance) throws Throwable {
+		invoker.invokeExact(instance);
+	}
+
+	/** Fallback for members which cannot be resolved to method handles. */
+	private static final class ReflectiveOperationInvoker implements OperationInvoker {
+		private final Constructor<?> constructor;
+		private final Method method;
+
+		public ReflectiveOperationInvoker(final Constructor<?> constructor, final Method method) {
+			this.constructor = constructor;
+			this.method = method;
+		}
+
+		@Override
+		public Object newInstance() throws Throwable {
+			try {
+				return constructor.newInstance();
+			} catch (final InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+
+		@Override
+		public void invoke(final Object instance) throws Throwable {
+			try {
+				method.invoke(instance);
+			} catch (final InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+	}
+}
@@ -0,0 +1,126 @@
+package msdingfield.easyflow.reflect;
+
+/**
+ * The ports and state of a ClassOperation resolved against a ContextLayout.
+ * 
+ * Ports whose edge has a slot in the layout are read and written by slot.
+ * Ports without a slot, as when bound against ContextLayout.EMPTY, fall back
+ * to the edge name.
+ * 
+ * Instances of OperationBinding are immutable.
+ * 
+ * @author Matt
+ *
+ */
+final class OperationBinding {
+
+	private final OperationInputPort[] inputs;
+	private final int[] inputSlots;
+
+	/** Index into inputs of the fork input or -1 if none. */
+	private final int forkIndex;
+
+	private final OperationOutputPort[] outputs;
+	private final int[] outputSlots;
+
+	private final Object stateKey;
+	private final int stateSlot;
+
+	/**
+	 * Bind an operation to a layout.
+	 * 
+	 * @param operation The operation to bind.
+	 * @param layout The layout providing the slots.
+	 */
+	public OperationBinding(final ClassOperation operation, final ContextLayout layout) {
+		inputs = operation.getInputs().toArray(new OperationInputPort[0]);
+		inputSlots = new int[inputs.length];
+		int fork = -1;
+		for (int i = 0; i < inputs.length; ++i) {
+			inputSlots[i] = layout.getEdgeSlot(inputs[i].getConnectedEdgeName());
+			if (fork == -1 && inputs[i].fork()) {
+				fork = i;
+			}
+		}
+		forkIndex = fork;
+
+		outputs = operation.getOutputs().toArray(new OperationOutputPort[0]);
+		outputSlots = new int[outputs.length];
+		for (int i = 0; i < outputs.length; ++i) {
+			outputSlots[i] = layout.getEdgeSlot(outputs[i].getConnectedEdgeName());
+		}
+
+		stateKey = operation.getOperationClass();
+		stateSlot = layout.getStateSlot(stateKey);
+	}
+
+	public int getInputCount() {
+		return inputs.length;
+	}
+
+	public OperationInputPort getInput(final int index) {
+		return inputs[index];
+	}
+
+	/** Read the edge connected to an input from context. */
+	public Object readInput(final Context context, final int index) {
+		final int slot = inputSlots[index];
+		return slot >= 0 ? context.getEdgeValue(slot) : context.getEdgeValue(inputs[index].getConnectedEdgeName());
+	}
+
+	/** Tell context the inputs have been read and will not be read again. */
+	public void inputsRead(final Context context) {
+		for (final int slot : inputSlots) {
+			if (slot >= 0) {
+				context.edgeRead(slot);
+			}
+		}
+	}
+
+	/** True if the operation has an input marked as the fork attribute. */
+	public boolean hasForkInput() {
+		return forkIndex >= 0;
+	}
+
+	/** Index of the fork input or -1 if none. */
+	public int getForkIndex() {
+		return forkIndex;
+	}
+
+	/** How the operation forks, or ForkOptions.DEFAULT if it does not. */
+	public ForkOptions getForkOptions() {
+		return forkIndex >= 0 ? inputs[forkIndex].getForkOptions() : ForkOptions.DEFAULT;
+	}
+
+	public int getOutputCount() {
+		return outputs.length;
+	}
+
+	public OperationOutputPort getOutput(final int index) {
+		return outputs[index];
+	}
+
+	/** Write the edge connected to an output into context. */
+	public void writeOutput(final Context context, final int index, final Object value) {
+		final int slot = outputSlots[index];
+		if (slot >= 0) {
+			context.setEdgeValue(slot, value);
+		} else {
+			context.setEdgeValue(outputs[index].getConnectedEdgeName(), value);
+		}
+	}
+
+	/** Get the evaluation time state of the operation from context. */
+	public Object getState(final Context context) {
+		return stateSlot >= 0 ? context.getStateValue(stateSlot) : context.getStateValue(stateKey);
+	}
+
+	/** Set the evaluation time state of the operation in context. */
+	public void setState(final Context context, final Object value) {
+		if (stateSlot >= 0) {
+			context.setStateValue(stateSlot, value);
+		} else {
+			context.setStateValue(stateKey, value);
+		}
+	}
+}
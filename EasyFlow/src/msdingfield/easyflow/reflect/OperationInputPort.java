@@ -13,4 +13,7 @@ public interface OperationInputPort extends OperationPort {
 	 * process each member in parallel.
 	 */
 	public boolean fork();
+
+	/** How the operation forks on this input.  DEFAULT unless fork() is true. */
+	public ForkOptions getForkOptions();
 }
@@ -0,0 +1,19 @@
+package msdingfield.easyflow.reflect;
+
+/**
+ * Creates instances of an operation class and invokes the operation method.
+ * 
+ * Exceptions thrown by user code are thrown as is, without being wrapped in
+ * an InvocationTargetException.
+ * 
+ * @author Matt
+ *
+ */
+public interface OperationInvoker {
+
+	/** Create a new instance of the operation class. */
+	Object newInstance() throws Throwable;
+
+	/** Invoke the operation method on an instance of the operation class. */
+	void invoke(final Object instance) throws Throwable;
+}
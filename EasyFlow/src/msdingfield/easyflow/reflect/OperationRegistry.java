@@ -0,0 +1,25 @@
+package msdingfield.easyflow.reflect;
+
+import java.util.List;
+
+/**
+ * Provides the ClassOperations of a graph without scanning the class path.
+ * 
+ * Implementations are normally generated at build time by
+ * msdingfield.easyflow.processor.ActivityProcessor and found through the
+ * resources listed by RegistryClassOperationBuilder.
+ * 
+ * @author Matt
+ *
+ */
+public interface OperationRegistry {
+
+	/** Get the name of the graph the operations belong to. */
+	String getGraph();
+
+	/**
+	 * Get the operations.  A new list of new ClassOperation instances is
+	 * returned on each call.
+	 */
+	List<ClassOperation> getOperations();
+}
@@ -0,0 +1,117 @@
+package msdingfield.easyflow.reflect;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.Collections;
+import java.util.List;
+
+import msdingfield.easyflow.reflect.support.InvalidOperationBindingException;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.io.Resources;
+
+/** Helpers for loading ClassOperations from generated registries.
+ * 
+ * The annotation processor writes one resource per graph under
+ * REGISTRY_PATH listing the OperationRegistry classes for that graph, one
+ * fully qualified class name per line.  Each registry holds the operations of
+ * one package.  Loading a graph only loads the registry classes and the
+ * operation classes they reference.
+ * 
+ * @author Matt
+ *
+ */
+public final class RegistryClassOperationBuilder {
+
+	/** Directory of the per graph resources. */
+	public static final String REGISTRY_PATH = "META-INF/easyflow/graphs/";
+
+	/**
+	 * Load the ClassOperations of a graph from generated registries.
+	 * 
+	 * @param basePkg Use only registries in this java package and
+	 *                sub-packages.  Null for all packages.
+	 * @param graph The graph to load.
+	 * @return List of ClassOperations or null if no registry for the graph
+	 *         was found in basePkg.
+	 */
+	public static List<ClassOperation> loadOperationsFromRegistry(final String basePkg, final String graph) {
+		return loadOperationsFromRegistry(RegistryClassOperationBuilder.class.getClassLoader(), basePkg, graph);
+	}
+
+	/**
+	 * Load the ClassOperations of a graph from registries visible to the
+	 * given class loader.
+	 * 
+	 * @param classLoader Loader used to find the resources and classes.
+	 * @param basePkg Use only registries in this java package and
+	 *                sub-packages.  Null for all packages.
+	 * @param graph The graph to load.
+	 * @return List of ClassOperations or null if no registry for the graph
+	 *         was found in basePkg.
+	 */
+	public static List<ClassOperation> loadOperationsFromRegistry(final ClassLoader classLoader, final String basePkg, final String graph) {
+		if (graph == null) {
+			return null;
+		}
+
+		final List<ClassOperation> operations = Lists.newArrayList();
+		boolean found = false;
+		for (final String name : findRegistryClassNames(classLoader, graph)) {
+			if (isInPackage(name, basePkg)) {
+				found = true;
+				operations.addAll(newRegistry(classLoader, name).getOperations());
+			}
+		}
+		return found ? operations : null;
+	}
+
+	/** Get the resource listing the registries of a graph. */
+	public static String getResourceName(final String graph) {
+		try {
+			return REGISTRY_PATH + URLEncoder.encode(graph, "UTF-8");
+		} catch (final UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static List<String> findRegistryClassNames(final ClassLoader classLoader, final String graph) {
+		try {
+			final List<URL> resources = Collections.list(classLoader.getResources(getResourceName(graph)));
+			final List<String> names = Lists.newArrayList();
+			for (final URL resource : resources) {
+				for (final String line : Resources.readLines(resource, Charsets.UTF_8)) {
+					final String name = line.trim();
+					if (!name.isEmpty() && !names.contains(name)) {
+						names.add(name);
+					}
+				}
+			}
+			return names;
+		} catch (final IOException e) {
+			throw new InvalidOperationBindingException("Failed to read operation registries for graph " + graph + ".", e);
+		}
+	}
+
+	private static boolean isInPackage(final String className, final String basePkg) {
+		if (basePkg == null) {
+			return true;
+		}
+		final int dot = className.lastIndexOf('.');
+		final String pkg = dot < 0 ? "" : className.substring(0, dot);
+		return pkg.equals(basePkg) || pkg.startsWith(basePkg + ".");
+	}
+
+	private static OperationRegistry newRegistry(final ClassLoader classLoader, final String name) {
+		try {
+			return (OperationRegistry) Class.forName(name, true, classLoader).newInstance();
+		} catch (ClassNotFoundException|InstantiationException|IllegalAccessException|ClassCastException e) {
+			throw new InvalidOperationBindingException("Failed to load operation registry " + name + ".", e);
+		}
+	}
+
+	private RegistryClassOperationBuilder() {}
+}
@@ -0,0 +1,87 @@
+package msdingfield.easyflow.reflect;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import msdingfield.easyflow.annotations.Cached;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+/**
+ * Outputs of a cached operation by the values of its inputs.
+ * 
+ * The outputs are held in a Guava Cache bounded by size and optionally by
+ * time since they were cached.  If admitOnRepeat is set, the inputs of a
+ * first invocation are only remembered in a second, equally bounded cache
+ * and outputs are kept from the next invocation with the same inputs.  This
+ * keeps inputs which are used once from evicting outputs which are reused.
+ * 
+ * @author Matt
+ *
+ */
+public final class ResultCache {
+
+	/** Outputs by input values. */
+	private final Cache<List<Object>, Object[]> outputs;
+
+	/** Input values seen once, or null if every result is admitted. */
+	private final Cache<List<Object>, Boolean> seen;
+
+	/**
+	 * @param maxSize Maximum number of input values to keep outputs for.
+	 * @param ttlMillis Milliseconds to keep outputs, or 0 for no limit.
+	 * @param admitOnRepeat True to keep outputs only for inputs seen before.
+	 */
+	public ResultCache(final int maxSize, final long ttlMillis, final boolean admitOnRepeat) {
+		if (maxSize < 0 || ttlMillis < 0) {
+			throw new IllegalArgumentException("maxSize and ttlMillis must not be negative.");
+		}
+		this.outputs = newBuilder(maxSize, ttlMillis).recordStats().build();
+		this.seen = admitOnRepeat ? newBuilder(maxSize, ttlMillis).<List<Object>, Boolean>build() : null;
+	}
+
+	/** Create the cache described by a Cached annotation. */
+	public static ResultCache of(final Cached cached) {
+		return new ResultCache(cached.maxSize(), cached.ttlMillis(), cached.admitOnRepeat());
+	}
+
+	private static CacheBuilder<Object, Object> newBuilder(final int maxSize, final long ttlMillis) {
+		final CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().maximumSize(maxSize);
+		return ttlMillis > 0 ? builder.expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS) : builder;
+	}
+
+	/**
+	 * Get the cached outputs of the given inputs.
+	 * 
+	 * @param inputs The input values.
+	 * @return The outputs by output index, or null if not cached.
+	 */
+	Object[] get(final List<Object> inputs) {
+		return outputs.getIfPresent(inputs);
+	}
+
+	/**
+	 * Cache the outputs of the given inputs, unless they must be seen again first.
+	 * 
+	 * @param inputs The input values.
+	 * @param values The outputs by output index.
+	 */
+	void put(final List<Object> inputs, final Object[] values) {
+		if (seen != null && seen.asMap().putIfAbsent(inputs, Boolean.TRUE) == null) {
+			return;
+		}
+		outputs.put(inputs, values);
+	}
+
+	/** Get the hits and misses of the cache. */
+	public CacheStats getStats() {
+		return outputs.stats();
+	}
+
+	@Override
+	public String toString() {
+		return "ResultCache [" + getStats() + "]";
+	}
+}
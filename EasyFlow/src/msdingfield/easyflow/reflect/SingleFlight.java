@@ -0,0 +1,85 @@
+package msdingfield.easyflow.reflect;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Shares one run of a coalescing operation among concurrent invocations
+ * with equal inputs.
+ * 
+ * The first invocation for a set of input values leads the flight and runs
+ * the operation.  Invocations with equal input values which arrive before
+ * the leader lands follow it and receive its output values instead of
+ * running.  If the leader fails, so do its followers.  If the leader is
+ * cancelled or misses its deadline, its followers join the flight again and
+ * one of them runs the operation.
+ * 
+ * Flights are kept in a ConcurrentHashMap so invocations of unrelated
+ * inputs do not contend on a single lock.  Counts of executions and of
+ * coalesced invocations are kept for every flight.
+ * 
+ * @author Matt
+ *
+ */
+public final class SingleFlight {
+
+	/** The outputs of each flight in progress by input values. */
+	private final ConcurrentMap<List<Object>, SettableFuture<Object[]>> flights = new ConcurrentHashMap<List<Object>, SettableFuture<Object[]>>();
+
+	private final AtomicLong executions = new AtomicLong();
+	private final AtomicLong coalesced = new AtomicLong();
+
+	/**
+	 * Join the flight for the given input values.
+	 * 
+	 * @param inputs The input values of the invocation.
+	 * @param lead The outputs to publish if this invocation leads.
+	 * @return Null if this invocation leads and must land(), otherwise the
+	 *         outputs of the leader.
+	 */
+	SettableFuture<Object[]> join(final List<Object> inputs, final SettableFuture<Object[]> lead) {
+		final SettableFuture<Object[]> existing = flights.putIfAbsent(inputs, lead);
+		if (existing == null) {
+			executions.incrementAndGet();
+		} else {
+			coalesced.incrementAndGet();
+		}
+		return existing;
+	}
+
+	/**
+	 * End a flight so later invocations run again.
+	 * 
+	 * @param inputs The input values of the leader.
+	 * @param lead The outputs of the leader.
+	 */
+	void land(final List<Object> inputs, final SettableFuture<Object[]> lead) {
+		flights.remove(inputs, lead);
+	}
+
+	/** Number of invocations which ran the operation. */
+	public long getExecutions() {
+		return executions.get();
+	}
+
+	/** Number of invocations which shared the run of another. */
+	public long getCoalesced() {
+		return coalesced.get();
+	}
+
+	/** Fraction of invocations which shared the run of another. */
+	public double getCoalescingRatio() {
+		final long shared = coalesced.get();
+		final long total = executions.get() + shared;
+		return total == 0 ? 0 : (double) shared / total;
+	}
+
+	@Override
+	public String toString() {
+		return "SingleFlight [executions=" + getExecutions() + ", coalesced=" + getCoalesced() + "]";
+	}
+}
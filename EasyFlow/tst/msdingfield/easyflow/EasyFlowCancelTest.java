@@ -0,0 +1,119 @@
+package msdingfield.easyflow;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import msdingfield.easyflow.annotations.Activity;
+import msdingfield.easyflow.annotations.Input;
+import msdingfield.easyflow.annotations.Operation;
+import msdingfield.easyflow.annotations.Output;
+import msdingfield.easyflow.execution.Deadline;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.ListenableFuture;
+
+public class EasyFlowCancelTest {
+
+	private static volatile ListeningFuture pending;
+	private static final AtomicBoolean CONSUMED = new AtomicBoolean(false);
+
+	@Test
+	public void testCancel() throws InterruptedException {
+		pending = new ListeningFuture();
+		final FlowGraph graph = EasyFlow.loadFlowGraph("msdingfield.easyflow", "cancelTest");
+		final FlowEvaluation evaluation = graph.evaluate(Collections.<String, Object>emptyMap());
+		assertTrue(pending.listened.await(5, TimeUnit.SECONDS));
+
+		assertTrue(evaluation.cancel());
+		assertFalse(evaluation.cancel());
+		evaluation.join(5000);
+
+		assertTrue(evaluation.isDone());
+		assertTrue(evaluation.isCancelled());
+		assertFalse(evaluation.isSuccessful());
+		assertTrue(pending.isCancelled());
+		assertFalse(CONSUMED.get());
+		assertNull(evaluation.getOutputs().get("result"));
+	}
+
+	@Test
+	public void testCancelLeavesParamFuture() throws InterruptedException {
+		final ListeningFuture param = new ListeningFuture();
+		final FlowGraph graph = EasyFlow.loadFlowGraph("msdingfield.easyflow", "paramCancelTest");
+		final FlowEvaluation evaluation = graph.evaluate(ImmutableMap.<String, Object>of("param", param));
+		assertTrue(param.listened.await(5, TimeUnit.SECONDS));
+
+		assertTrue(evaluation.cancel());
+		evaluation.join(5000);
+
+		assertTrue(evaluation.isCancelled());
+		assertFalse(param.isCancelled());
+	}
+
+	@Test
+	public void testDeadlineLeavesParamFuture() throws InterruptedException {
+		final ListeningFuture param = new ListeningFuture();
+		final FlowGraph graph = EasyFlow.loadFlowGraph("msdingfield.easyflow", "paramCancelTest");
+		final FlowEvaluation evaluation = graph.evaluate(
+				ImmutableMap.<String, Object>of("param", param), Deadline.after(50, TimeUnit.MILLISECONDS));
+		evaluation.join(5000);
+
+		assertTrue(evaluation.isDone());
+		assertFalse(evaluation.isSuccessful());
+		assertFalse(param.isCancelled());
+	}
+
+	/** A future which signals once something waits on it. */
+	private static class ListeningFuture extends AbstractFuture<String> {
+		private final CountDownLatch listened = new CountDownLatch(1);
+
+		@Override
+		public void addListener(final Runnable listener, final Executor executor) {
+			super.addListener(listener, executor);
+			listened.countDown();
+		}
+	}
+
+	@Activity(graph = "cancelTest")
+	public static class Producer {
+		@Output public ListenableFuture<String> pending;
+
+		@Operation
+		public void run() {
+			pending = EasyFlowCancelTest.pending;
+		}
+	}
+
+	@Activity(graph = "paramCancelTest")
+	public static class ParamConsumer {
+		@Input public String param;
+		@Output public String echo;
+
+		@Operation
+		public void run() {
+			echo = param;
+		}
+	}
+
+	@Activity(graph = "cancelTest")
+	public static class Consumer {
+		@Input public String pending;
+		@Output public String result;
+
+		@Operation
+		public void run() {
+			CONSUMED.set(true);
+			result = pending;
+		}
+	}
+}
@@ -0,0 +1,251 @@
+package msdingfield.easyflow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import msdingfield.easyflow.annotations.Activity;
+import msdingfield.easyflow.annotations.Input;
+import msdingfield.easyflow.annotations.Operation;
+import msdingfield.easyflow.annotations.Output;
+import msdingfield.easyflow.execution.Deadline;
+import msdingfield.easyflow.reflect.SingleFlight;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.ListenableFuture;
+
+public class EasyFlowCoalesceTest {
+
+	private static final AtomicInteger runs = new AtomicInteger();
+	private static volatile CountDownLatch entered;
+	private static volatile CountDownLatch release;
+
+	private static volatile ListeningFuture quote;
+
+	private final FlowGraph graph = EasyFlow.loadFlowGraph("msdingfield.easyflow", "coalesceTest");
+	private final FlowGraph quoteGraph = EasyFlow.loadFlowGraph("msdingfield.easyflow", "coalesceFutureTest");
+
+	@Before
+	public void setUp() {
+		runs.set(0);
+		entered = new CountDownLatch(1);
+		release = new CountDownLatch(1);
+		quote = new ListeningFuture();
+	}
+
+	@Activity(graph = "coalesceTest", coalesce = true)
+	public static class LoadPortfolio {
+		@Input public String clientId;
+		@Output public String portfolio;
+
+		@Operation(blocking = true)
+		public void run() throws InterruptedException {
+			runs.incrementAndGet();
+			entered.countDown();
+			release.await(10, TimeUnit.SECONDS);
+			if ("broken".equals(clientId)) {
+				throw new IllegalStateException("No portfolio.");
+			}
+			portfolio = "portfolio of " + clientId;
+		}
+	}
+
+	@Activity(graph = "coalesceFutureTest", coalesce = true)
+	public static class LoadQuote {
+		@Input public String symbol;
+		@Output public ListenableFuture<String> quote;
+
+		@Operation(blocking = true)
+		public void run() throws InterruptedException {
+			runs.incrementAndGet();
+			entered.countDown();
+			release.await(10, TimeUnit.SECONDS);
+			quote = EasyFlowCoalesceTest.quote;
+		}
+	}
+
+	@Activity(graph = "coalesceFutureTest")
+	public static class ReadQuote {
+		@Input public String quote;
+		@Output public String reading;
+
+		@Operation
+		public void run() {
+			reading = "read " + quote;
+		}
+	}
+
+	/** A future which counts what waits on it. */
+	private static class ListeningFuture extends AbstractFuture<String> {
+		private final AtomicInteger listeners = new AtomicInteger();
+
+		@Override
+		public void addListener(final Runnable listener, final Executor executor) {
+			super.addListener(listener, executor);
+			listeners.incrementAndGet();
+		}
+
+		@Override
+		public boolean set(final String value) {
+			return super.set(value);
+		}
+	}
+
+	@Test
+	public void testSharesRun() throws InterruptedException {
+		final FlowEvaluation first = graph.evaluate(ImmutableMap.<String, Object>of("clientId", "c1"));
+		assertTrue(entered.await(10, TimeUnit.SECONDS));
+		final FlowEvaluation second = graph.evaluate(ImmutableMap.<String, Object>of("clientId", "c1"));
+		awaitCoalesced(1);
+		release.countDown();
+
+		assertEquals("portfolio of c1", first.getOutputs().get("portfolio"));
+		assertEquals("portfolio of c1", second.getOutputs().get("portfolio"));
+		assertEquals(1, runs.get());
+
+		final SingleFlight stats = graph.getCoalescingStats().get(LoadPortfolio.class.getName());
+		assertEquals(1, stats.getExecutions());
+		assertEquals(1, stats.getCoalesced());
+		assertEquals(0.5, stats.getCoalescingRatio(), 0.0);
+	}
+
+	@Test
+	public void testRunsDifferentInputs() throws InterruptedException {
+		release.countDown();
+		final FlowEvaluation first = graph.evaluate(ImmutableMap.<String, Object>of("clientId", "c1"));
+		final FlowEvaluation second = graph.evaluate(ImmutableMap.<String, Object>of("clientId", "c2"));
+
+		assertEquals("portfolio of c1", first.getOutputs().get("portfolio"));
+		assertEquals("portfolio of c2", second.getOutputs().get("portfolio"));
+		assertEquals(2, runs.get());
+	}
+
+	@Test
+	public void testRunsAgainAfterLanding() throws InterruptedException {
+		release.countDown();
+		graph.evaluate(ImmutableMap.<String, Object>of("clientId", "c1")).join();
+		graph.evaluate(ImmutableMap.<String, Object>of("clientId", "c1")).join();
+		assertEquals(2, runs.get());
+		assertEquals(0, graph.getCoalescingStats().get(LoadPortfolio.class.getName()).getCoalesced());
+	}
+
+	@Test
+	public void testSharesFailure() throws InterruptedException {
+		final FlowEvaluation first = graph.evaluate(ImmutableMap.<String, Object>of("clientId", "broken"));
+		assertTrue(entered.await(10, TimeUnit.SECONDS));
+		final FlowEvaluation second = graph.evaluate(ImmutableMap.<String, Object>of("clientId", "broken"));
+		awaitCoalesced(1);
+		release.countDown();
+
+		assertFalse(first.join().isSuccessful());
+		assertFalse(second.join().isSuccessful());
+		assertEquals(1, runs.get());
+
+		// The failed flight has landed so the next invocation runs
+		entered = new CountDownLatch(1);
+		assertFalse(graph.evaluate(ImmutableMap.<String, Object>of("clientId", "broken")).join().isSuccessful());
+		assertEquals(2, runs.get());
+	}
+
+	@Test
+	public void testCancelledFollowerLeavesLeader() throws InterruptedException {
+		final FlowEvaluation leader = quoteGraph.evaluate(ImmutableMap.<String, Object>of("symbol", "ABC"));
+		assertTrue(entered.await(10, TimeUnit.SECONDS));
+		final FlowEvaluation follower = quoteGraph.evaluate(ImmutableMap.<String, Object>of("symbol", "ABC"));
+		awaitCoalesced(quoteGraph, LoadQuote.class, 1);
+		release.countDown();
+
+		// Both evaluations wait on the quote before the follower is cancelled
+		for (int i = 0; i < 1000 && quote.listeners.get() < 2; ++i) {
+			Thread.sleep(5);
+		}
+		Thread.sleep(50);
+		assertTrue(follower.cancel());
+		follower.join(5000);
+
+		assertFalse(quote.isCancelled());
+		quote.set("42");
+		assertEquals("read 42", leader.getOutputs().get("reading"));
+		assertTrue(leader.isSuccessful());
+		assertEquals(1, runs.get());
+	}
+
+	@Test
+	public void testCancelledLeaderLeavesFollower() throws InterruptedException {
+		final FlowEvaluation leader = quoteGraph.evaluate(ImmutableMap.<String, Object>of("symbol", "ABC"));
+		assertTrue(entered.await(10, TimeUnit.SECONDS));
+		final FlowEvaluation follower = quoteGraph.evaluate(ImmutableMap.<String, Object>of("symbol", "ABC"));
+		awaitCoalesced(quoteGraph, LoadQuote.class, 1);
+		release.countDown();
+
+		// Both evaluations wait on the quote before the leader is cancelled
+		for (int i = 0; i < 1000 && quote.listeners.get() < 2; ++i) {
+			Thread.sleep(5);
+		}
+		Thread.sleep(50);
+		assertTrue(leader.cancel());
+		leader.join(5000);
+
+		assertFalse(quote.isCancelled());
+		quote.set("42");
+		assertEquals("read 42", follower.getOutputs().get("reading"));
+		assertTrue(follower.isSuccessful());
+		assertEquals(1, runs.get());
+	}
+
+	@Test
+	public void testFollowerRunsWhenLeaderIsCancelled() throws InterruptedException {
+		quote.set("42");
+		final FlowEvaluation leader = quoteGraph.evaluate(ImmutableMap.<String, Object>of("symbol", "ABC"));
+		assertTrue(entered.await(10, TimeUnit.SECONDS));
+		final FlowEvaluation follower = quoteGraph.evaluate(ImmutableMap.<String, Object>of("symbol", "ABC"));
+		awaitCoalesced(quoteGraph, LoadQuote.class, 1);
+
+		assertTrue(leader.cancel());
+		release.countDown();
+
+		assertEquals("read 42", follower.getOutputs().get("reading"));
+		assertTrue(follower.isSuccessful());
+		assertTrue(leader.isCancelled());
+		assertEquals(2, runs.get());
+	}
+
+	@Test
+	public void testFollowerRunsWhenLeaderMissesDeadline() throws InterruptedException {
+		quote.set("42");
+		final FlowEvaluation leader = quoteGraph.evaluate(
+				ImmutableMap.<String, Object>of("symbol", "ABC"), Deadline.after(50, TimeUnit.MILLISECONDS));
+		assertTrue(entered.await(10, TimeUnit.SECONDS));
+		final FlowEvaluation follower = quoteGraph.evaluate(ImmutableMap.<String, Object>of("symbol", "ABC"));
+		awaitCoalesced(quoteGraph, LoadQuote.class, 1);
+
+		Thread.sleep(100);
+		release.countDown();
+
+		assertEquals("read 42", follower.getOutputs().get("reading"));
+		assertTrue(follower.isSuccessful());
+		assertFalse(leader.join().isSuccessful());
+		assertEquals(2, runs.get());
+	}
+
+	/** Wait until count invocations have joined a running flight. */
+	private void awaitCoalesced(final int count) throws InterruptedException {
+		awaitCoalesced(graph, LoadPortfolio.class, count);
+	}
+
+	private static void awaitCoalesced(final FlowGraph graph, final Class<?> operation, final int count) throws InterruptedException {
+		final SingleFlight stats = graph.getCoalescingStats().get(operation.getName());
+		for (int i = 0; i < 1000 && stats.getCoalesced() < count; ++i) {
+			Thread.sleep(5);
+		}
+	}
+}
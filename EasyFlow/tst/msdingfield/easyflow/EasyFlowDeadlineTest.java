@@ -0,0 +1,73 @@
+package msdingfield.easyflow;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import msdingfield.easyflow.annotations.Activity;
+import msdingfield.easyflow.annotations.Input;
+import msdingfield.easyflow.annotations.Operation;
+import msdingfield.easyflow.annotations.Output;
+import msdingfield.easyflow.execution.Deadline;
+import msdingfield.easyflow.execution.Task;
+
+import org.junit.Test;
+
+import com.google.common.base.Predicates;
+import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+public class EasyFlowDeadlineTest {
+
+	private static final SettableFuture<String> NEVER = SettableFuture.create();
+
+	@Test
+	public void testDeadline() throws InterruptedException {
+		final FlowGraph graph = EasyFlow.loadFlowGraph("msdingfield.easyflow", "deadlineTest");
+		final Deadline deadline = Deadline.after(100, TimeUnit.MILLISECONDS);
+		final FlowEvaluation evaluation = graph.evaluate(Collections.<String, Object>emptyMap(), deadline);
+		evaluation.join(5000);
+
+		assertTrue(evaluation.isDone());
+		assertFalse(evaluation.isSuccessful());
+		assertFalse(evaluation.isCancelled());
+		assertTrue(Iterables.any(evaluation.getErrors(), Predicates.instanceOf(Task.DeadlineExceededException.class)));
+		assertSame(deadline, evaluation.getOutputs().get("deadline"));
+		assertFalse(evaluation.getOutputs().containsKey("late"));
+	}
+
+	@Activity(graph = "deadlineTest")
+	public static class DeadlineReader {
+		@Output public Deadline deadline;
+
+		@Operation
+		public void run() {
+			deadline = Task.currentDeadline();
+		}
+	}
+
+	@Activity(graph = "deadlineTest")
+	public static class Slow {
+		@Output public ListenableFuture<String> never;
+
+		@Operation
+		public void run() {
+			never = NEVER;
+		}
+	}
+
+	@Activity(graph = "deadlineTest")
+	public static class Late {
+		@Input public String never;
+		@Output public String late;
+
+		@Operation
+		public void run() {
+			late = never;
+		}
+	}
+}
@@ -0,0 +1,97 @@
+package msdingfield.easyflow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import msdingfield.easyflow.annotations.Activity;
+import msdingfield.easyflow.annotations.Input;
+import msdingfield.easyflow.annotations.Operation;
+import msdingfield.easyflow.annotations.Output;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+public class EasyFlowOutputsFutureTest {
+
+	private final FlowGraph graph = EasyFlow.loadFlowGraph("msdingfield.easyflow", "outputsFutureTest");
+
+	@Test
+	public void testOutputsFuture() throws InterruptedException, ExecutionException, TimeoutException {
+		final FlowEvaluation evaluation = graph.evaluate(ImmutableMap.<String, Object>of("value", 21));
+		final Map<String, Object> outputs = evaluation.getOutputsFuture().get(5, TimeUnit.SECONDS);
+		assertEquals(42, outputs.get("doubled"));
+	}
+
+	@Test
+	public void testOutputsFutureFailure() throws InterruptedException, TimeoutException {
+		final FlowEvaluation evaluation = graph.evaluate(ImmutableMap.<String, Object>of("value", -1));
+		try {
+			evaluation.getOutputsFuture().get(5, TimeUnit.SECONDS);
+			fail();
+		} catch (final ExecutionException e) {
+			final FlowEvaluationException failure = (FlowEvaluationException) e.getCause();
+			assertFalse(failure.getErrors().isEmpty());
+			assertEquals(-1, failure.getOutputs().get("value"));
+		}
+		assertFalse(evaluation.isSuccessful());
+	}
+
+	@Test
+	public void testCallbackAfterCompletion() throws InterruptedException {
+		final FlowEvaluation evaluation = graph.evaluate(ImmutableMap.<String, Object>of("value", 1)).join();
+		final CountDownLatch called = new CountDownLatch(1);
+		evaluation.addCallback(new Runnable() {
+			@Override public void run() {
+				called.countDown();
+			}});
+		assertTrue(called.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testCallbackOnExecutor() throws InterruptedException {
+		final ExecutorService executor = Executors.newSingleThreadExecutor(
+				new ThreadFactoryBuilder().setNameFormat("callback-%d").build());
+		try {
+			final AtomicReference<String> thread = new AtomicReference<String>();
+			final CountDownLatch called = new CountDownLatch(1);
+			final FlowEvaluation evaluation = graph.evaluate(ImmutableMap.<String, Object>of("value", 1));
+			evaluation.addCallback(new Runnable() {
+				@Override public void run() {
+					thread.set(Thread.currentThread().getName());
+					called.countDown();
+				}}, executor);
+			assertTrue(called.await(5, TimeUnit.SECONDS));
+			assertEquals("callback-0", thread.get());
+			assertTrue(evaluation.isDone());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Activity(graph = "outputsFutureTest")
+	public static class Doubler {
+		@Input public int value;
+		@Output public int doubled;
+
+		@Operation
+		public void run() {
+			if (value < 0) {
+				throw new IllegalArgumentException("Negative value.");
+			}
+			doubled = 2 * value;
+		}
+	}
+}
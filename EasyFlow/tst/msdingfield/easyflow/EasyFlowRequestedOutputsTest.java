@@ -0,0 +1,120 @@
+package msdingfield.easyflow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.Set;
+
+import msdingfield.easyflow.annotations.Activity;
+import msdingfield.easyflow.annotations.Input;
+import msdingfield.easyflow.annotations.Operation;
+import msdingfield.easyflow.annotations.Output;
+import msdingfield.easyflow.graph.support.OutputNotFoundException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+
+public class EasyFlowRequestedOutputsTest {
+
+	private static final Set<String> RAN = Sets.newConcurrentHashSet();
+
+	private final FlowGraph graph = EasyFlow.loadFlowGraph("msdingfield.easyflow", "requestedOutputsTest");
+
+	@Before
+	public void setUp() {
+		RAN.clear();
+	}
+
+	@Test
+	public void testRunsOnlyProducers() throws InterruptedException {
+		final Map<String, Object> outputs = graph.evaluate(ImmutableMap.<String, Object>of("x", 1, "y", 10), ImmutableSet.of("b")).getOutputs();
+		assertEquals(ImmutableMap.<String, Object>of("b", 4), outputs);
+		assertEquals(ImmutableSet.of("A", "B"), RAN);
+	}
+
+	@Test
+	public void testRunsAllRequested() throws InterruptedException {
+		final Map<String, Object> outputs = graph.evaluate(ImmutableMap.<String, Object>of("x", 1, "y", 10), ImmutableSet.of("b", "d")).getOutputs();
+		assertEquals(4, outputs.get("b"));
+		assertEquals(40, outputs.get("d"));
+		assertEquals(ImmutableSet.of("b", "d"), outputs.keySet());
+		assertEquals(ImmutableSet.of("A", "B", "C", "D"), RAN);
+	}
+
+	@Test
+	public void testDropsUnsatisfiedOperations() throws InterruptedException {
+		final FlowEvaluation evaluation = graph.evaluate(ImmutableMap.<String, Object>of("x", 1), ImmutableSet.of("b", "d")).join();
+		assertTrue(evaluation.isSuccessful());
+		assertEquals(4, evaluation.getOutputs().get("b"));
+		assertFalse(evaluation.getOutputs().containsKey("d"));
+		assertEquals(ImmutableSet.of("A", "B"), RAN);
+	}
+
+	@Test
+	public void testReusesPlan() throws InterruptedException {
+		graph.evaluate(ImmutableMap.<String, Object>of("x", 1), ImmutableSet.of("b")).join();
+		graph.evaluate(ImmutableMap.<String, Object>of("x", 2), ImmutableSet.of("b")).join();
+		graph.evaluate(ImmutableMap.<String, Object>of("x", 3, "y", 4), ImmutableSet.of("b")).join();
+		assertEquals(1, graph.getPlanCacheStats().hitCount());
+		assertEquals(2, graph.getPlanCacheStats().missCount());
+	}
+
+	@Test(expected=OutputNotFoundException.class)
+	public void testUnknownOutput() {
+		graph.evaluate(ImmutableMap.<String, Object>of("x", 1), ImmutableSet.of("unknown"));
+	}
+
+	@Activity(graph = "requestedOutputsTest")
+	public static class A {
+		@Input public Integer x;
+		@Output public Integer a;
+
+		@Operation
+		public void run() {
+			RAN.add("A");
+			a = x * 2;
+		}
+	}
+
+	@Activity(graph = "requestedOutputsTest")
+	public static class B {
+		@Input public Integer a;
+		@Output public Integer b;
+
+		@Operation
+		public void run() {
+			RAN.add("B");
+			b = a * 2;
+		}
+	}
+
+	@Activity(graph = "requestedOutputsTest")
+	public static class C {
+		@Input public Integer y;
+		@Output public Integer c;
+
+		@Operation
+		public void run() {
+			RAN.add("C");
+			c = y * 2;
+		}
+	}
+
+	@Activity(graph = "requestedOutputsTest")
+	public static class D {
+		@Input public Integer c;
+		@Output public Integer d;
+
+		@Operation
+		public void run() {
+			RAN.add("D");
+			d = c * 2;
+		}
+	}
+}
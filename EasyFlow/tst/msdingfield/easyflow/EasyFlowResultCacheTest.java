@@ -0,0 +1,205 @@
+package msdingfield.easyflow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import msdingfield.easyflow.annotations.Activity;
+import msdingfield.easyflow.annotations.Cached;
+import msdingfield.easyflow.annotations.ForkOn;
+import msdingfield.easyflow.annotations.Input;
+import msdingfield.easyflow.annotations.Operation;
+import msdingfield.easyflow.annotations.Output;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+public class EasyFlowResultCacheTest {
+
+	private static final AtomicInteger runs = new AtomicInteger();
+	private static final List<SettableFuture<String>> pendingQuotes = Collections.synchronizedList(Lists.<SettableFuture<String>>newArrayList());
+
+	@Before
+	public void setUp() {
+		runs.set(0);
+		pendingQuotes.clear();
+	}
+
+	@Activity(graph = "cacheTest")
+	@Cached(maxSize = 10)
+	public static class PriceQuote {
+		@Input public String symbol;
+		@Output public ListenableFuture<String> quote;
+		@Output public String currency;
+
+		@Operation
+		public void run() {
+			runs.incrementAndGet();
+			if ("broken".equals(symbol)) {
+				throw new IllegalStateException("No quote.");
+			}
+			quote = Futures.immediateFuture("quote of " + symbol);
+			currency = "USD";
+		}
+	}
+
+	@Activity(graph = "cacheTtlTest")
+	@Cached(ttlMillis = 50)
+	public static class ExpiringQuote {
+		@Input public String symbol;
+		@Output public String quote;
+
+		@Operation
+		public void run() {
+			runs.incrementAndGet();
+			quote = "quote of " + symbol;
+		}
+	}
+
+	@Activity(graph = "cacheRepeatTest")
+	@Cached(admitOnRepeat = true)
+	public static class RepeatedQuote {
+		@Input public String symbol;
+		@Output public String quote;
+
+		@Operation
+		public void run() {
+			runs.incrementAndGet();
+			quote = "quote of " + symbol;
+		}
+	}
+
+	@Activity(graph = "cacheForkTest")
+	@Cached
+	public static class PendingQuote {
+		@Input @ForkOn public String symbol;
+		@Output public ListenableFuture<String> quote;
+
+		@Operation
+		public void run() {
+			runs.incrementAndGet();
+			final SettableFuture<String> pending = SettableFuture.create();
+			pendingQuotes.add(pending);
+			quote = pending;
+		}
+	}
+
+	@Activity(graph = "cacheForkTest")
+	public static class QuoteReader {
+		@Input public List<String> quote;
+		@Output public String reading;
+
+		@Operation
+		public void run() {
+			reading = "read " + quote;
+		}
+	}
+
+	@Test
+	public void testHitSkipsRun() throws Exception {
+		final FlowGraph graph = EasyFlow.loadFlowGraph("msdingfield.easyflow", "cacheTest");
+		assertEquals("quote of ABC", evaluate(graph, "quote", "ABC"));
+		assertEquals("quote of ABC", evaluate(graph, "quote", "ABC"));
+		assertEquals("USD", evaluate(graph, "currency", "ABC"));
+		assertEquals(1, runs.get());
+
+		final CacheStats stats = graph.getResultCacheStats().get(PriceQuote.class.getName());
+		assertEquals(2, stats.hitCount());
+		assertEquals(1, stats.missCount());
+	}
+
+	@Test
+	public void testRunsDifferentInputs() throws Exception {
+		final FlowGraph graph = EasyFlow.loadFlowGraph("msdingfield.easyflow", "cacheTest");
+		assertEquals("quote of ABC", evaluate(graph, "quote", "ABC"));
+		assertEquals("quote of XYZ", evaluate(graph, "quote", "XYZ"));
+		assertEquals(2, runs.get());
+	}
+
+	@Test
+	public void testDoesNotCacheFailure() throws Exception {
+		final FlowGraph graph = EasyFlow.loadFlowGraph("msdingfield.easyflow", "cacheTest");
+		assertFalse(graph.evaluate(ImmutableMap.<String, Object>of("symbol", "broken")).join().isSuccessful());
+		assertFalse(graph.evaluate(ImmutableMap.<String, Object>of("symbol", "broken")).join().isSuccessful());
+		assertEquals(2, runs.get());
+	}
+
+	@Test
+	public void testExpires() throws Exception {
+		final FlowGraph graph = EasyFlow.loadFlowGraph("msdingfield.easyflow", "cacheTtlTest");
+		evaluate(graph, "quote", "ABC");
+		evaluate(graph, "quote", "ABC");
+		assertEquals(1, runs.get());
+
+		Thread.sleep(100);
+		assertEquals("quote of ABC", evaluate(graph, "quote", "ABC"));
+		assertEquals(2, runs.get());
+	}
+
+	@Test
+	public void testAdmitsOnRepeat() throws Exception {
+		final FlowGraph graph = EasyFlow.loadFlowGraph("msdingfield.easyflow", "cacheRepeatTest");
+		evaluate(graph, "quote", "ABC");
+		evaluate(graph, "quote", "ABC");
+		assertEquals(2, runs.get());
+
+		assertEquals("quote of ABC", evaluate(graph, "quote", "ABC"));
+		assertEquals(2, runs.get());
+	}
+
+	@Test
+	public void testCancelledHitLeavesCachedFutures() throws Exception {
+		final FlowGraph graph = EasyFlow.loadFlowGraph("msdingfield.easyflow", "cacheForkTest");
+		final Map<String, Object> params = ImmutableMap.<String, Object>of("symbol", ImmutableList.of("ABC"));
+
+		// Outputs are only cached once the futures in the list resolve
+		final FlowEvaluation first = graph.evaluate(params);
+		final FlowEvaluation second = graph.evaluate(params);
+		for (int i = 0; i < 1000 && pendingQuotes.size() < 2; ++i) {
+			Thread.sleep(5);
+		}
+		assertTrue(second.cancel());
+		second.join(5000);
+		assertTrue(second.isDone());
+		for (final SettableFuture<String> pending : pendingQuotes) {
+			pending.set("quote");
+		}
+		assertEquals("read [quote]", first.getOutputs().get("reading"));
+		assertTrue(first.isSuccessful());
+
+		final FlowEvaluation hit = graph.evaluate(params);
+		hit.cancel();
+		hit.join(5000);
+		assertTrue(hit.isDone());
+
+		final FlowEvaluation next = graph.evaluate(params);
+		assertEquals("read [quote]", next.getOutputs().get("reading"));
+		assertTrue(next.isSuccessful());
+		assertEquals(2, runs.get());
+	}
+
+	@Test
+	public void testUncachedOperationsHaveNoStats() {
+		final FlowGraph graph = EasyFlow.loadFlowGraph("msdingfield.easyflow", "coalesceTest");
+		assertNull(graph.getResultCacheStats().get(EasyFlowCoalesceTest.LoadPortfolio.class.getName()));
+	}
+
+	private static Object evaluate(final FlowGraph graph, final String output, final String symbol) throws Exception {
+		final Object value = graph.evaluate(ImmutableMap.<String, Object>of("symbol", symbol)).getOutputs().get(output);
+		return value instanceof ListenableFuture ? ((ListenableFuture<?>) value).get() : value;
+	}
+}
@@ -0,0 +1,74 @@
+package msdingfield.easyflow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import msdingfield.easyflow.annotations.Activity;
+import msdingfield.easyflow.annotations.Input;
+import msdingfield.easyflow.annotations.Operation;
+import msdingfield.easyflow.annotations.Output;
+import msdingfield.easyflow.execution.TaskStats;
+import msdingfield.easyflow.execution.TaskStats.Phase;
+import msdingfield.easyflow.execution.TaskStatsSummary;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+public class EasyFlowStatsTest {
+
+	@Test
+	public void testStatsDisabled() throws InterruptedException {
+		final FlowGraph graph = EasyFlow.loadFlowGraph("msdingfield.easyflow", "statsTest", false);
+		final FlowEvaluation evaluation = graph.evaluate(ImmutableMap.<String, Object>of("value", 1)).join();
+		assertEquals(3, evaluation.getOutputs().get("tripled"));
+		assertTrue(evaluation.getStats().isEmpty());
+		assertTrue(graph.getStats().isEmpty());
+	}
+
+	@Test
+	public void testStatsEnabled() throws InterruptedException {
+		final FlowGraph graph = EasyFlow.loadFlowGraph("msdingfield.easyflow", "statsTest", true);
+		final FlowEvaluation evaluation = graph.evaluate(ImmutableMap.<String, Object>of("value", 1)).join();
+		graph.evaluate(ImmutableMap.<String, Object>of("value", 2)).join();
+
+		final Map<String, TaskStats> stats = evaluation.getStats();
+		assertEquals(ImmutableSet.of(Doubler.class.getName(), Tripler.class.getName()), stats.keySet());
+		final TaskStats doubled = stats.get(Doubler.class.getName());
+		final TaskStats tripled = stats.get(Tripler.class.getName());
+		assertEquals(1, tripled.getRunCount(Phase.EXECUTING));
+		assertTrue(tripled.getUnblockedTime() >= doubled.getCompletedTime());
+
+		final Map<String, TaskStatsSummary> summaries = graph.getStats();
+		assertEquals(stats.keySet(), summaries.keySet());
+		for (final TaskStatsSummary summary : summaries.values()) {
+			assertEquals(2, summary.getCount());
+		}
+	}
+
+	@Activity(graph = "statsTest")
+	public static class Doubler {
+		@Input public int value;
+		@Output public int doubled;
+
+		@Operation
+		public void run() {
+			doubled = 2 * value;
+		}
+	}
+
+	@Activity(graph = "statsTest")
+	public static class Tripler {
+		@Input public int value;
+		@Input public int doubled;
+		@Output public int tripled;
+
+		@Operation
+		public void run() {
+			tripled = value + doubled;
+		}
+	}
+}
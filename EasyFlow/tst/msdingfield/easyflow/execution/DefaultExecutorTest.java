@@ -1,14 +1,18 @@
 package msdingfield.easyflow.execution;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 
@@ -36,4 +40,31 @@ public class DefaultExecutorTest {
 		final Boolean result = future.get(1L, TimeUnit.SECONDS);
 		assertTrue(result);
 	}
+
+	@Test
+	public void testModes() {
+		assertTrue(DefaultExecutor.get(DefaultExecutor.Mode.WORK_STEALING) instanceof ForkJoinPool);
+		assertFalse(DefaultExecutor.get(DefaultExecutor.Mode.FIXED_POOL) instanceof ForkJoinPool);
+		assertTrue(DefaultExecutor.get(DefaultExecutor.Mode.FIXED_POOL) == DefaultExecutor.get(DefaultExecutor.Mode.FIXED_POOL));
+	}
+
+	@Test
+	public void testWorkStealingRunsForkedTasks() throws InterruptedException {
+		final ExecutorService pool = DefaultExecutor.newWorkStealingPool(2);
+		final AtomicInteger count = new AtomicInteger(0);
+		final Task task = new Task(pool, new Runnable() {
+			@Override public void run() {
+				for (int i = 0; i < 100; ++i) {
+					Task.fork(new Runnable() {
+						@Override public void run() {
+							count.incrementAndGet();
+						}});
+				}
+			}});
+		task.schedule().join(5000L);
+		pool.shutdown();
+
+		assertTrue(task.isSuccess());
+		assertEquals(100, count.get());
+	}
 }
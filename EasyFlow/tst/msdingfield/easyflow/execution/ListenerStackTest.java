@@ -0,0 +1,63 @@
+package msdingfield.easyflow.execution;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class ListenerStackTest {
+
+	private final List<String> calls = Lists.newArrayList();
+
+	private Runnable record(final String name) {
+		return new Runnable() {
+			@Override public void run() {
+				calls.add(name);
+			}};
+	}
+
+	@Test
+	public void testRunAllInOrderAdded() {
+		final ListenerStack stack = new ListenerStack();
+		stack.push(record("a"));
+		stack.push(record("b"));
+		stack.push(record("c"));
+		stack.runAll();
+		stack.runAll();
+		assertEquals(Lists.newArrayList("a", "b", "c", "a", "b", "c"), calls);
+	}
+
+	@Test
+	public void testCloseRunsOnce() {
+		final ListenerStack stack = new ListenerStack();
+		stack.push(record("a"));
+		stack.push(record("b"));
+		assertFalse(stack.isClosed());
+		stack.close();
+		stack.close();
+		assertTrue(stack.isClosed());
+		assertEquals(Lists.newArrayList("a", "b"), calls);
+	}
+
+	@Test
+	public void testPushAfterCloseRejected() {
+		final ListenerStack stack = new ListenerStack();
+		stack.close();
+		assertFalse(stack.push(record("a")));
+		stack.runAll();
+		assertTrue(calls.isEmpty());
+	}
+
+	@Test
+	public void testEmpty() {
+		final ListenerStack stack = new ListenerStack();
+		stack.runAll();
+		stack.close();
+		assertTrue(calls.isEmpty());
+	}
+}
@@ -0,0 +1,158 @@
+package msdingfield.easyflow.execution;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import msdingfield.easyflow.testsupport.TestExecutor;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+public class TaskCancelTest {
+
+	@Rule
+	public TestExecutor executor = new TestExecutor();
+
+	private final AtomicInteger runs = new AtomicInteger();
+
+	private final Runnable counter = new Runnable() {
+		@Override public void run() {
+			runs.incrementAndGet();
+		}
+	};
+
+	@Test
+	public void testCancelBlockedTask() throws InterruptedException {
+		final CountDownLatch release = new CountDownLatch(1);
+		final Task predecessor = new Task(executor, new Runnable() {
+			@Override public void run() {
+				Uninterruptibles.awaitUninterruptibly(release);
+			}});
+		final Task task = new Task(executor, counter);
+		task.addFinalizer(counter);
+		task.waitFor(predecessor);
+		task.schedule();
+		predecessor.schedule();
+
+		assertTrue(task.cancel());
+		assertFalse(task.cancel());
+		release.countDown();
+		task.join();
+
+		assertTrue(task.isComplete());
+		assertTrue(task.isCancelled());
+		assertFalse(task.isSuccess());
+		assertTrue(Iterables.getFirst(task.getErrors(), null) instanceof CancellationException);
+		assertEquals(0, runs.get());
+	}
+
+	@Test
+	public void testCombinedFutureFailsOnCancelledItem() throws InterruptedException {
+		final SettableFuture<String> cancelled = SettableFuture.create();
+		cancelled.cancel(false);
+		final AtomicReference<ListenableFuture<List<String>>> combined = new AtomicReference<ListenableFuture<List<String>>>();
+		final Task task = new Task(executor, new Runnable() {
+			@Override public void run() {
+				combined.set(Task.combineFutures(Arrays.<ListenableFuture<String>>asList(
+						Futures.immediateFuture("done"), cancelled)));
+			}});
+		task.schedule().join(5000);
+
+		assertTrue(task.isComplete());
+		assertFalse(task.isSuccess());
+		assertTrue(combined.get().isDone());
+	}
+
+	@Test
+	public void testCancelPendingFuture() throws InterruptedException {
+		final SettableFuture<String> future = SettableFuture.create();
+		final CountDownLatch forked = new CountDownLatch(1);
+		final Task task = new Task(executor, new Runnable() {
+			@Override public void run() {
+				Task.fork(future, counter);
+				forked.countDown();
+			}});
+		task.schedule();
+		assertTrue(forked.await(5, TimeUnit.SECONDS));
+
+		assertTrue(task.cancel());
+		task.join(5000);
+
+		assertTrue(task.isComplete());
+		assertFalse(future.isCancelled());
+		future.set("late");
+		assertEquals(0, runs.get());
+	}
+
+	@Test
+	public void testCancelSkipsQueuedForks() throws InterruptedException {
+		final ExecutorService single = Executors.newSingleThreadExecutor();
+		try {
+			final AtomicReference<Task> self = new AtomicReference<Task>();
+			final Task task = new Task(single, new Runnable() {
+				@Override public void run() {
+					Task.fork(new Runnable() {
+						@Override public void run() {
+							self.get().cancel();
+						}});
+					for (int i = 0; i < 100; ++i) {
+						Task.fork(counter);
+					}
+				}});
+			self.set(task);
+			task.schedule().join();
+
+			assertTrue(task.isCancelled());
+			assertEquals(0, runs.get());
+		} finally {
+			single.shutdown();
+		}
+	}
+
+	@Test
+	public void testCancelCompletedTask() throws InterruptedException {
+		final Task task = new Task(executor, counter).schedule();
+		task.join();
+		assertFalse(task.cancel());
+		assertFalse(task.isCancelled());
+		assertTrue(task.isSuccess());
+	}
+
+	@Test
+	public void testCancelGroupTask() throws InterruptedException {
+		final CountDownLatch release = new CountDownLatch(1);
+		final Task running = new Task(executor, new Runnable() {
+			@Override public void run() {
+				Uninterruptibles.awaitUninterruptibly(release);
+			}});
+		final Task waiting = new Task(executor, counter);
+		waiting.waitFor(running);
+		final GroupTask group = new GroupTask(executor, Arrays.asList(running, waiting));
+		group.schedule();
+
+		assertTrue(group.cancel());
+		release.countDown();
+		group.join();
+
+		assertTrue(waiting.isCancelled());
+		assertFalse(waiting.isSuccess());
+		assertEquals(0, runs.get());
+	}
+}
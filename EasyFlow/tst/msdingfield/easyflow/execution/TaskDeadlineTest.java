@@ -0,0 +1,92 @@
+package msdingfield.easyflow.execution;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import msdingfield.easyflow.execution.Task.DeadlineExceededException;
+import msdingfield.easyflow.testsupport.TestExecutor;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.SettableFuture;
+
+public class TaskDeadlineTest {
+
+	@Rule
+	public TestExecutor executor = new TestExecutor();
+
+	private final AtomicInteger runs = new AtomicInteger();
+
+	private final Runnable counter = new Runnable() {
+		@Override public void run() {
+			runs.incrementAndGet();
+		}
+	};
+
+	@Test
+	public void testExpiredDeadline() throws InterruptedException {
+		final Task task = new Task(executor, counter).setDeadline(Deadline.after(0, TimeUnit.MILLISECONDS));
+		task.schedule().join();
+
+		assertTrue(task.isComplete());
+		assertFalse(task.isSuccess());
+		assertFalse(task.isCancelled());
+		assertTrue(Iterables.getOnlyElement(task.getErrors()) instanceof DeadlineExceededException);
+		assertEquals(0, runs.get());
+	}
+
+	@Test
+	public void testWatchDeadline() throws InterruptedException {
+		final SettableFuture<String> future = SettableFuture.create();
+		final Task task = new Task(executor, new Runnable() {
+			@Override public void run() {
+				Task.fork(future, counter);
+			}});
+		task.setDeadline(Deadline.after(50, TimeUnit.MILLISECONDS)).watchDeadline();
+		task.schedule().join(5000);
+
+		assertTrue(task.isComplete());
+		assertFalse(future.isCancelled());
+		assertTrue(Iterables.getOnlyElement(task.getErrors()) instanceof DeadlineExceededException);
+		assertEquals(0, runs.get());
+	}
+
+	@Test
+	public void testDeadlineMet() throws InterruptedException {
+		final Task task = new Task(executor, counter).setDeadline(Deadline.after(1, TimeUnit.MINUTES)).watchDeadline();
+		task.schedule().join();
+
+		assertTrue(task.isSuccess());
+		assertEquals(1, runs.get());
+	}
+
+	@Test
+	public void testCurrentDeadline() throws InterruptedException {
+		final Deadline deadline = Deadline.after(1, TimeUnit.MINUTES);
+		final AtomicReference<Deadline> seen = new AtomicReference<Deadline>();
+		final Task task = new Task(executor, new Runnable() {
+			@Override public void run() {
+				seen.set(Task.currentDeadline());
+			}});
+		task.setDeadline(deadline).schedule().join();
+
+		assertSame(deadline, seen.get());
+		assertNull(Task.currentDeadline());
+		assertTrue(deadline.timeRemaining(TimeUnit.SECONDS) > 0);
+		assertFalse(deadline.isExpired());
+	}
+
+	@Test(expected=IllegalStateException.class)
+	public void testWatchWithoutDeadline() {
+		new Task(executor, counter).watchDeadline();
+	}
+}
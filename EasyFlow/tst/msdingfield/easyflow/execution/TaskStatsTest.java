@@ -0,0 +1,106 @@
+package msdingfield.easyflow.execution;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import msdingfield.easyflow.execution.TaskStats.Phase;
+import msdingfield.easyflow.testsupport.TestExecutor;
+import msdingfield.easyflow.testsupport.TimerFuture;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+
+public class TaskStatsTest {
+
+	private static final long SLEEP_MS = 20;
+
+	/** TimerFuture uses the millisecond clock so it may fire a little early. */
+	private static final long TIMER_SLACK_MS = 2;
+
+	@Rule
+	public TestExecutor executor = new TestExecutor();
+
+	private final Runnable noop = new Runnable() {
+		@Override public void run() {}
+	};
+
+	private final Runnable sleep = new Runnable() {
+		@Override public void run() {
+			Uninterruptibles.sleepUninterruptibly(SLEEP_MS, TimeUnit.MILLISECONDS);
+		}
+	};
+
+	@Test
+	public void testNotRecordedByDefault() throws InterruptedException {
+		final Task task = new Task(executor, noop).schedule();
+		task.join();
+		assertNull(task.getStats());
+	}
+
+	@Test(expected=IllegalStateException.class)
+	public void testRecordAfterSchedule() {
+		new Task(executor, sleep).schedule().recordStats();
+	}
+
+	@Test
+	public void testRecordsPhases() throws InterruptedException {
+		final Task predecessor = new Task(executor, sleep);
+		final Task task = new Task(executor, sleep).recordStats();
+		task.addInitializer(noop);
+		task.addFinalizer(noop);
+		task.waitFor(predecessor);
+		task.schedule();
+		predecessor.schedule();
+		task.join();
+
+		final TaskStats stats = task.getStats();
+		assertTrue(stats.getBlockedNanos() >= TimeUnit.MILLISECONDS.toNanos(SLEEP_MS));
+		long previous = stats.getUnblockedTime();
+		for (final Phase phase : Phase.values()) {
+			assertEquals(1, stats.getRunCount(phase));
+			assertTrue(stats.getPhaseStartTime(phase) >= previous);
+			assertTrue(stats.getPhaseDequeuedTime(phase) >= stats.getPhaseStartTime(phase));
+			assertTrue(stats.getPhaseEndTime(phase) >= stats.getPhaseDequeuedTime(phase));
+			previous = stats.getPhaseEndTime(phase);
+		}
+		assertTrue(stats.getCompletedTime() >= previous);
+		assertTrue(stats.getRunNanos(Phase.EXECUTING) >= TimeUnit.MILLISECONDS.toNanos(SLEEP_MS));
+		assertEquals(0, stats.getFutureWaitCount());
+		assertTrue(stats.getElapsedNanos() >= stats.getBlockedNanos() + stats.getRunNanos(Phase.EXECUTING));
+	}
+
+	@Test
+	public void testRecordsFutureWait() throws InterruptedException {
+		final Task task = new Task(executor).recordStats();
+		task.addWorker(new Runnable() {
+			@Override public void run() {
+				Task.fork(new TimerFuture<String>(SLEEP_MS, "done"), noop);
+			}});
+		task.schedule().join();
+
+		final TaskStats stats = task.getStats();
+		assertEquals(1, stats.getFutureWaitCount());
+		assertTrue(stats.getFutureWaitNanos() >= TimeUnit.MILLISECONDS.toNanos(SLEEP_MS - TIMER_SLACK_MS));
+		assertEquals(2, stats.getRunCount(Phase.EXECUTING));
+		assertTrue(stats.getPhaseNanos(Phase.EXECUTING) >= stats.getFutureWaitNanos());
+	}
+
+	@Test
+	public void testSummary() throws InterruptedException {
+		final TaskStatsSummary summary = new TaskStatsSummary();
+		for (int i = 0; i < 2; ++i) {
+			final Task task = new Task(executor, sleep).recordStats().schedule();
+			task.join();
+			summary.add(task.getStats());
+		}
+		assertEquals(2, summary.getCount());
+		assertTrue(summary.getRunNanos(Phase.EXECUTING) >= TimeUnit.MILLISECONDS.toNanos(2 * SLEEP_MS));
+		assertTrue(summary.getElapsedNanos() >= summary.getMaxElapsedNanos());
+		assertTrue(summary.getMaxElapsedNanos() >= TimeUnit.MILLISECONDS.toNanos(SLEEP_MS));
+	}
+}
@@ -6,7 +6,9 @@ import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import msdingfield.easyflow.execution.Task;
 
@@ -200,6 +202,100 @@ public class TaskTest {
 		assertEquals("ec", output.get(7));
 	}
 	
+	@Test
+	public void testWideFanIn() throws InterruptedException {
+		final Executor asyncExecutor = Executors.newFixedThreadPool(8);
+		final AtomicInteger counter = new AtomicInteger(0);
+		final Runnable increment = new Runnable() {
+			@Override public void run() {
+				counter.incrementAndGet();
+			}};
+
+		final List<Task> predecessors = Lists.newArrayList();
+		for (int i = 0; i < 1000; ++i) {
+			predecessors.add(new Task(asyncExecutor, increment));
+		}
+
+		final AtomicInteger seenBySink = new AtomicInteger(-1);
+		final Task sink = new Task(asyncExecutor, new Runnable() {
+			@Override public void run() {
+				seenBySink.set(counter.get());
+			}});
+		sink.waitFor(predecessors);
+		sink.schedule();
+		for (final Task predecessor : predecessors) {
+			predecessor.schedule();
+		}
+
+		sink.join(5000L);
+		assertTrue(sink.isSuccess());
+		assertEquals(1000, seenBySink.get());
+	}
+
+	@Test
+	public void testSynchronousPhasesRunInOneHop() throws InterruptedException {
+		final ExecutorService pool = Executors.newFixedThreadPool(2);
+		final AtomicInteger submissions = new AtomicInteger(0);
+		final Executor countingExecutor = new Executor() {
+			@Override public void execute(final Runnable command) {
+				submissions.incrementAndGet();
+				pool.execute(command);
+			}};
+
+		final List<String> output = Collections.synchronizedList(Lists.<String>newArrayList());
+		final Task phased = new Task(countingExecutor, new Sleeper("w", 0L, output));
+		phased.addInitializer(new Sleeper("i", 0L, output));
+		phased.addFinalizer(new Sleeper("f", 0L, output));
+		phased.schedule().join();
+		pool.shutdown();
+
+		assertTrue(phased.isSuccess());
+		assertEquals(Lists.newArrayList("bi", "ei", "bw", "ew", "bf", "ef"), output);
+		assertEquals(1, submissions.get());
+	}
+
+	@Test
+	public void testForkOnOtherExecutorReturnsToTaskExecutor() throws InterruptedException {
+		final ExecutorService taskPool = Executors.newSingleThreadExecutor();
+		final ExecutorService otherPool = Executors.newSingleThreadExecutor();
+		final List<String> threads = Collections.synchronizedList(Lists.<String>newArrayList());
+		final Runnable recordThread = new Runnable() {
+			@Override public void run() {
+				threads.add(Thread.currentThread().getName());
+			}};
+
+		final Task phased = new Task(taskPool, new Runnable() {
+			@Override public void run() {
+				Task.fork(otherPool, recordThread);
+			}});
+		phased.addFinalizer(recordThread);
+		phased.schedule().join(5000L);
+		taskPool.shutdown();
+		otherPool.shutdown();
+
+		assertTrue(phased.isSuccess());
+		assertEquals(2, threads.size());
+		assertFalse(threads.get(0).equals(threads.get(1)));
+	}
+
+	@Test
+	public void testJoinUnscheduledReturns() throws InterruptedException {
+		task.join();
+		assertFalse(task.isComplete());
+	}
+
+	@Test
+	public void testAddListenerAnyTime() throws InterruptedException {
+		context.checking(new Expectations(){{
+			oneOf(runnableA).run();
+			exactly(2).of(runnableB).run();
+		}});
+		task.addListener(runnableB, executor);
+		task.schedule();
+		task.join();
+		task.addListener(runnableB, executor);
+	}
+
 	private static class Sleeper implements Runnable {
 		private final String name;
 		private final long sleepMs;
@@ -1,5 +1,8 @@
 package msdingfield.easyflow.graph;
 
+import static org.hamcrest.CoreMatchers.anyOf;
+import static org.hamcrest.CoreMatchers.containsString;
+
 import java.util.Set;
 
 import msdingfield.easyflow.graph.support.CyclicDependencyException;
@@ -33,5 +36,19 @@ public class CyclicalDependenciesGraphTest {
 		nodes.add(new TestNode("b").withInput("e1").withOutput("e2", "output"));
 		new Graph<TestNode>(nodes);
 	}
+
+	@Test
+	public void testCycleIsNamed() {
+		final Set<TestNode> nodes = Sets.newHashSet();
+		nodes.add(new TestNode("a").withInput("e3").withOutput("e1"));
+		nodes.add(new TestNode("b").withInput("e1").withOutput("e2"));
+		nodes.add(new TestNode("c").withInput("e2").withOutput("e3"));
+		nodes.add(new TestNode("d").withInput("e3").withOutput("e4"));
+		exception.expectMessage(anyOf(
+				containsString("a -> b -> c -> a"),
+				containsString("b -> c -> a -> b"),
+				containsString("c -> a -> b -> c")));
+		new Graph<TestNode>(nodes);
+	}
 	
 }
@@ -0,0 +1,50 @@
+package msdingfield.easyflow.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.google.common.collect.Sets;
+
+public class DeepGraphTest {
+
+	private static final int LENGTH = 100000;
+
+	@Test(timeout=10000)
+	public void testLongChain() {
+		final Graph<TestNode> graph = longChain();
+
+		final List<TestNode> order = graph.getTopologicalOrder();
+		assertEquals(LENGTH, order.size());
+		for (int i = 0; i < LENGTH; ++i) {
+			assertEquals("n" + i, order.get(i).getName());
+		}
+		assertTrue(graph.getDirectPredecessors(new TestNode("n5")).contains(new TestNode("n4")));
+		assertTrue(graph.getDirectSuccessors(new TestNode("n5")).contains(new TestNode("n6")));
+	}
+
+	/** Selecting producers must not build the n^2 transitive closure. */
+	@Test(timeout=10000)
+	public void testSubGraphOfLongChain() {
+		final Graph<TestNode> graph = longChain();
+		assertEquals(11, graph.getTransitiveProducerSet("e10").size());
+
+		final Set<String> outputs = Collections.singleton("e" + (LENGTH - 1));
+		assertEquals(LENGTH, graph.getSubGraphForOutputs(outputs).getAllNodes().size());
+		assertEquals(LENGTH, graph.getSubGraphForOutputs(outputs, Collections.<String>emptySet()).getAllNodes().size());
+	}
+
+	private static Graph<TestNode> longChain() {
+		final Set<TestNode> nodes = Sets.newHashSet();
+		nodes.add(new TestNode("n0").withOutput("e0"));
+		for (int i = 1; i < LENGTH; ++i) {
+			nodes.add(new TestNode("n" + i).withInput("e" + (i - 1)).withOutput("e" + i));
+		}
+		return new Graph<TestNode>(nodes);
+	}
+}
@@ -1,6 +1,7 @@
 package msdingfield.easyflow.graph;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Collection;
@@ -48,6 +49,25 @@ public class DiamondGraphTest extends GraphTestBase {
 		assertTrue(graph.getDirectPredecessors(new TestNode("c")).equals(Sets.newHashSet(new TestNode("b1"), new TestNode("b2"))));
 	}
 
+	@Test
+	public void testTransitivePredecessors() {
+		assertEquals(Sets.newHashSet(new TestNode("a"), new TestNode("b1"), new TestNode("b2")), graph.getTransitivePredecessors(new TestNode("c")));
+		assertEquals(Sets.newHashSet(new TestNode("a")), graph.getTransitivePredecessors(new TestNode("b2")));
+	}
+
+	@Test
+	public void testTransitiveSuccessors() {
+		assertEquals(Sets.newHashSet(new TestNode("b1"), new TestNode("b2"), new TestNode("c")), graph.getTransitiveSuccessors(new TestNode("a")));
+		assertTrue(graph.getTransitiveSuccessors(new TestNode("c")).isEmpty());
+	}
+
+	@Test
+	public void testIsTransitivePredecessor() {
+		assertTrue(graph.isTransitivePredecessor(new TestNode("a"), new TestNode("c")));
+		assertFalse(graph.isTransitivePredecessor(new TestNode("c"), new TestNode("a")));
+		assertFalse(graph.isTransitivePredecessor(new TestNode("b1"), new TestNode("b2")));
+	}
+
 	@Test
 	public void testSubGraph() throws InterruptedException, ExecutionException {
 		final Graph<TestNode> partial = graph.getSubGraphForOutputs(Sets.newHashSet("b1-out", "a-out"));
@@ -0,0 +1,149 @@
+package msdingfield.easyflow.graph;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import msdingfield.easyflow.execution.Deadline;
+import msdingfield.easyflow.execution.Task;
+
+import org.junit.Test;
+
+import com.google.common.base.Predicates;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+public class ExecutionPlanTest extends GraphTestBase {
+
+	private final Executor executor = new Executor() {
+		@Override public void execute(final Runnable command) {
+			command.run();
+		}};
+
+	@Override
+	Set<TestNode> nodeSet() {
+		final TestNode a = new TestNode("a").withOutput("a-out");
+		final TestNode b1 = new TestNode("b1").withInput("a-out").withOutput("b1-out");
+		final TestNode b2 = new TestNode("b2").withInput("a-out").withOutput("b2-out");
+		final TestNode c = new TestNode("c").withInput("b1-out", "b2-out");
+		return Sets.newHashSet(a, b1, b2, c);
+	}
+
+	@Test
+	public void testTopologicalIds() {
+		final ExecutionPlan<TestNode> plan = ExecutionPlan.compile(graph);
+		final List<TestNode> nodes = plan.getNodes();
+		assertEquals(4, plan.size());
+		assertEquals(new TestNode("a"), nodes.get(0));
+		assertEquals(new TestNode("c"), nodes.get(3));
+
+		assertEquals(0, plan.getPredecessorCount(0));
+		assertEquals(1, plan.getPredecessorCount(1));
+		assertEquals(1, plan.getPredecessorCount(2));
+		assertEquals(2, plan.getPredecessorCount(3));
+
+		assertArrayEquals(new int[] {1, 2}, plan.getSuccessors(0));
+		assertArrayEquals(new int[] {3}, plan.getSuccessors(1));
+		assertArrayEquals(new int[] {3}, plan.getSuccessors(2));
+		assertArrayEquals(new int[] {}, plan.getSuccessors(3));
+	}
+
+	@Test
+	public void testRunsInDependencyOrder() throws InterruptedException {
+		final List<String> order = Collections.synchronizedList(Lists.<String>newArrayList());
+		final ExecutionPlan<TestNode> plan = ExecutionPlan.compile(graph);
+
+		// Build twice from the same plan to show it is reusable.
+		for (int i = 0; i < 2; ++i) {
+			order.clear();
+			final Task task = plan.newTask(recordingFactory(order, null), executor);
+			task.schedule().join();
+
+			assertTrue(task.isSuccess());
+			assertEquals(4, order.size());
+			assertEquals("a", order.get(0));
+			assertEquals("c", order.get(3));
+		}
+	}
+
+	@Test
+	public void testFailurePropagates() throws InterruptedException {
+		final List<String> order = Collections.synchronizedList(Lists.<String>newArrayList());
+		final ExecutionPlan<TestNode> plan = ExecutionPlan.compile(graph);
+		final Task task = plan.newTask(recordingFactory(order, "b1"), executor);
+		task.schedule().join();
+
+		assertTrue(task.isComplete());
+		assertFalse(task.isSuccess());
+		assertFalse(order.contains("c"));
+	}
+
+	@Test
+	public void testEmptyGraph() throws InterruptedException {
+		final ExecutionPlan<TestNode> plan = ExecutionPlan.compile(new Graph<TestNode>(Sets.<TestNode>newHashSet()));
+		final Task task = plan.newTask(recordingFactory(null, null), executor);
+		task.schedule().join();
+		assertTrue(task.isSuccess());
+	}
+
+	@Test(timeout=10000)
+	public void testDeadlineStopsNodeTasks() throws InterruptedException {
+		final ExecutorService pool = Executors.newCachedThreadPool();
+		try {
+			final CountDownLatch release = new CountDownLatch(1);
+			final List<Task> created = Collections.synchronizedList(Lists.<Task>newArrayList());
+			final TaskFactory<TestNode> factory = new TaskFactory<TestNode>() {
+				@Override
+				public Task create(final Executor executor, final TestNode node) {
+					final Task task = new Task(executor, new Runnable() {
+						@Override public void run() {
+							Uninterruptibles.awaitUninterruptibly(release);
+						}});
+					created.add(task);
+					return task;
+				}};
+			final Task task = ExecutionPlan.compile(graph).newTask(factory, pool, Deadline.after(50, TimeUnit.MILLISECONDS));
+			task.schedule();
+			Thread.sleep(150);
+			release.countDown();
+			task.join();
+
+			assertTrue(Iterables.getFirst(task.getErrors(), null) instanceof Task.DeadlineExceededException);
+			assertEquals(4, created.size());
+			for (final Task node : created) {
+				assertFalse(node.isCancelled());
+				assertTrue(Iterables.any(node.getErrors(), Predicates.instanceOf(Task.DeadlineExceededException.class)));
+				assertFalse(Iterables.any(node.getErrors(), Predicates.instanceOf(CancellationException.class)));
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private TaskFactory<TestNode> recordingFactory(final List<String> order, final String failing) {
+		return new TaskFactory<TestNode>() {
+			@Override
+			public Task create(final Executor executor, final TestNode node) {
+				return new Task(executor, new Runnable() {
+					@Override public void run() {
+						order.add(node.getName());
+						if (node.getName().equals(failing)) {
+							throw new RuntimeException("Expected failure.");
+						}
+					}});
+			}};
+	}
+}
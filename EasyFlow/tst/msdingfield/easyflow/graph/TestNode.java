@@ -42,6 +42,11 @@ public class TestNode implements GraphNode {
 		return name;
 	}
 
+	@Override
+	public String toString() {
+		return name;
+	}
+
 	@Override
 	public int hashCode() {
 		final int prime = 31;
@@ -161,6 +161,20 @@ public class TwoNodeGraphTest extends GraphTestBase {
 		assertTrue(subgraph.getAllNodes().contains(new TestNode("b")));
 	}
 
+	@Test
+	public void testSubGraphDropsNodeWithMissingInput() {
+		final Graph<TestNode> subgraph = graph.getSubGraphForOutputs(Sets.<String>newHashSet("aout", "bout"), Sets.<String>newHashSet());
+		assertEquals(1, subgraph.getAllNodes().size());
+		assertTrue(subgraph.getAllNodes().contains(new TestNode("a")));
+	}
+
+	@Test
+	public void testSubGraphKeepsNodeWithProvidedInput() {
+		final Graph<TestNode> subgraph = graph.getSubGraphForOutputs(Sets.<String>newHashSet("bout"), Sets.<String>newHashSet("bin"));
+		assertEquals(isConnectedGraph() ? 2 : 1, subgraph.getAllNodes().size());
+		assertTrue(subgraph.getAllNodes().contains(new TestNode("b")));
+	}
+
 	private boolean isConnectedGraph() {
 		final Set<String> connections = Sets.intersection(nodeA.getOutputs(), nodeB.getInputs());
 		return connections.size() > 0;
@@ -0,0 +1,220 @@
+package msdingfield.easyflow.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Processor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.TypeElement;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import msdingfield.easyflow.execution.Task;
+import msdingfield.easyflow.reflect.ClassOperation;
+import msdingfield.easyflow.reflect.ClassOperationTaskFactory;
+import msdingfield.easyflow.reflect.Context;
+import msdingfield.easyflow.reflect.GeneratedOperationInputPort;
+import msdingfield.easyflow.reflect.OperationInputPort;
+import msdingfield.easyflow.reflect.RegistryClassOperationBuilder;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.MoreExecutors;
+
+public class ActivityProcessorTest {
+
+	private File dir;
+
+	@Before
+	public void setup() {
+		dir = Files.createTempDir();
+	}
+
+	@After
+	public void teardown() throws IOException {
+		delete(dir);
+	}
+
+	@Test
+	public void testGeneratesRegistry() throws Exception {
+		final boolean compiled = compile("gen/Doubler.java",
+				"package gen;",
+				"import msdingfield.easyflow.annotations.*;",
+				"@Activity(graph = \"processor test\")",
+				"public class Doubler {",
+				"  @Input public int value;",
+				"  @Output(connectedEdgeName = \"doubled\") public int result;",
+				"  @Operation public void run() { result = 2 * value; }",
+				"}");
+		assertTrue(compiled);
+
+		final ClassLoader loader = new URLClassLoader(new URL[] {dir.toURI().toURL()}, getClass().getClassLoader());
+		final List<ClassOperation> ops = RegistryClassOperationBuilder.loadOperationsFromRegistry(loader, "gen", "processor test");
+		assertNotNull(ops);
+		assertEquals(1, ops.size());
+
+		final ClassOperation op = ops.get(0);
+		assertEquals("gen.Doubler", op.getOperationClass().getName());
+		final OperationInputPort input = op.getInputs().iterator().next();
+		assertTrue(input instanceof GeneratedOperationInputPort);
+		assertEquals(int.class, input.getType());
+		assertEquals("doubled", op.getOutputs().iterator().next().getConnectedEdgeName());
+
+		final Context context = new Context(ImmutableMap.<String, Object>of("value", 21));
+		final Task task = ClassOperationTaskFactory.create(MoreExecutors.sameThreadExecutor(), op, context);
+		task.schedule().join();
+		assertTrue(task.isSuccess());
+		assertEquals(42, context.getEdgeValue("doubled"));
+
+		assertNull(RegistryClassOperationBuilder.loadOperationsFromRegistry(loader, "other", "processor test"));
+		assertNull(RegistryClassOperationBuilder.loadOperationsFromRegistry(loader, "gen", "unknown"));
+	}
+
+	@Test
+	public void testRegistersActivitiesOfLaterRounds() throws Exception {
+		final boolean compiled = compile(Arrays.asList(new ActivityProcessor(), new TriplerGenerator()), "gen/Doubler.java",
+				"package gen;",
+				"import msdingfield.easyflow.annotations.*;",
+				"@Activity(graph = \"processor test\")",
+				"public class Doubler {",
+				"  @Input public int value;",
+				"  @Output(connectedEdgeName = \"doubled\") public int result;",
+				"  @Operation public void run() { result = 2 * value; }",
+				"}");
+		assertTrue(compiled);
+
+		final ClassLoader loader = new URLClassLoader(new URL[] {dir.toURI().toURL()}, getClass().getClassLoader());
+		final List<ClassOperation> ops = RegistryClassOperationBuilder.loadOperationsFromRegistry(loader, "gen", "processor test");
+		assertNotNull(ops);
+		final Set<String> names = Sets.newHashSet();
+		for (final ClassOperation op : ops) {
+			names.add(op.getOperationClass().getName());
+		}
+		assertEquals(ImmutableSet.of("gen.Doubler", "gen.Tripler"), names);
+	}
+
+	@Test
+	public void testRejectsUnbindableActivity() throws Exception {
+		final boolean compiled = compile("gen/NoDefaultConstructor.java",
+				"package gen;",
+				"import msdingfield.easyflow.annotations.*;",
+				"@Activity(graph = \"processor test\")",
+				"public class NoDefaultConstructor {",
+				"  public NoDefaultConstructor(int x) {}",
+				"  @Operation public void run() {}",
+				"}");
+		assertFalse(compiled);
+	}
+
+	@Test
+	public void testRegistryClassName() {
+		assertEquals("EasyFlowGraph_equities", ActivityProcessor.registryClassName("equities"));
+		assertTrue(ActivityProcessor.registryClassName("processor test").startsWith("EasyFlowGraph_processor_test_"));
+	}
+
+	private boolean compile(final String path, final String ... lines) throws IOException {
+		return compile(Arrays.asList(new ActivityProcessor()), path, lines);
+	}
+
+	private boolean compile(final List<? extends Processor> processors, final String path, final String ... lines) throws IOException {
+		final File source = new File(dir, path);
+		source.getParentFile().mkdirs();
+		Files.write(Joiner.on('\n').join(lines), source, Charsets.UTF_8);
+
+		final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+		final StandardJavaFileManager files = compiler.getStandardFileManager(diagnostics, null, Charsets.UTF_8);
+		try {
+			final List<String> options = Lists.newArrayList("-d", dir.getPath(), "-classpath", classPath());
+			final JavaCompiler.CompilationTask task = compiler.getTask(null, files, diagnostics, options, null, files.getJavaFileObjects(source));
+			task.setProcessors(processors);
+			return task.call();
+		} finally {
+			files.close();
+		}
+	}
+
+	/** Locations of EasyFlow and Guava, which may not be on java.class.path. */
+	private static String classPath() {
+		final List<String> entries = Lists.newArrayList();
+		for (final Class<?> type : Arrays.asList(ClassOperation.class, Lists.class)) {
+			entries.add(new File(type.getProtectionDomain().getCodeSource().getLocation().getPath()).getPath());
+		}
+		return Joiner.on(File.pathSeparator).join(entries);
+	}
+
+	/** Generates an activity of the same graph and package in the second round. */
+	@SupportedAnnotationTypes("*")
+	public static class TriplerGenerator extends AbstractProcessor {
+		private boolean generated = false;
+
+		@Override
+		public SourceVersion getSupportedSourceVersion() {
+			return SourceVersion.latestSupported();
+		}
+
+		@Override
+		public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+			if (generated || roundEnv.processingOver()) {
+				return false;
+			}
+			generated = true;
+			try {
+				final Writer writer = processingEnv.getFiler().createSourceFile("gen.Tripler").openWriter();
+				try {
+					writer.write(Joiner.on('\n').join(
+							"package gen;",
+							"import msdingfield.easyflow.annotations.*;",
+							"@Activity(graph = \"processor test\")",
+							"public class Tripler {",
+							"  @Input public int value;",
+							"  @Output(connectedEdgeName = \"tripled\") public int result;",
+							"  @Operation public void run() { result = 3 * value; }",
+							"}"));
+				} finally {
+					writer.close();
+				}
+			} catch (final IOException e) {
+				throw new IllegalStateException(e);
+			}
+			return false;
+		}
+	}
+
+	private static void delete(final File file) {
+		final File[] children = file.listFiles();
+		if (children != null) {
+			for (final File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
@@ -0,0 +1,248 @@
+package msdingfield.easyflow.reflect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import msdingfield.easyflow.EasyFlow;
+import msdingfield.easyflow.FlowGraph;
+import msdingfield.easyflow.annotations.Activity;
+import msdingfield.easyflow.annotations.Batch;
+import msdingfield.easyflow.annotations.ForkOn;
+import msdingfield.easyflow.annotations.Input;
+import msdingfield.easyflow.annotations.Operation;
+import msdingfield.easyflow.annotations.Output;
+import msdingfield.easyflow.execution.Task;
+import msdingfield.easyflow.reflect.support.InvalidOperationBindingException;
+import msdingfield.easyflow.testsupport.TestExecutor;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+public class BatchTest {
+
+	@Rule
+	public TestExecutor executor = new TestExecutor();
+
+	private static final List<Integer> batchSizes = Collections.synchronizedList(Lists.<Integer>newArrayList());
+
+	@Before
+	public void setUp() {
+		batchSizes.clear();
+	}
+
+	public static class ListBatchOperation {
+
+		@Batch(maxSize=4)
+		@ForkOn
+		@Input(connectedEdgeName="numbers")
+		public List<Integer> numbers;
+
+		@Input
+		public int offset;
+
+		@Output
+		public List<Integer> sum;
+
+		@Operation
+		public void enact() {
+			batchSizes.add(numbers.size());
+			sum = Lists.newArrayList();
+			for (final int number : numbers) {
+				sum.add(number + offset);
+			}
+		}
+	}
+
+	public static class MapBatchOperation {
+
+		@Batch
+		@ForkOn
+		@Input(connectedEdgeName="numbers")
+		public List<Integer> numbers;
+
+		@Output
+		public Map<Integer, String> text;
+
+		@Operation
+		public void enact() {
+			batchSizes.add(numbers.size());
+			text = Maps.newHashMap();
+			for (final int number : numbers) {
+				text.put(number, "#" + number);
+			}
+		}
+	}
+
+	public static class FutureBatchOperation {
+
+		@Batch(maxSize=3)
+		@ForkOn
+		@Input(connectedEdgeName="numbers")
+		public List<Integer> numbers;
+
+		@Output
+		public ListenableFuture<List<Integer>> square;
+
+		@Operation
+		public void enact() {
+			final List<Integer> squares = Lists.newArrayList();
+			for (final int number : numbers) {
+				squares.add(number * number);
+			}
+			square = Futures.immediateFuture(squares);
+		}
+	}
+
+	public static class WrongSizeBatchOperation {
+
+		@Batch
+		@ForkOn
+		@Input(connectedEdgeName="numbers")
+		public List<Integer> numbers;
+
+		@Output
+		public List<Integer> sum;
+
+		@Operation
+		public void enact() {
+			sum = Lists.newArrayList(1);
+		}
+	}
+
+	public static class BatchWithoutForkOperation {
+
+		@Batch
+		@Input(connectedEdgeName="numbers")
+		public List<Integer> numbers;
+
+		@Operation
+		public void enact() {
+		}
+	}
+
+	@Activity(graph="batchTest")
+	public static class GeneratedBatchOperation {
+
+		@Batch(maxSize=2)
+		@ForkOn
+		@Input(connectedEdgeName="numbers")
+		public List<Integer> numbers;
+
+		@Output
+		public List<Integer> doubled;
+
+		@Operation
+		public void enact() {
+			batchSizes.add(numbers.size());
+			doubled = Lists.newArrayList();
+			for (final int number : numbers) {
+				doubled.add(number * 2);
+			}
+		}
+	}
+
+	@Test
+	public void testListResults() throws InterruptedException {
+		final Context context = run(ListBatchOperation.class, 10);
+		assertEquals(sums(10), context.getEdgeValue("sum"));
+		assertEquals(Lists.newArrayList(4, 4, 2), sorted(batchSizes));
+	}
+
+	@Test
+	public void testMapResults() throws InterruptedException {
+		final Context context = run(MapBatchOperation.class, 3);
+		assertEquals(Lists.newArrayList("#0", "#1", "#2"), context.getEdgeValue("text"));
+		assertEquals(Lists.newArrayList(3), batchSizes);
+	}
+
+	@Test
+	public void testFutureResults() throws Exception {
+		final Context context = run(FutureBatchOperation.class, 5);
+		final List<?> squares = (List<?>) context.getEdgeValue("square");
+		assertEquals(5, squares.size());
+		for (int i = 0; i < squares.size(); ++i) {
+			assertEquals(i * i, ((ListenableFuture<?>) squares.get(i)).get());
+		}
+	}
+
+	@Test
+	public void testEmptyCollection() throws InterruptedException {
+		final Context context = run(ListBatchOperation.class, 0);
+		assertEquals(Collections.emptyList(), context.getEdgeValue("sum"));
+		assertTrue(batchSizes.isEmpty());
+	}
+
+	@Test
+	public void testWrongResultCount() throws InterruptedException {
+		final ClassOperation op = AnnotationClassOperationBuilder.fromClass(WrongSizeBatchOperation.class);
+		final Task task = ClassOperationTaskFactory.create(executor, op, newContext(3));
+		task.schedule();
+		task.join();
+		assertTrue(task.isComplete());
+		assertFalse(task.isSuccess());
+	}
+
+	@Test(expected=InvalidOperationBindingException.class)
+	public void testBatchRequiresForkOn() {
+		AnnotationClassOperationBuilder.fromClass(BatchWithoutForkOperation.class);
+	}
+
+	@Test
+	public void testGeneratedRegistry() throws InterruptedException {
+		final FlowGraph graph = EasyFlow.loadFlowGraph("msdingfield.easyflow.reflect", "batchTest");
+		final Map<String, Object> outputs = graph.evaluate(ImmutableMap.<String, Object>of("numbers", Lists.newArrayList(1, 2, 3))).getOutputs();
+		assertEquals(Lists.newArrayList(2, 4, 6), outputs.get("doubled"));
+		assertEquals(Lists.newArrayList(2, 1), sorted(batchSizes));
+	}
+
+	private Context run(final Class<?> cls, final int count) throws InterruptedException {
+		final ClassOperation op = AnnotationClassOperationBuilder.fromClass(cls);
+		final Context context = newContext(count);
+		final Task task = ClassOperationTaskFactory.create(executor, op, context);
+		task.schedule();
+		task.join();
+		return context;
+	}
+
+	private static Context newContext(final int count) {
+		final List<Integer> numbers = Lists.newArrayList();
+		for (int i = 0; i < count; ++i) {
+			numbers.add(i);
+		}
+		final Context context = new Context();
+		context.setEdgeValue("numbers", numbers);
+		context.setEdgeValue("offset", 100);
+		return context;
+	}
+
+	private static List<Integer> sums(final int count) {
+		final List<Integer> sums = Lists.newArrayList();
+		for (int i = 0; i < count; ++i) {
+			sums.add(i + 100);
+		}
+		return sums;
+	}
+
+	/** Get the values from largest to smallest. */
+	private static List<Integer> sorted(final List<Integer> values) {
+		final List<Integer> sorted;
+		synchronized (values) {
+			sorted = Lists.newArrayList(values);
+		}
+		Collections.sort(sorted);
+		Collections.reverse(sorted);
+		return sorted;
+	}
+}
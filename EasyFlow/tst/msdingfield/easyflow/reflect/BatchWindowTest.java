@@ -0,0 +1,171 @@
+package msdingfield.easyflow.reflect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import msdingfield.easyflow.annotations.Batch;
+import msdingfield.easyflow.annotations.ForkOn;
+import msdingfield.easyflow.annotations.Input;
+import msdingfield.easyflow.annotations.Operation;
+import msdingfield.easyflow.annotations.Output;
+import msdingfield.easyflow.execution.Task;
+import msdingfield.easyflow.testsupport.TestExecutor;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+public class BatchWindowTest {
+
+	@Rule
+	public TestExecutor executor = new TestExecutor();
+
+	private static final List<Set<Integer>> batches = Collections.synchronizedList(Lists.<Set<Integer>>newArrayList());
+
+	@Before
+	public void setUp() {
+		batches.clear();
+	}
+
+	public static class QuoteOperation {
+
+		@Batch(windowMillis=200)
+		@ForkOn
+		@Input(connectedEdgeName="symbols")
+		public List<Integer> symbols;
+
+		@Input
+		public String market;
+
+		@Output
+		public Map<Integer, String> quote;
+
+		@Operation
+		public void enact() {
+			batches.add(ImmutableSet.copyOf(symbols));
+			quote = Maps.newHashMap();
+			for (final int symbol : symbols) {
+				quote.put(symbol, market + symbol);
+			}
+		}
+	}
+
+	public static class FullWindowOperation {
+
+		@Batch(windowMillis=60000, maxSize=3)
+		@ForkOn
+		@Input(connectedEdgeName="symbols")
+		public List<Integer> symbols;
+
+		@Input
+		public String market;
+
+		@Output
+		public List<Integer> doubled;
+
+		@Operation
+		public void enact() {
+			batches.add(ImmutableSet.copyOf(symbols));
+			doubled = Lists.newArrayList();
+			for (final int symbol : symbols) {
+				doubled.add(symbol * 2);
+			}
+		}
+	}
+
+	public static class FailingOperation {
+
+		@Batch(windowMillis=100)
+		@ForkOn
+		@Input(connectedEdgeName="symbols")
+		public List<Integer> symbols;
+
+		@Input
+		public String market;
+
+		@Output
+		public List<Integer> doubled;
+
+		@Operation
+		public void enact() {
+			throw new IllegalStateException("Service unavailable.");
+		}
+	}
+
+	@Test
+	public void testMergesConcurrentEvaluations() throws InterruptedException {
+		final ClassOperation op = AnnotationClassOperationBuilder.fromClass(QuoteOperation.class);
+		final Context first = newContext("X", 1, 2, 3);
+		final Context second = newContext("X", 3, 4, 3);
+		final Task one = schedule(op, first);
+		final Task two = schedule(op, second);
+		one.join();
+		two.join();
+
+		assertEquals(Lists.newArrayList("X1", "X2", "X3"), first.getEdgeValue("quote"));
+		assertEquals(Lists.newArrayList("X3", "X4", "X3"), second.getEdgeValue("quote"));
+		assertEquals(1, batches.size());
+		assertEquals(ImmutableSet.of(1, 2, 3, 4), batches.get(0));
+	}
+
+	@Test
+	public void testSeparatesOtherInputs() throws InterruptedException {
+		final ClassOperation op = AnnotationClassOperationBuilder.fromClass(QuoteOperation.class);
+		final Context first = newContext("X", 1, 2);
+		final Context second = newContext("Y", 1, 2);
+		final Task one = schedule(op, first);
+		final Task two = schedule(op, second);
+		one.join();
+		two.join();
+
+		assertEquals(Lists.newArrayList("X1", "X2"), first.getEdgeValue("quote"));
+		assertEquals(Lists.newArrayList("Y1", "Y2"), second.getEdgeValue("quote"));
+		assertEquals(2, batches.size());
+	}
+
+	@Test(timeout=10000)
+	public void testClosesFullWindow() throws InterruptedException {
+		final ClassOperation op = AnnotationClassOperationBuilder.fromClass(FullWindowOperation.class);
+		final Context context = newContext("X", 1, 2, 3, 4, 5, 6);
+		schedule(op, context).join();
+
+		assertEquals(Lists.newArrayList(2, 4, 6, 8, 10, 12), context.getEdgeValue("doubled"));
+		assertEquals(ImmutableSet.<Set<Integer>>of(ImmutableSet.of(1, 2, 3), ImmutableSet.of(4, 5, 6)), Sets.newHashSet(batches));
+	}
+
+	@Test
+	public void testFailsEveryEvaluation() throws InterruptedException {
+		final ClassOperation op = AnnotationClassOperationBuilder.fromClass(FailingOperation.class);
+		final Task one = schedule(op, newContext("X", 1));
+		final Task two = schedule(op, newContext("X", 2));
+		one.join();
+		two.join();
+		assertTrue(one.isComplete());
+		assertFalse(one.isSuccess());
+		assertFalse(two.isSuccess());
+	}
+
+	private Task schedule(final ClassOperation op, final Context context) {
+		final Task task = ClassOperationTaskFactory.create(executor, op, context);
+		task.schedule();
+		return task;
+	}
+
+	private static Context newContext(final String market, final Integer... symbols) {
+		final Context context = new Context();
+		context.setEdgeValue("symbols", Lists.newArrayList(symbols));
+		context.setEdgeValue("market", market);
+		return context;
+	}
+}
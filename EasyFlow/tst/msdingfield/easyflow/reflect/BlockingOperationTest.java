@@ -0,0 +1,74 @@
+package msdingfield.easyflow.reflect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import msdingfield.easyflow.annotations.Input;
+import msdingfield.easyflow.annotations.Operation;
+import msdingfield.easyflow.annotations.Output;
+import msdingfield.easyflow.execution.DefaultExecutor;
+import msdingfield.easyflow.execution.Task;
+
+import org.junit.Test;
+
+public class BlockingOperationTest {
+
+	public static class BlockingOp {
+
+		@Input
+		public int input = 0;
+
+		@Output
+		public int output = 0;
+
+		@Output
+		public String threadName = null;
+
+		@Operation(blocking = true)
+		public void op() throws InterruptedException {
+			Thread.sleep(10L);
+			threadName = Thread.currentThread().getName();
+			output = 2 * input;
+		}
+	}
+
+	public static class NonBlockingOp {
+
+		@Output
+		public String threadName = null;
+
+		@Operation
+		public void op() {
+			threadName = Thread.currentThread().getName();
+		}
+	}
+
+	@Test
+	public void testBuilderReadsFlag() {
+		assertTrue(AnnotationClassOperationBuilder.fromClass(BlockingOp.class).isBlocking());
+		assertTrue(!AnnotationClassOperationBuilder.fromClass(NonBlockingOp.class).isBlocking());
+	}
+
+	@Test
+	public void testRunsOnBlockingPool() throws InterruptedException {
+		final Context context = new Context();
+		context.setEdgeValue("input", 4);
+		final Task task = ClassOperationTaskFactory.create(
+				DefaultExecutor.get(), AnnotationClassOperationBuilder.fromClass(BlockingOp.class), context);
+		task.schedule().join(5000L);
+
+		assertTrue(task.isSuccess());
+		assertEquals(8, context.getEdgeValue("output"));
+		assertTrue((String) context.getEdgeValue("threadName"), ((String) context.getEdgeValue("threadName")).startsWith("flow-blocking-"));
+	}
+
+	@Test
+	public void testNonBlockingRunsOnTaskPool() throws InterruptedException {
+		final Context context = new Context();
+		final Task task = ClassOperationTaskFactory.create(
+				DefaultExecutor.get(), AnnotationClassOperationBuilder.fromClass(NonBlockingOp.class), context);
+		task.schedule().join(5000L);
+
+		assertTrue(task.isSuccess());
+		assertTrue(((String) context.getEdgeValue("threadName")).startsWith("flow-pool-"));
+	}
+}
@@ -0,0 +1,197 @@
+package msdingfield.easyflow.reflect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import msdingfield.easyflow.annotations.ForkOn;
+import msdingfield.easyflow.annotations.Input;
+import msdingfield.easyflow.annotations.Operation;
+import msdingfield.easyflow.annotations.Output;
+import msdingfield.easyflow.execution.Task;
+import msdingfield.easyflow.testsupport.TestExecutor;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+public class BoundedForkTest {
+
+	@Rule
+	public TestExecutor executor = new TestExecutor();
+
+	private static final BlockingQueue<SettableFuture<Integer>> pending = new LinkedBlockingQueue<>();
+	private static final AtomicInteger started = new AtomicInteger();
+	private static final AtomicInteger resolved = new AtomicInteger();
+	private static final AtomicInteger maxInFlight = new AtomicInteger();
+
+	@Before
+	public void setUp() {
+		pending.clear();
+		started.set(0);
+		resolved.set(0);
+		maxInFlight.set(0);
+	}
+
+	/** Record the start of an item and get its output resolved with twice its value. */
+	private static ListenableFuture<Integer> start(final int number) {
+		final SettableFuture<Integer> future = SettableFuture.create();
+		final int inFlight = started.incrementAndGet() - resolved.get();
+		for (int max = maxInFlight.get(); inFlight > max && !maxInFlight.compareAndSet(max, inFlight); max = maxInFlight.get()) {
+		}
+		pending.add(future);
+		return Futures.transform(future, new Function<Integer, Integer>() {
+			@Override public Integer apply(final Integer ignored) {
+				return number * 2;
+			}});
+	}
+
+	public static class BoundedOperation {
+
+		@ForkOn(maxInFlight=2)
+		@Input(connectedEdgeName="numbers")
+		public int number;
+
+		@Output
+		public ListenableFuture<Integer> doubled;
+
+		@Operation
+		public void enact() {
+			doubled = start(number);
+		}
+	}
+
+	public static class BoundedChunkOperation {
+
+		@ForkOn(maxInFlight=4, chunkSize=2, reuseInstance=true)
+		@Input(connectedEdgeName="numbers")
+		public int number;
+
+		@Output
+		public ListenableFuture<Integer> doubled;
+
+		@Operation
+		public void enact() {
+			doubled = start(number);
+		}
+	}
+
+	public static class BoundedImmediateOperation {
+
+		@ForkOn(maxInFlight=1)
+		@Input(connectedEdgeName="numbers")
+		public int number;
+
+		@Output
+		public int doubled;
+
+		@Operation
+		public void enact() {
+			doubled = number * 2;
+		}
+	}
+
+	@Test
+	public void testAdmitsAsOutputsResolve() throws InterruptedException {
+		final Task task = schedule(BoundedOperation.class, 6);
+		assertEquals(2, awaitPending(2));
+
+		// Nothing more starts until an output resolves
+		Thread.sleep(50);
+		assertEquals(2, pending.size());
+		assertEquals(2, started.get());
+
+		resolveAll(6);
+		task.join();
+		assertTrue(maxInFlight.get() <= 2);
+		assertEquals(6, started.get());
+	}
+
+	@Test
+	public void testKeepsOrder() throws InterruptedException, ExecutionException {
+		final ClassOperation op = AnnotationClassOperationBuilder.fromClass(BoundedOperation.class);
+		final Context context = newContext(5);
+		final Task task = ClassOperationTaskFactory.create(executor, op, context);
+		task.schedule();
+		resolveAll(5);
+		task.join();
+
+		final List<?> outputs = (List<?>) context.getEdgeValue("doubled");
+		assertEquals(5, outputs.size());
+		for (int i = 0; i < outputs.size(); ++i) {
+			assertEquals(i * 2, (int) Uninterruptibles.getUninterruptibly((ListenableFuture<?>) outputs.get(i)));
+		}
+	}
+
+	@Test
+	public void testBoundsChunks() throws InterruptedException {
+		final Task task = schedule(BoundedChunkOperation.class, 10);
+		assertEquals(4, awaitPending(4));
+		Thread.sleep(50);
+		assertEquals(4, started.get());
+
+		resolveAll(10);
+		task.join();
+		assertTrue(maxInFlight.get() <= 4);
+		assertEquals(10, started.get());
+	}
+
+	@Test
+	public void testImmediateOutputs() throws InterruptedException {
+		final ClassOperation op = AnnotationClassOperationBuilder.fromClass(BoundedImmediateOperation.class);
+		final Context context = newContext(5);
+		final Task task = ClassOperationTaskFactory.create(executor, op, context);
+		task.schedule();
+		task.join();
+		assertEquals(Lists.newArrayList(0, 2, 4, 6, 8), context.getEdgeValue("doubled"));
+	}
+
+	private Task schedule(final Class<?> cls, final int count) {
+		final ClassOperation op = AnnotationClassOperationBuilder.fromClass(cls);
+		final Task task = ClassOperationTaskFactory.create(executor, op, newContext(count));
+		task.schedule();
+		return task;
+	}
+
+	/** Wait until count futures are pending and return the number pending. */
+	private static int awaitPending(final int count) throws InterruptedException {
+		for (int i = 0; i < 500 && pending.size() < count; ++i) {
+			Thread.sleep(10);
+		}
+		return pending.size();
+	}
+
+	/** Resolve the futures in the order started. */
+	private static void resolveAll(final int count) throws InterruptedException {
+		for (int i = 0; i < count; ++i) {
+			final SettableFuture<Integer> future = pending.poll(5, TimeUnit.SECONDS);
+			assertNotNull(future);
+			resolved.incrementAndGet();
+			future.set(i);
+		}
+	}
+
+	private static Context newContext(final int count) {
+		final List<Integer> numbers = Lists.newArrayList();
+		for (int i = 0; i < count; ++i) {
+			numbers.add(i);
+		}
+		final Context context = new Context();
+		context.setEdgeValue("numbers", numbers);
+		return context;
+	}
+}
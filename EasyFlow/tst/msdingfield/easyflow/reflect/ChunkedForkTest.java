@@ -0,0 +1,186 @@
+package msdingfield.easyflow.reflect;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import msdingfield.easyflow.annotations.ForkOn;
+import msdingfield.easyflow.annotations.Input;
+import msdingfield.easyflow.annotations.Operation;
+import msdingfield.easyflow.annotations.Output;
+import msdingfield.easyflow.execution.Task;
+import msdingfield.easyflow.testsupport.TestExecutor;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.SettableFuture;
+
+public class ChunkedForkTest {
+
+	@Rule
+	public TestExecutor executor = new TestExecutor();
+
+	private static final Set<Object> instances = Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+
+	@Before
+	public void setUp() {
+		instances.clear();
+	}
+
+	public static class FixedChunkOperation {
+
+		@ForkOn(chunkSize=3)
+		@Input(connectedEdgeName="numbers")
+		public int number;
+
+		@Input
+		public int offset;
+
+		@Output
+		public int sum;
+
+		@Operation
+		public void enact() {
+			instances.add(this);
+			sum = number + offset;
+		}
+	}
+
+	public static class ReusedChunkOperation {
+
+		@ForkOn(chunkSize=3, reuseInstance=true)
+		@Input(connectedEdgeName="numbers")
+		public int number;
+
+		@Input
+		public int offset;
+
+		@Output
+		public int sum;
+
+		@Output
+		public String text;
+
+		@Operation
+		public void enact() {
+			instances.add(this);
+			sum = number + offset;
+			text = String.valueOf(number);
+		}
+	}
+
+	public static class AdaptiveChunkOperation {
+
+		@ForkOn(chunkSize=ForkOn.ADAPTIVE, reuseInstance=true)
+		@Input(connectedEdgeName="numbers")
+		public int number;
+
+		@Output
+		public int square;
+
+		@Operation
+		public void enact() {
+			square = number * number;
+		}
+	}
+
+	@Test
+	public void testFixedChunksKeepOrder() throws InterruptedException {
+		final List<?> sums = run(FixedChunkOperation.class, numbers(10), "sum");
+		assertEquals(expectedSums(10), sums);
+		assertEquals(10, instances.size());
+	}
+
+	@Test
+	public void testReusedInstancePerChunk() throws InterruptedException {
+		final List<?> sums = run(ReusedChunkOperation.class, numbers(10), "sum");
+		assertEquals(expectedSums(10), sums);
+		assertEquals(4, instances.size());
+	}
+
+	@Test
+	public void testReusedInstanceGathersEachOutput() throws InterruptedException {
+		final ClassOperation op = AnnotationClassOperationBuilder.fromClass(ReusedChunkOperation.class);
+		final Context context = newContext(numbers(4));
+		runTask(op, context);
+		assertEquals(Lists.newArrayList("0", "1", "2", "3"), context.getEdgeValue("text"));
+	}
+
+	@Test
+	public void testReusedInstanceWaitsForFutureItems() throws InterruptedException {
+		final SettableFuture<Object> pending = SettableFuture.create();
+		final List<Object> items = Lists.<Object>newArrayList(0, Futures.immediateFuture(1), pending, 3);
+		final ClassOperation op = AnnotationClassOperationBuilder.fromClass(ReusedChunkOperation.class);
+		final Context context = newContext(items);
+		final Task task = ClassOperationTaskFactory.create(executor, op, context);
+		task.schedule();
+		pending.set(2);
+		task.join();
+		assertEquals(expectedSums(4), context.getEdgeValue("sum"));
+	}
+
+	@Test
+	public void testReusedInstanceWithNoItems() throws InterruptedException {
+		final List<?> sums = run(ReusedChunkOperation.class, numbers(0), "sum");
+		assertEquals(0, sums.size());
+		assertEquals(0, instances.size());
+	}
+
+	@Test
+	public void testAdaptiveChunksKeepOrder() throws InterruptedException {
+		final ClassOperation op = AnnotationClassOperationBuilder.fromClass(AdaptiveChunkOperation.class);
+		for (int pass = 0; pass < 3; ++pass) {
+			final Context context = new Context();
+			context.setEdgeValue("numbers", numbers(1000));
+			runTask(op, context);
+			final List<?> squares = (List<?>) context.getEdgeValue("square");
+			assertEquals(1000, squares.size());
+			for (int i = 0; i < squares.size(); ++i) {
+				assertEquals(i * i, squares.get(i));
+			}
+		}
+	}
+
+	private List<?> run(final Class<?> cls, final List<?> numbers, final String output) throws InterruptedException {
+		final ClassOperation op = AnnotationClassOperationBuilder.fromClass(cls);
+		final Context context = newContext(numbers);
+		runTask(op, context);
+		return (List<?>) context.getEdgeValue(output);
+	}
+
+	private void runTask(final ClassOperation op, final Context context) throws InterruptedException {
+		final Task task = ClassOperationTaskFactory.create(executor, op, context);
+		task.schedule();
+		task.join();
+	}
+
+	private static Context newContext(final List<?> numbers) {
+		final Context context = new Context();
+		context.setEdgeValue("numbers", numbers);
+		context.setEdgeValue("offset", 100);
+		return context;
+	}
+
+	private static List<Integer> numbers(final int count) {
+		final List<Integer> numbers = Lists.newArrayList();
+		for (int i = 0; i < count; ++i) {
+			numbers.add(i);
+		}
+		return numbers;
+	}
+
+	private static List<Integer> expectedSums(final int count) {
+		final List<Integer> sums = Lists.newArrayList();
+		for (int i = 0; i < count; ++i) {
+			sums.add(i + 100);
+		}
+		return sums;
+	}
+}
@@ -0,0 +1,177 @@
+package msdingfield.easyflow.reflect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import msdingfield.easyflow.annotations.Activity;
+import msdingfield.easyflow.annotations.Operation;
+import msdingfield.easyflow.reflect.nestedpackage.CpScanTestNestedOp;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+
+public class ClassFileScannerTest {
+
+	private static final AtomicBoolean INITIALIZED = new AtomicBoolean(false);
+
+	private final ClassLoader classLoader = getClass().getClassLoader();
+
+	@Test
+	public void testFindsGraphs() {
+		final ClassIndex index = ClassFileScanner.getIndex(classLoader, "msdingfield.easyflow.reflect");
+		assertTrue(index.getGraphs().contains("cpScanTestA"));
+		assertTrue(index.getGraphs().contains("cpScanTestB"));
+		assertEquals(ImmutableList.of(
+				ClassPathScannerClassOperationBuilderTest.InnerClassOpA.class.getName(),
+				CpScanTestTopLevelOpA.class.getName(),
+				CpScanTestNestedOp.class.getName()),
+				index.getClassNames("cpScanTestA"));
+	}
+
+	@Test
+	public void testScanIsShared() {
+		final ClassIndex index = ClassFileScanner.getIndex(classLoader, "msdingfield.easyflow.reflect");
+		assertSame(index, ClassFileScanner.getIndex(classLoader, "msdingfield.easyflow.reflect"));
+
+		final ClassIndex nested = ClassFileScanner.getIndex(classLoader, "msdingfield.easyflow.reflect.nestedpackage");
+		assertEquals(ImmutableList.of(CpScanTestNestedOp.class.getName()), nested.getClassNames("cpScanTestA"));
+	}
+
+	@Test
+	public void testFilteredScanIsShared() {
+		ClassFileScanner.getIndex(classLoader, "msdingfield.easyflow");
+		final ClassIndex index = ClassFileScanner.getIndex(classLoader, "msdingfield.easyflow.reflect.nestedpackage");
+		assertSame(index, ClassFileScanner.getIndex(classLoader, "msdingfield.easyflow.reflect.nestedpackage"));
+	}
+
+	@Test
+	public void testMatchesAreNotInitialized() {
+		final List<ClassOperation> ops = ClassPathScannerClassOperationBuilder.loadOperationsOnClasspath("msdingfield.easyflow.reflect", "scanInitTest");
+		assertEquals(1, ops.size());
+		assertEquals(InitTrackingOp.class.getName(), ops.get(0).getOperationClass().getName());
+		assertFalse(INITIALIZED.get());
+	}
+
+	@Test(timeout=10000)
+	public void testDiscardedClassLoaderIsCollected() throws Exception {
+		final File dir = Files.createTempDir();
+		try {
+			ClassLoader loader = new URLClassLoader(new URL[] {dir.toURI().toURL()}, null);
+			ClassFileScanner.getIndex(loader, "msdingfield.easyflow.reflect");
+			final WeakReference<ClassLoader> reference = new WeakReference<ClassLoader>(loader);
+			loader = null;
+			while (reference.get() != null) {
+				System.gc();
+				Thread.sleep(10);
+			}
+		} finally {
+			dir.delete();
+		}
+	}
+
+	@Test
+	public void testFollowsManifestClassPath() throws IOException {
+		final File dir = Files.createTempDir();
+		final File lib = new File(dir, "lib");
+		lib.mkdir();
+		final File app = new File(dir, "app.jar");
+		final File dependency = new File(lib, "dependency.jar");
+		final File cycle = new File(lib, "cycle.jar");
+		try {
+			final Manifest manifest = new Manifest();
+			manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+			manifest.getMainAttributes().put(Attributes.Name.CLASS_PATH, "lib/dependency.jar lib/missing.jar");
+			new JarOutputStream(new FileOutputStream(app), manifest).close();
+
+			final Manifest dependencyManifest = new Manifest();
+			dependencyManifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+			dependencyManifest.getMainAttributes().put(Attributes.Name.CLASS_PATH, "cycle.jar");
+			writeJar(dependency, dependencyManifest, CpScanTestTopLevelOpB.class);
+
+			final Manifest cycleManifest = new Manifest();
+			cycleManifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+			cycleManifest.getMainAttributes().put(Attributes.Name.CLASS_PATH, "dependency.jar");
+			new JarOutputStream(new FileOutputStream(cycle), cycleManifest).close();
+
+			final Set<File> classPath = ClassFileScanner.findClassPath(new URLClassLoader(new URL[] {app.toURI().toURL()}, null));
+			assertTrue(classPath.contains(app.getAbsoluteFile()));
+			assertTrue(classPath.contains(dependency.getAbsoluteFile()));
+			assertTrue(classPath.contains(cycle.getAbsoluteFile()));
+
+			final ClassIndex index = ClassFileScanner.scan(ImmutableList.of(app, dependency, cycle), "msdingfield.easyflow");
+			assertEquals(ImmutableList.of(CpScanTestTopLevelOpB.class.getName()), index.getClassNames("cpScanTestB"));
+		} finally {
+			cycle.delete();
+			dependency.delete();
+			app.delete();
+			lib.delete();
+			dir.delete();
+		}
+	}
+
+	@Test
+	public void testScansJar() throws IOException {
+		final File jar = File.createTempFile("scan", ".jar");
+		try {
+			writeJar(jar, null, CpScanTestTopLevelOpB.class);
+
+			final ClassIndex index = ClassFileScanner.scan(Collections.singleton(jar), "msdingfield.easyflow");
+			assertEquals(ImmutableList.of(CpScanTestTopLevelOpB.class.getName()), index.getClassNames("cpScanTestB"));
+			assertEquals(1, index.size());
+		} finally {
+			jar.delete();
+		}
+	}
+
+	/** Write a jar holding the class file of a class. */
+	private void writeJar(final File jar, final Manifest manifest, final Class<?> type) throws IOException {
+		final String entry = type.getName().replace('.', '/') + ".class";
+		final ZipOutputStream out = manifest == null
+				? new ZipOutputStream(new FileOutputStream(jar))
+				: new JarOutputStream(new FileOutputStream(jar), manifest);
+		try {
+			out.putNextEntry(new ZipEntry(entry));
+			final InputStream in = classLoader.getResourceAsStream(entry);
+			try {
+				ByteStreams.copy(in, out);
+			} finally {
+				in.close();
+			}
+			out.closeEntry();
+		} finally {
+			out.close();
+		}
+	}
+
+	@Activity(graph = "scanInitTest")
+	public static class InitTrackingOp {
+		static {
+			INITIALIZED.set(true);
+		}
+
+		@Operation
+		public void op() {}
+	}
+}
@@ -135,6 +135,30 @@ public class ClassOperationTest {
 		assertTrue(basicTask.isSuccess());
 	}
 
+	/*
+	 * Test an explicitly provided invoker is used in place of the default.
+	 */
+	@Test
+	public void testCustomInvoker() throws NoSuchMethodException, InterruptedException {
+		final ClassOperation op = new ClassOperation();
+		op.setOperationClass(BasicOperation.class);
+		op.setConstructor(BasicOperation.class.getDeclaredConstructor());
+		op.setOperationMethod(BasicOperation.class.getDeclaredMethod("op"));
+		final boolean[] invoked = {false};
+		op.setInvoker(new OperationInvoker() {
+			@Override public Object newInstance() {
+				return new BasicOperation();
+			}
+			@Override public void invoke(final Object instance) {
+				invoked[0] = true;
+			}});
+
+		BasicOperation.isExecuted = false;
+		runToCompletion(ClassOperationTaskFactory.create(executor, op, new Context()));
+		assertTrue(invoked[0]);
+		assertFalse(BasicOperation.isExecuted);
+	}
+
 	private void runToCompletion(final Task task)
 			throws InterruptedException {
 		task.schedule().join();
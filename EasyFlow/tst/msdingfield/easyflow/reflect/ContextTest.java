@@ -0,0 +1,126 @@
+package msdingfield.easyflow.reflect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import msdingfield.easyflow.annotations.Input;
+import msdingfield.easyflow.annotations.Operation;
+import msdingfield.easyflow.annotations.Output;
+import msdingfield.easyflow.execution.DefaultExecutor;
+import msdingfield.easyflow.execution.Task;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+
+public class ContextTest {
+
+	private final ClassOperation first = AnnotationClassOperationBuilder.fromClass(FirstOp.class);
+	private final ClassOperation second = AnnotationClassOperationBuilder.fromClass(SecondOp.class);
+	private final ContextLayout layout = ContextLayout.of(Lists.newArrayList(first, second));
+
+	@Test
+	public void testLayoutAssignsSlots() {
+		assertEquals(3, layout.getEdgeCount());
+		assertEquals(2, layout.getStateCount());
+		for (final String edge : new String[] {"input", "middle", "output"}) {
+			final int slot = layout.getEdgeSlot(edge);
+			assertTrue(slot >= 0);
+			assertEquals(edge, layout.getEdgeName(slot));
+		}
+		assertEquals(-1, layout.getEdgeSlot("unknown"));
+		assertTrue(layout.getStateSlot(FirstOp.class) >= 0);
+		assertEquals(-1, layout.getStateSlot(String.class));
+	}
+
+	@Test
+	public void testSlotAndNameAccessAgree() {
+		final Context context = new Context(layout, ImmutableMap.<String, Object>of("input", 3, "extra", "x"));
+		assertEquals(3, context.getEdgeValue(layout.getEdgeSlot("input")));
+		assertEquals(3, context.getEdgeValue("input"));
+		assertEquals("x", context.getEdgeValue("extra"));
+		assertTrue(context.isEdgeSet("extra"));
+		assertFalse(context.isEdgeSet("middle"));
+
+		context.setEdgeValue(layout.getEdgeSlot("middle"), 4);
+		assertEquals(4, context.getEdgeValue("middle"));
+
+		final Map<String, Object> values = context.getEdgeValues();
+		assertEquals(ImmutableMap.<String, Object>of("input", 3, "middle", 4, "extra", "x"), values);
+
+		context.setEdgeValue("extra", null);
+		assertNull(context.getEdgeValue("extra"));
+		assertFalse(context.getEdgeKeys().contains("extra"));
+	}
+
+	@Test
+	public void testStateValues() {
+		final Context context = new Context(layout);
+		final Object state = new Object();
+		context.setStateValue(FirstOp.class, state);
+		assertSame(state, context.getStateValue(layout.getStateSlot(FirstOp.class)));
+		assertTrue(context.isStateVariableSet(FirstOp.class));
+
+		context.setStateValue("other", state);
+		assertSame(state, context.getStateValue("other"));
+	}
+
+	@Test
+	public void testEqualsIgnoresLayout() {
+		final Context slotted = new Context(layout, ImmutableMap.<String, Object>of("input", 3));
+		final Context unslotted = new Context(ImmutableMap.<String, Object>of("input", 3));
+		assertEquals(slotted, unslotted);
+		assertEquals(slotted.hashCode(), unslotted.hashCode());
+	}
+
+	@Test
+	public void testEvaluateWithLayout() throws InterruptedException {
+		final Context context = new Context(layout, ImmutableMap.<String, Object>of("input", 3));
+		final Task a = ClassOperationTaskFactory.create(DefaultExecutor.get(), first, context);
+		final Task b = ClassOperationTaskFactory.create(DefaultExecutor.get(), second, context);
+		b.waitFor(a);
+		a.schedule();
+		b.schedule().join();
+
+		assertTrue(b.isSuccess());
+		assertEquals(14, context.getEdgeValue("output"));
+		assertEquals(7, context.getEdgeValue(layout.getEdgeSlot("middle")));
+	}
+
+	@Test
+	public void testClearsEdgesOnceRead() throws InterruptedException {
+		final EdgeLiveness liveness = EdgeLiveness.of(layout, Lists.newArrayList(first, second), ImmutableSet.of("output"));
+		final Context context = new Context(layout, ImmutableMap.<String, Object>of("input", 3), liveness);
+		final Task a = ClassOperationTaskFactory.create(DefaultExecutor.get(), first, context);
+		final Task b = ClassOperationTaskFactory.create(DefaultExecutor.get(), second, context);
+		b.waitFor(a);
+		a.schedule();
+		b.schedule().join();
+
+		assertTrue(b.isSuccess());
+		assertEquals(ImmutableMap.<String, Object>of("output", 14), context.getEdgeValues());
+	}
+
+	public static class FirstOp {
+		@Input public int input;
+		@Output public int middle;
+		@Operation public void op() {
+			middle = input + 4;
+		}
+	}
+
+	public static class SecondOp {
+		@Input public int middle;
+		@Output public int output;
+		@Operation public void op() {
+			output = 2 * middle;
+		}
+	}
+}
@@ -22,11 +22,14 @@ public class FieldOperationInputPortTest {
 	@ForkOn
 	protected String forkOnTestField = "";
 	
+	protected int primitiveTestField = 0;
+	
 	@Before
 	public void setup() throws NoSuchFieldException, SecurityException {
 		unannotatedTestField = "";
 		aliasedTestField = "";
 		forkOnTestField = "";
+		primitiveTestField = 0;
 	}
 	
 	@Test
@@ -52,4 +55,23 @@ public class FieldOperationInputPortTest {
 		final FieldOperationInputPort forkOnTestFieldInputPort = new FieldOperationInputPort(getClass().getDeclaredField(FORK_ON_TEST_FIELD));
 		assertTrue(forkOnTestFieldInputPort.fork());
 	}
+	
+	@Test
+	public void testPrimitiveField() throws IllegalArgumentException, IllegalAccessException, NoSuchFieldException, SecurityException {
+		final FieldOperationInputPort primitiveTestFieldInputPort = new FieldOperationInputPort(getClass().getDeclaredField("primitiveTestField"));
+		primitiveTestFieldInputPort.set(this, 42);
+		assertEquals(42, primitiveTestField);
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testWrongType() throws IllegalArgumentException, IllegalAccessException, NoSuchFieldException, SecurityException {
+		final FieldOperationInputPort primitiveTestFieldInputPort = new FieldOperationInputPort(getClass().getDeclaredField("primitiveTestField"));
+		primitiveTestFieldInputPort.set(this, "test");
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testNullToPrimitive() throws IllegalArgumentException, IllegalAccessException, NoSuchFieldException, SecurityException {
+		final FieldOperationInputPort primitiveTestFieldInputPort = new FieldOperationInputPort(getClass().getDeclaredField("primitiveTestField"));
+		primitiveTestFieldInputPort.set(this, null);
+	}
 }
@@ -14,6 +14,8 @@ public class FieldOperationOutputPortTest {
 
 	protected String aggregateTestField = "test";
 
+	protected int primitiveTestField = 42;
+
 	@Test
 	public void testUnannotatedField() throws NoSuchFieldException, SecurityException, IllegalArgumentException, IllegalAccessException {
 		final FieldOperationOutputPort output = new FieldOperationOutputPort(getClass().getDeclaredField("unannotatedTestField"));
@@ -28,4 +30,10 @@ public class FieldOperationOutputPortTest {
 		assertEquals("test", output.get(this));
 	}
 
+	@Test
+	public void testPrimitiveField() throws NoSuchFieldException, SecurityException, IllegalArgumentException, IllegalAccessException {
+		final FieldOperationOutputPort output = new FieldOperationOutputPort(getClass().getDeclaredField("primitiveTestField"));
+		assertEquals(42, output.get(this));
+	}
+
 }
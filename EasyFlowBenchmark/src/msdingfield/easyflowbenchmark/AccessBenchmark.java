@@ -0,0 +1,113 @@
+package msdingfield.easyflowbenchmark;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import msdingfield.easyflow.annotations.Input;
+import msdingfield.easyflow.annotations.Operation;
+import msdingfield.easyflow.annotations.Output;
+import msdingfield.easyflow.reflect.AnnotationClassOperationBuilder;
+import msdingfield.easyflow.reflect.ClassOperation;
+import msdingfield.easyflow.reflect.OperationInputPort;
+import msdingfield.easyflow.reflect.OperationInvoker;
+import msdingfield.easyflow.reflect.OperationOutputPort;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of one node invocation through java.lang.reflect compared with the
+ * OperationInvoker and ports built by AnnotationClassOperationBuilder.
+ * 
+ * An invocation creates the operation instance, writes two primitive
+ * inputs, invokes the operation and reads its primitive output.
+ * 
+ * @author Matt
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccessBenchmark {
+
+	private static final Integer LEFT = 20;
+	private static final Integer RIGHT = 22;
+
+	private Constructor<?> constructor;
+	private Method method;
+	private Field leftField;
+	private Field rightField;
+	private Field sumField;
+
+	private OperationInvoker invoker;
+	private OperationInputPort leftPort;
+	private OperationInputPort rightPort;
+	private OperationOutputPort sumPort;
+
+	public static class Adder {
+		@Input
+		public int left;
+
+		@Input
+		public int right;
+
+		@Output
+		public int sum;
+
+		@Operation
+		public void enact() {
+			sum = left + right;
+		}
+	}
+
+	@Setup
+	public void setup() throws ReflectiveOperationException {
+		constructor = Adder.class.getConstructor();
+		method = Adder.class.getMethod("enact");
+		leftField = Adder.class.getField("left");
+		rightField = Adder.class.getField("right");
+		sumField = Adder.class.getField("sum");
+
+		final ClassOperation op = AnnotationClassOperationBuilder.fromClass(Adder.class);
+		invoker = op.getInvoker();
+		for (final OperationInputPort port : op.getInputs()) {
+			if ("left".equals(port.getConnectedEdgeName())) {
+				leftPort = port;
+			} else {
+				rightPort = port;
+			}
+		}
+		sumPort = op.getOutputs().iterator().next();
+	}
+
+	@Benchmark
+	public Object reflection() throws ReflectiveOperationException {
+		final Object instance = constructor.newInstance();
+		leftField.set(instance, LEFT);
+		rightField.set(instance, RIGHT);
+		method.invoke(instance);
+		return sumField.get(instance);
+	}
+
+	@Benchmark
+	public Object invoker() throws Throwable {
+		final Object instance = invoker.newInstance();
+		leftPort.set(instance, LEFT);
+		rightPort.set(instance, RIGHT);
+		invoker.invoke(instance);
+		return sumPort.get(instance);
+	}
+}
@@ -0,0 +1,121 @@
+package msdingfield.easyflowbenchmark;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import msdingfield.easyflow.execution.Task;
+import msdingfield.easyflow.graph.Graph;
+import msdingfield.easyflow.graph.GraphNode;
+import msdingfield.easyflow.graph.TaskFactory;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * A graph node which does no work, and factories for graphs of them.
+ * 
+ * Graphs of BenchNode measure the cost of the scheduler alone.  Each node
+ * outputs an edge named after its id.
+ * 
+ * @author Matt
+ *
+ */
+public final class BenchNode implements GraphNode {
+
+	/** Creates tasks whose only worker does nothing. */
+	public static final TaskFactory<BenchNode> NOOP_TASKS = new TaskFactory<BenchNode>() {
+		@Override public Task create(final Executor executor, final BenchNode node) {
+			return new Task(executor, NOOP);
+		}};
+
+	private static final Runnable NOOP = new Runnable() {
+		@Override public void run() {}
+	};
+
+	private final Set<String> inputs;
+	private final Set<String> outputs;
+
+	public BenchNode(final int id, final Set<String> inputs) {
+		this.inputs = inputs;
+		this.outputs = ImmutableSet.of(edge(id));
+	}
+
+	@Override
+	public Set<String> getOutputs() {
+		return outputs;
+	}
+
+	@Override
+	public Set<String> getInputs() {
+		return inputs;
+	}
+
+	/** A chain in which each node consumes the output of the one before. */
+	public static Graph<BenchNode> chain(final int length) {
+		final Set<BenchNode> nodes = Sets.newHashSet();
+		nodes.add(new BenchNode(0, Collections.<String>emptySet()));
+		for (int id = 1; id < length; ++id) {
+			nodes.add(new BenchNode(id, ImmutableSet.of(edge(id - 1))));
+		}
+		return new Graph<BenchNode>(nodes);
+	}
+
+	/** One source, width nodes consuming it and one sink consuming them. */
+	public static Graph<BenchNode> diamond(final int width) {
+		final Set<BenchNode> nodes = Sets.newHashSet();
+		final ImmutableSet.Builder<String> middle = ImmutableSet.builder();
+		nodes.add(new BenchNode(0, Collections.<String>emptySet()));
+		for (int id = 1; id <= width; ++id) {
+			nodes.add(new BenchNode(id, ImmutableSet.of(edge(0))));
+			middle.add(edge(id));
+		}
+		nodes.add(new BenchNode(width + 1, middle.build()));
+		return new Graph<BenchNode>(nodes);
+	}
+
+	/**
+	 * A random acyclic graph in which each node consumes the outputs of up to
+	 * fanIn earlier nodes.  The same seed always gives the same graph.
+	 */
+	public static Set<BenchNode> random(final int size, final int fanIn, final long seed) {
+		final Random random = new Random(seed);
+		final List<BenchNode> nodes = Lists.newArrayListWithCapacity(size);
+		for (int id = 0; id < size; ++id) {
+			final Set<String> inputs = Sets.newHashSet();
+			for (int i = 0; i < fanIn && id > 0; ++i) {
+				inputs.add(edge(random.nextInt(id)));
+			}
+			nodes.add(new BenchNode(id, inputs));
+		}
+		return Sets.newHashSet(nodes);
+	}
+
+	/**
+	 * A layered graph in which each node consumes the outputs of up to fanIn
+	 * nodes of the layer before.  Node ids are numbered layer by layer so the
+	 * last layer is ids (layers - 1) * width to layers * width - 1.  The same
+	 * seed always gives the same graph.
+	 */
+	public static Set<BenchNode> layered(final int layers, final int width, final int fanIn, final long seed) {
+		final Random random = new Random(seed);
+		final Set<BenchNode> nodes = Sets.newHashSet();
+		for (int layer = 0; layer < layers; ++layer) {
+			for (int i = 0; i < width; ++i) {
+				final Set<String> inputs = Sets.newHashSet();
+				for (int j = 0; j < fanIn && layer > 0; ++j) {
+					inputs.add(edge((layer - 1) * width + random.nextInt(width)));
+				}
+				nodes.add(new BenchNode(layer * width + i, inputs));
+			}
+		}
+		return nodes;
+	}
+
+	public static String edge(final int id) {
+		return "e" + id;
+	}
+}
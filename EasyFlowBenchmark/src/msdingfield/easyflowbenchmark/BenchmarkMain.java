@@ -0,0 +1,41 @@
+package msdingfield.easyflowbenchmark;
+
+import java.util.Arrays;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the EasyFlow benchmarks and writes the results as JSON.
+ * 
+ * Usage: BenchmarkMain [result file] [benchmark regex ...]
+ * 
+ * The result file defaults to jmh-result.json.  With no regex every
+ * benchmark in this package is run.  The JSON is the standard JMH format so
+ * results from different releases can be compared with any JMH tooling.
+ * 
+ * @author Matt
+ *
+ */
+public class BenchmarkMain {
+
+	public static final String DEFAULT_RESULT_FILE = "jmh-result.json";
+
+	public static void main(final String[] args) throws RunnerException {
+		final String resultFile = args.length > 0 ? args[0] : DEFAULT_RESULT_FILE;
+		final ChainedOptionsBuilder options = new OptionsBuilder()
+				.resultFormat(ResultFormatType.JSON)
+				.result(resultFile);
+		if (args.length > 1) {
+			for (final String include : Arrays.asList(args).subList(1, args.length)) {
+				options.include(include);
+			}
+		} else {
+			options.include(BenchmarkMain.class.getPackage().getName() + "\\..*");
+		}
+		new Runner(options.build()).run();
+	}
+}
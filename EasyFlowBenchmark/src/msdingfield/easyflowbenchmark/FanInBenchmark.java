@@ -0,0 +1,98 @@
+package msdingfield.easyflowbenchmark;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import msdingfield.easyflow.execution.DefaultExecutor;
+import msdingfield.easyflow.execution.Task;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Contention on a single Task with a wide fan-in.
+ * 
+ * All predecessors complete at once on every thread of the executor, so
+ * each one signals the successor concurrently.  waitFor() registers a
+ * completion listener on every predecessor while signal() uses
+ * addDependencies() and dependencyComplete() directly, as ExecutionPlan
+ * does.  Run on a machine with many cores to see contention.
+ * 
+ * @author Matt
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FanInBenchmark {
+
+	@Param({"1000"})
+	public int width;
+
+	private ExecutorService executor;
+
+	private static final Runnable NOOP = new Runnable() {
+		@Override public void run() {}
+	};
+
+	@Setup
+	public void setup() {
+		executor = DefaultExecutor.newFixedPool(Runtime.getRuntime().availableProcessors());
+	}
+
+	@TearDown
+	public void teardown() {
+		executor.shutdown();
+	}
+
+	@Benchmark
+	public void waitFor() throws InterruptedException {
+		final List<Task> predecessors = Lists.newArrayListWithCapacity(width);
+		for (int i = 0; i < width; ++i) {
+			predecessors.add(new Task(executor, NOOP));
+		}
+		final Task successor = new Task(executor, NOOP);
+		successor.waitFor(predecessors);
+		successor.schedule();
+		for (final Task predecessor : predecessors) {
+			predecessor.schedule();
+		}
+		successor.join();
+	}
+
+	@Benchmark
+	public void signal() throws InterruptedException {
+		final Task successor = new Task(executor, NOOP);
+		successor.addDependencies(width);
+		final List<Task> predecessors = Lists.newArrayListWithCapacity(width);
+		for (int i = 0; i < width; ++i) {
+			final Task predecessor = new Task(executor, NOOP);
+			predecessor.addCompletionListener(new Runnable() {
+				@Override public void run() {
+					successor.dependencyComplete(predecessor);
+				}});
+			predecessors.add(predecessor);
+		}
+		successor.schedule();
+		for (final Task predecessor : predecessors) {
+			predecessor.schedule();
+		}
+		successor.join();
+	}
+}
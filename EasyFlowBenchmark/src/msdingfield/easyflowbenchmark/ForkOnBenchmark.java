@@ -0,0 +1,90 @@
+package msdingfield.easyflowbenchmark;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import msdingfield.easyflow.annotations.ForkOn;
+import msdingfield.easyflow.annotations.Input;
+import msdingfield.easyflow.annotations.Operation;
+import msdingfield.easyflow.annotations.Output;
+import msdingfield.easyflow.execution.DefaultExecutor;
+import msdingfield.easyflow.reflect.AnnotationClassOperationBuilder;
+import msdingfield.easyflow.reflect.ClassOperation;
+import msdingfield.easyflow.reflect.ClassOperationTaskFactory;
+import msdingfield.easyflow.reflect.Context;
+import msdingfield.easyflow.reflect.ContextLayout;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+/**
+ * Cost of an operation which uses @ForkOn to run once per element.
+ * 
+ * The operation itself is trivial so this measures creating an instance per
+ * element, forking it and gathering the outputs back into a list.
+ * 
+ * @author Matt
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ForkOnBenchmark {
+
+	@Param({"10", "1000", "100000"})
+	public int elements;
+
+	private ExecutorService executor;
+	private ClassOperation op;
+	private ContextLayout layout;
+	private List<Integer> numbers;
+
+	public static class Square {
+		@ForkOn
+		@Input(connectedEdgeName = "numbers")
+		public Integer number;
+
+		@Output(connectedEdgeName = "squares")
+		public int square;
+
+		@Operation
+		public void enact() {
+			square = number * number;
+		}
+	}
+
+	@Setup
+	public void setup() {
+		executor = DefaultExecutor.get();
+		op = AnnotationClassOperationBuilder.fromClass(Square.class);
+		layout = ContextLayout.of(ImmutableList.of(op));
+		numbers = Lists.newArrayListWithCapacity(elements);
+		for (int i = 0; i < elements; ++i) {
+			numbers.add(i);
+		}
+	}
+
+	@Benchmark
+	public Object forkOn() throws InterruptedException {
+		final Context context = new Context(layout);
+		context.setEdgeValue("numbers", numbers);
+		ClassOperationTaskFactory.create(executor, op, context).schedule().join();
+		return context.getEdgeValue("squares");
+	}
+}
@@ -0,0 +1,129 @@
+package msdingfield.easyflowbenchmark;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import msdingfield.easyflow.annotations.Input;
+import msdingfield.easyflow.annotations.Operation;
+import msdingfield.easyflow.annotations.Output;
+import msdingfield.easyflow.execution.DefaultExecutor;
+import msdingfield.easyflow.reflect.AnnotationClassOperationBuilder;
+import msdingfield.easyflow.reflect.ClassOperation;
+import msdingfield.easyflow.reflect.ClassOperationTaskFactory;
+import msdingfield.easyflow.reflect.Context;
+import msdingfield.easyflow.reflect.ContextLayout;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+
+/**
+ * Cost of writing an input edge whose value is, or contains, futures.
+ * 
+ * Each kind of value takes a different path through
+ * ClassOperationInstance.writeVariant().  The futures are already complete so
+ * only the unwrapping is measured.
+ * 
+ * @author Matt
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FutureUnwrapBenchmark {
+
+	/** The kinds of edge value. */
+	public static enum Kind {
+		/** A plain value. */
+		VALUE,
+		/** A future of a value. */
+		FUTURE,
+		/** A future of a future of a value. */
+		NESTED_FUTURE,
+		/** A list of plain values. */
+		LIST,
+		/** A list of futures. */
+		LIST_OF_FUTURES
+	}
+
+	@Param({"VALUE", "FUTURE", "NESTED_FUTURE", "LIST", "LIST_OF_FUTURES"})
+	public Kind kind;
+
+	/** Number of elements in a list value. */
+	@Param({"100"})
+	public int elements;
+
+	private ExecutorService executor;
+	private ClassOperation op;
+	private ContextLayout layout;
+	private Object value;
+
+	public static class Consumer {
+		@Input
+		public Object value;
+
+		@Output
+		public Object result;
+
+		@Operation
+		public void enact() {
+			result = value;
+		}
+	}
+
+	@Setup
+	public void setup() {
+		executor = DefaultExecutor.get();
+		op = AnnotationClassOperationBuilder.fromClass(Consumer.class);
+		layout = ContextLayout.of(ImmutableList.of(op));
+		switch (kind) {
+		case VALUE:
+			value = "value";
+			break;
+		case FUTURE:
+			value = Futures.immediateFuture("value");
+			break;
+		case NESTED_FUTURE:
+			value = Futures.immediateFuture(Futures.immediateFuture("value"));
+			break;
+		case LIST:
+			final List<Object> values = Lists.newArrayList();
+			for (int i = 0; i < elements; ++i) {
+				values.add("value");
+			}
+			value = values;
+			break;
+		case LIST_OF_FUTURES:
+			final List<Object> futures = Lists.newArrayList();
+			for (int i = 0; i < elements; ++i) {
+				futures.add(Futures.immediateFuture("value"));
+			}
+			value = futures;
+			break;
+		}
+	}
+
+	@Benchmark
+	public Object unwrap() throws InterruptedException {
+		final Context context = new Context(layout);
+		context.setEdgeValue("value", value);
+		ClassOperationTaskFactory.create(executor, op, context).schedule().join();
+		return context.getEdgeValue("result");
+	}
+}
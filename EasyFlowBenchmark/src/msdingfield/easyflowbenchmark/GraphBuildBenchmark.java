@@ -0,0 +1,62 @@
+package msdingfield.easyflowbenchmark;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import msdingfield.easyflow.graph.ExecutionPlan;
+import msdingfield.easyflow.graph.Graph;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to construct a Graph and compile it to an ExecutionPlan.
+ * 
+ * The graphs are random but fixed by a seed.  Every node consumes the
+ * outputs of up to three earlier nodes.
+ * 
+ * @author Matt
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GraphBuildBenchmark {
+
+	private static final int FAN_IN = 3;
+	private static final long SEED = 42;
+
+	@Param({"1000", "10000", "100000"})
+	public int size;
+
+	private Set<BenchNode> nodes;
+	private Graph<BenchNode> graph;
+
+	@Setup
+	public void setup() {
+		nodes = BenchNode.random(size, FAN_IN, SEED);
+		graph = new Graph<BenchNode>(nodes);
+	}
+
+	@Benchmark
+	public Graph<BenchNode> graph() {
+		return new Graph<BenchNode>(nodes);
+	}
+
+	@Benchmark
+	public ExecutionPlan<BenchNode> plan() {
+		return ExecutionPlan.compile(graph);
+	}
+}
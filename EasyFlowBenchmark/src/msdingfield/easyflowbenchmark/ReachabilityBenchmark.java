@@ -0,0 +1,93 @@
+package msdingfield.easyflowbenchmark;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import msdingfield.easyflow.graph.Graph;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Transitive queries on 10k node layered graphs.
+ * 
+ * Layered graphs share most ancestors between nodes, which is the worst case
+ * for walking the graph and the common case for generated graphs.  The
+ * queries start from the middle of the last layer.
+ * 
+ * @author Matt
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReachabilityBenchmark {
+
+	private static final int SIZE = 10000;
+	private static final int FAN_IN = 3;
+	private static final long SEED = 42;
+
+	/** Number of layers.  The width is SIZE / layers. */
+	@Param({"10", "100", "1000"})
+	public int layers;
+
+	private Graph<BenchNode> graph;
+	private BenchNode sink;
+	private BenchNode source;
+	private Set<String> outputs;
+
+	@Setup
+	public void setup() {
+		final int width = SIZE / layers;
+		graph = new Graph<BenchNode>(BenchNode.layered(layers, width, FAN_IN, SEED));
+		final String sinkEdge = BenchNode.edge((layers - 1) * width + width / 2);
+		final String sourceEdge = BenchNode.edge(width / 2);
+		for (final BenchNode node : graph.getAllNodes()) {
+			if (node.getOutputs().contains(sinkEdge)) {
+				sink = node;
+			} else if (node.getOutputs().contains(sourceEdge)) {
+				source = node;
+			}
+		}
+		outputs = ImmutableSet.of(sinkEdge, BenchNode.edge(layers * width - 1));
+	}
+
+	@Benchmark
+	public Set<BenchNode> transitivePredecessors() {
+		return graph.getTransitivePredecessors(sink);
+	}
+
+	@Benchmark
+	public Set<BenchNode> transitiveSuccessors() {
+		return graph.getTransitiveSuccessors(source);
+	}
+
+	@Benchmark
+	public boolean isTransitivePredecessor() {
+		return graph.isTransitivePredecessor(source, sink);
+	}
+
+	@Benchmark
+	public Graph<BenchNode> subGraphForOutputs() {
+		return graph.getSubGraphForOutputs(outputs);
+	}
+
+	@Benchmark
+	public Graph<BenchNode> build() {
+		return new Graph<BenchNode>(graph.getAllNodes());
+	}
+}
@@ -0,0 +1,65 @@
+package msdingfield.easyflowbenchmark;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import msdingfield.easyflow.execution.DefaultExecutor;
+import msdingfield.easyflow.graph.ExecutionPlan;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Scheduler overhead of evaluating graphs of nodes which do no work.
+ * 
+ * Divide the chain score by the length for the overhead per node.  A chain
+ * measures the hop from each node to its successor.  A diamond measures
+ * fan-out from one node to width nodes and fan-in from them back to one.
+ * 
+ * @author Matt
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SchedulerBenchmark {
+
+	@Param({"10", "100", "1000"})
+	public int size;
+
+	@Param({"WORK_STEALING", "FIXED_POOL"})
+	public DefaultExecutor.Mode mode;
+
+	private ExecutorService executor;
+	private ExecutionPlan<BenchNode> chain;
+	private ExecutionPlan<BenchNode> diamond;
+
+	@Setup
+	public void setup() {
+		executor = DefaultExecutor.get(mode);
+		chain = ExecutionPlan.compile(BenchNode.chain(size));
+		diamond = ExecutionPlan.compile(BenchNode.diamond(size));
+	}
+
+	@Benchmark
+	public void chain() throws InterruptedException {
+		chain.newTask(BenchNode.NOOP_TASKS, executor).schedule().join();
+	}
+
+	@Benchmark
+	public void diamond() throws InterruptedException {
+		diamond.newTask(BenchNode.NOOP_TASKS, executor).schedule().join();
+	}
+}